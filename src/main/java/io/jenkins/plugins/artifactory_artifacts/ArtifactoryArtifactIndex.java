@@ -0,0 +1,207 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cross-build artifact lookups backed by Artifactory properties and AQL.
+ * Artifacts are tagged at upload time when build properties are enabled, so finding the artifacts of a job across
+ * many builds is a single indexed query instead of listing each build folder.
+ */
+@Restricted(NoExternalUse.class)
+public final class ArtifactoryArtifactIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryArtifactIndex.class);
+
+    static final String JOB = "jenkins.job";
+    static final String BUILD_NUMBER = "jenkins.build.number";
+    static final String BUILD_RESULT = "jenkins.build.result";
+    static final String URL = "jenkins.url";
+
+    private ArtifactoryArtifactIndex() {}
+
+    /**
+     * Properties to attach to the artifacts of a build
+     * @param build the build
+     * @return the properties
+     */
+    static Map<String, String> propertiesOf(@NonNull Run<?, ?> build) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put(JOB, build.getParent().getFullName());
+        properties.put(BUILD_NUMBER, String.valueOf(build.getNumber()));
+        Result result = build.getResult();
+        if (result != null) {
+            properties.put(BUILD_RESULT, result.toString());
+        }
+        String rootUrl = Jenkins.get().getRootUrl();
+        if (rootUrl != null) {
+            properties.put(URL, rootUrl + build.getUrl());
+        }
+        return properties;
+    }
+
+    /**
+     * Find artifacts of the last builds of a job
+     * @param job the job
+     * @param name the artifact file name, '*' and '?' wildcards are supported
+     * @param builds the number of most recent builds to look at
+     * @return the artifacts found, most recent builds first
+     * @throws IOException if the query failed
+     */
+    public static List<Artifact> find(@NonNull Job<?, ?> job, @NonNull String name, int builds) throws IOException {
+        ArtifactoryGenericArtifactConfig config = Utils.getArtifactConfig();
+        if (config == null) {
+            throw new IOException("Artifactory is not configured");
+        }
+        Set<Integer> numbers = new HashSet<>();
+        long oldest = Long.MAX_VALUE;
+        for (Run<?, ?> run : job.getBuilds().limit(Math.max(1, builds))) {
+            numbers.add(run.getNumber());
+            oldest = Math.min(oldest, run.getTimeInMillis());
+        }
+        if (numbers.isEmpty()) {
+            return List.of();
+        }
+
+        JSONObject criteria = new JSONObject();
+        criteria.put("repo", config.getRepository());
+        criteria.put("type", "file");
+        criteria.put("@" + JOB, job.getFullName());
+        criteria.put("name", new JSONObject().element("$match", name));
+        // Artifacts of a build are created after the build started
+        criteria.put("created", new JSONObject().element("$gte", Instant.ofEpochMilli(oldest).toString()));
+        String query = "items.find(" + criteria + ").include(\"repo\",\"path\",\"name\",\"size\",\"property\")";
+
+        List<Artifact> artifacts = new ArrayList<>();
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                        config.getServerUrl(), config.getRepository(), Utils.getCredentials())
+                .withLane(ArtifactoryRequestScheduler.Lane.BROWSE, job.getFullName())) {
+            JSONArray results = client.aql(query);
+            for (int i = 0; i < results.size(); i++) {
+                JSONObject item = results.getJSONObject(i);
+                Integer number = buildNumberOf(item);
+                if (number == null || !numbers.contains(number)) {
+                    continue;
+                }
+                String path = item.getString("path") + "/" + item.getString("name");
+                String marker = "/" + number + "/artifacts/";
+                int index = path.indexOf(marker);
+                String relativePath =
+                        index >= 0 ? path.substring(index + marker.length()) : item.getString("name");
+                artifacts.add(new Artifact(job.getFullName(), number, relativePath, item.optLong("size")));
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to query artifacts on Artifactory", e);
+        }
+        artifacts.sort((a, b) -> a.getBuild() != b.getBuild()
+                ? Integer.compare(b.getBuild(), a.getBuild())
+                : a.getPath().compareTo(b.getPath()));
+        return artifacts;
+    }
+
+    private static Integer buildNumberOf(JSONObject item) {
+        JSONArray properties = item.optJSONArray("properties");
+        if (properties == null) {
+            return null;
+        }
+        for (int i = 0; i < properties.size(); i++) {
+            JSONObject property = properties.getJSONObject(i);
+            if (BUILD_NUMBER.equals(property.optString("key"))) {
+                try {
+                    return Integer.parseInt(property.optString("value"));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * An artifact found by a query
+     */
+    public static final class Artifact {
+        private final String job;
+        private final int build;
+        private final String path;
+        private final long size;
+
+        Artifact(String job, int build, String path, long size) {
+            this.job = job;
+            this.build = build;
+            this.path = path;
+            this.size = size;
+        }
+
+        public String getJob() {
+            return job;
+        }
+
+        public int getBuild() {
+            return build;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Return the artifact as a map usable from Pipeline scripts
+         * @return the map
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("job", job);
+            map.put("build", build);
+            map.put("path", path);
+            map.put("size", size);
+            return map;
+        }
+    }
+
+    /**
+     * Set the build result on artifacts once the build completed, it is unknown while archiving
+     */
+    @Extension
+    public static final class ResultListener extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            Result result = run.getResult();
+            if (result == null || !(run.getArtifactManager() instanceof ArtifactoryArtifactManager manager)) {
+                return;
+            }
+            try {
+                manager.recordResult(result);
+            } catch (Exception e) {
+                LOGGER.debug(String.format("Failed to set result of %s on its artifacts", run), e);
+            }
+        }
+    }
+}
@@ -1,30 +1,56 @@
 package io.jenkins.plugins.artifactory_artifacts;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.*;
 import hudson.model.BuildListener;
+import hudson.model.Computer;
+import hudson.model.FingerprintMap;
 import hudson.model.Item;
+import hudson.model.Node;
+import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.listeners.ItemListener;
 import hudson.remoting.VirtualChannel;
 import hudson.slaves.WorkspaceList;
+import hudson.tasks.Fingerprinter;
 import hudson.util.DirScanner;
-import hudson.util.io.ArchiverFactory;
+import hudson.util.FileVisitor;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
 import jenkins.agents.ControllerToAgentFileCallable;
 import jenkins.model.ArtifactManager;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import jenkins.util.VirtualFile;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
 import org.jenkinsci.plugins.workflow.flow.StashManager;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
@@ -36,21 +62,59 @@ public class ArtifactoryArtifactManager extends ArtifactManager implements Stash
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryArtifactManager.class);
     private static final int UPLOAD_THREADS = 4;
+    /**
+     * Maximum number of files sent to the agent per archive call
+     */
+    static final int ARCHIVE_CHUNK_SIZE = Math.max(
+            1, SystemProperties.getInteger(ArtifactoryArtifactManager.class.getName() + ".archiveChunkSize", 5000));
+    /**
+     * Whether to record Jenkins fingerprints of archived files from the checksums computed while uploading them
+     */
+    static final boolean RECORD_FINGERPRINTS =
+            SystemProperties.getBoolean(ArtifactoryArtifactManager.class.getName() + ".recordFingerprints", false);
+    /**
+     * Folder of the stash cache, relative to the root folder of agents
+     */
+    static final String STASH_CACHE_DIR = "caches/artifactory-stashes";
+    /**
+     * Minimum size of each shard of a sharded stash, smaller stashes are split in fewer shards
+     */
+    static final long MIN_SHARD_SIZE = SystemProperties.getLong(
+            ArtifactoryArtifactManager.class.getName() + ".minShardSize", 64L * 1024L * 1024L);
+    /**
+     * Name of the index of a sharded stash, in the folder of its shards
+     */
+    static final String SHARDS_INDEX = "shards.json";
+
     private transient Run<?, ?> build;
     private final ArtifactoryGenericArtifactConfig config;
+    /**
+     * Whether this build is stored under the stable job id instead of the job full name
+     */
+    private final boolean stableJobKey;
+    /**
+     * Whether artifacts of this build are stored in the content addressed layout
+     */
+    private final boolean contentAddressed;
+
     private transient String defaultKey;
+    private transient ArtifactoryManifest manifest;
 
     public ArtifactoryArtifactManager(Run<?, ?> build, ArtifactoryGenericArtifactConfig config) {
         this.config = config;
         this.build = build;
+        this.stableJobKey = config.isStableJobKeys();
+        this.contentAddressed = config.isContentAddressed();
         onLoad(build);
     }
 
     @Override
     public void onLoad(@NonNull Run<?, ?> build) {
         this.build = build;
-        this.defaultKey = String.format("%s/%s", build.getParent().getFullName(), build.getNumber())
-                .replace("%2F", "/");
+        String jobKey = stableJobKey
+                ? ArtifactoryJobKeys.get().keyFor(build.getParent().getFullName())
+                : build.getParent().getFullName();
+        this.defaultKey = String.format("%s/%s", jobKey, build.getNumber()).replace("%2F", "/");
     }
 
     @Override
@@ -59,38 +123,256 @@ public class ArtifactoryArtifactManager extends ArtifactManager implements Stash
         if (artifacts.isEmpty()) {
             return;
         }
-        List<UploadFile> files = new ArrayList<>();
+        keepJobFolder();
+        if (contentAddressed) {
+            archiveContentAddressed(workspace, artifacts);
+            return;
+        }
+        ArtifactoryClient.ArtifactoryConfig agentConfig = buildArtifactoryConfig(workspace);
+        Map<String, String> properties =
+                config.isBuildProperties() ? ArtifactoryArtifactIndex.propertiesOf(build) : Map.of();
+        String base = getFilePath("artifacts/");
+        // Files uploaded while the build was running are only moved if they did not change since
+        Map<String, ArtifactoryEagerUploads.Staged> eager = ArtifactoryEagerUploads.get().staged(build);
+        // Sent in chunks so neither side holds the whole file list in a single remoting payload
+        List<UploadFile> chunk = new ArrayList<>(Math.min(ARCHIVE_CHUNK_SIZE, artifacts.size()));
+        HashMap<String, ArtifactoryEagerUploads.Staged> staged = new HashMap<>();
+        Map<String, String> fingerprints = new LinkedHashMap<>();
         for (Map.Entry<String, String> entry : artifacts.entrySet()) {
-            String path = "artifacts/" + entry.getKey();
-            String filePath = getFilePath(path);
-            files.add(new UploadFile(entry.getValue(), filePath));
+            chunk.add(new UploadFile(entry.getValue(), entry.getKey()));
+            ArtifactoryEagerUploads.Staged file = eager.remove(entry.getValue());
+            if (file != null) {
+                staged.put(entry.getValue(), file);
+            }
+            if (chunk.size() >= ARCHIVE_CHUNK_SIZE) {
+                fingerprints.putAll(uploadChunk(workspace, agentConfig, base, chunk, staged, properties));
+                chunk = new ArrayList<>(ARCHIVE_CHUNK_SIZE);
+                staged = new HashMap<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            fingerprints.putAll(uploadChunk(workspace, agentConfig, base, chunk, staged, properties));
+        }
+        recordFingerprints(fingerprints);
+    }
+
+    /**
+     * Upload a chunk of files from the agent
+     * @return the MD5 checksums of the uploaded files by artifact path
+     */
+    private Map<String, String> uploadChunk(
+            FilePath workspace,
+            ArtifactoryClient.ArtifactoryConfig agentConfig,
+            String base,
+            List<UploadFile> chunk,
+            HashMap<String, ArtifactoryEagerUploads.Staged> staged,
+            Map<String, String> properties)
+            throws IOException, InterruptedException {
+        Map<String, ArtifactoryClient.Checksums> checksums = workspace.act(new UploadToArtifactoryStorage(
+                agentConfig, build.getExternalizableId(), base, chunk, staged, properties));
+        Map<String, String> md5s = new HashMap<>();
+        checksums.forEach((path, checksum) -> md5s.put(path, checksum.md5()));
+        return md5s;
+    }
+
+    /**
+     * Record the fingerprints of archived files, as the fingerprint option of the archive step would, without
+     * reading the files again
+     * @param md5s the MD5 checksums by artifact path
+     */
+    private void recordFingerprints(Map<String, String> md5s) throws IOException {
+        if (!RECORD_FINGERPRINTS || md5s.isEmpty()) {
+            return;
+        }
+        FingerprintMap map = Jenkins.get().getFingerprintMap();
+        for (Map.Entry<String, String> entry : md5s.entrySet()) {
+            map.getOrCreate(build, entry.getKey(), entry.getValue());
+        }
+        Fingerprinter.FingerprintAction action = build.getAction(Fingerprinter.FingerprintAction.class);
+        if (action == null) {
+            build.addAction(new Fingerprinter.FingerprintAction(build, md5s));
+        } else {
+            action.add(md5s);
+        }
+        LOGGER.debug(String.format("Recorded %d fingerprint(s) for %s", md5s.size(), build));
+    }
+
+    /**
+     * Set the result of the build on its artifacts
+     * @param result the result
+     * @throws IOException if the properties cannot be set
+     */
+    void recordResult(Result result) throws IOException {
+        if (!config.isBuildProperties() || contentAddressed) {
+            return;
+        }
+        String artifactsPath = getFilePath("artifacts");
+        try (ArtifactoryClient client = buildArtifactoryClient()) {
+            if (client.isFolder(artifactsPath)) {
+                client.setProperties(artifactsPath, Map.of(ArtifactoryArtifactIndex.BUILD_RESULT, result.toString()));
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Upload the content of artifacts not yet stored and record them in the build manifest
+     */
+    private void archiveContentAddressed(FilePath workspace, Map<String, String> artifacts)
+            throws IOException, InterruptedException {
+        Map<String, ArtifactoryManifest.Entry> hashes =
+                workspace.act(new HashArtifacts(new ArrayList<>(artifacts.values())));
+        Map<String, ArtifactoryManifest.Entry> files = new LinkedHashMap<>();
+        Map<String, BlobUpload> uploads = new LinkedHashMap<>();
+        Map<String, String> fingerprints = new LinkedHashMap<>();
+        for (Map.Entry<String, String> artifact : artifacts.entrySet()) {
+            ArtifactoryManifest.Entry entry = hashes.get(artifact.getValue());
+            files.put(artifact.getKey(), entry);
+            fingerprints.put(artifact.getKey(), entry.getMd5());
+            uploads.putIfAbsent(
+                    entry.getSha256(),
+                    new BlobUpload(
+                            artifact.getValue(),
+                            new ArtifactoryClient.Checksums(entry.getMd5(), entry.getSha1(), entry.getSha256()),
+                            ArtifactoryBlobStore.blobPath(entry.getSha256())));
+        }
+        Set<String> acquired = acquireBlobs(files.values());
+        try {
+            workspace.act(new UploadBlobs(
+                    buildArtifactoryConfig(workspace),
+                    build.getExternalizableId(),
+                    ArtifactoryBandwidthShaper.Priority.ARCHIVE,
+                    new ArrayList<>(uploads.values())));
+            commitManifest(files);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            ArtifactoryBlobStore.get().release(acquired);
+            throw e;
+        }
+        recordFingerprints(fingerprints);
+    }
+
+    /**
+     * Reference the blobs of new files before they are uploaded
+     * @return the blobs this build did not reference yet
+     */
+    private synchronized Set<String> acquireBlobs(Collection<ArtifactoryManifest.Entry> entries) throws IOException {
+        Set<String> blobs = new HashSet<>();
+        for (ArtifactoryManifest.Entry entry : entries) {
+            blobs.add(entry.getSha256());
+        }
+        blobs.removeAll(getManifest().getBlobs());
+        ArtifactoryBlobStore.get().acquire(blobs);
+        return blobs;
+    }
+
+    /**
+     * Add files to the manifest, upload it and release the blobs no longer referenced by this build
+     */
+    private synchronized void commitManifest(Map<String, ArtifactoryManifest.Entry> files) throws IOException {
+        ArtifactoryManifest current = getManifest();
+        Set<String> replaced = current.getBlobs();
+        files.forEach(current::put);
+        replaced.removeAll(current.getBlobs());
+        try (ArtifactoryClient client = buildArtifactoryClient()) {
+            client.uploadContent(current.toJson(), getFilePath(ArtifactoryManifest.NAME));
+        } catch (Exception e) {
+            // Reload the manifest stored on Artifactory on next use
+            this.manifest = null;
+            throw new IOException(String.format("Failed to upload manifest of %s", getRootPath()), e);
         }
+        ArtifactoryBlobStore.get().release(replaced);
+    }
 
-        workspace.act(new UploadToArtifactoryStorage(buildArtifactoryConfig(), files));
+    private synchronized ArtifactoryManifest getManifest() throws IOException {
+        if (manifest == null) {
+            String path = getFilePath(ArtifactoryManifest.NAME);
+            try (ArtifactoryClient client = buildArtifactoryClient()) {
+                if (client.isFile(path)) {
+                    try (InputStream is = client.downloadArtifact(path)) {
+                        manifest = ArtifactoryManifest.parse(is);
+                    }
+                } else {
+                    manifest = new ArtifactoryManifest();
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(String.format("Failed to load manifest %s", path), e);
+            }
+        }
+        return manifest;
     }
 
     @Override
     public boolean delete() throws IOException, InterruptedException {
         String virtualPath = getFilePath("");
-        LOGGER.trace(String.format("Deleting %s...", virtualPath));
-        try (ArtifactoryClient client = buildArtifactoryClient()) {
-            if (client.isFile(virtualPath) || client.isFolder(virtualPath)) {
-                client.deleteArtifact(virtualPath);
-            } else {
-                LOGGER.debug(String.format("No file or folder found at %s", virtualPath));
+        Set<String> manifestBlobs = Set.of();
+        if (contentAddressed) {
+            try {
+                manifestBlobs = getManifest().getBlobs();
+            } catch (IOException e) {
+                LOGGER.error(String.format("Failed to read manifest of %s, keeping it on Artifactory", virtualPath), e);
                 return false;
             }
-        } catch (Exception e) {
-            LOGGER.error(String.format("Failed to delete %s", virtualPath), e);
+        }
+        ArtifactoryStorageReferences references = ArtifactoryStorageReferences.get();
+        Map<String, ArtifactoryStorageReferences.Reference> referrers = references.referrersOf(getRootPath());
+        if (!referrers.isEmpty()) {
+            // Builds referencing this one must own their data before it goes away
+            try (ArtifactoryClient client = buildArtifactoryClient()) {
+                for (Map.Entry<String, ArtifactoryStorageReferences.Reference> entry : referrers.entrySet()) {
+                    materialize(client, getRootPath(), entry.getKey(), entry.getValue());
+                }
+            } catch (Exception e) {
+                LOGGER.error(
+                        String.format(
+                                "Failed to copy data of %s to the builds referencing it, keeping it on Artifactory",
+                                virtualPath),
+                        e);
+                return false;
+            }
+        }
+        // Only once nothing can keep the data of this build any more
+        references.remove(getRootPath());
+        ArtifactoryBlobStore blobs = ArtifactoryBlobStore.get();
+        blobs.release(manifestBlobs);
+        if (!blobs.isEmpty()) {
+            // Referencing builds took their own references on the blobs of copied stashes
+            try (ArtifactoryClient client = buildArtifactoryClient()) {
+                blobs.releaseUnder(client, getRootPath() + "/stashes");
+            } catch (Exception e) {
+                LOGGER.warn(String.format("Failed to release blobs of the stashes of %s", virtualPath), e);
+            }
+        }
+        LOGGER.trace(String.format("Queuing deletion of %s...", virtualPath));
+        if (!ArtifactoryDeletionQueue.get().enqueue(virtualPath)) {
+            LOGGER.error(String.format("Failed to queue deletion of %s", virtualPath));
             return false;
         }
-        LOGGER.trace(String.format("Deleted %s", virtualPath));
         return true;
     }
 
     @Override
     public VirtualFile root() {
-        return new ArtifactoryVirtualFile(getFilePath("artifacts"), build);
+        if (contentAddressed) {
+            ArtifactoryManifest current;
+            try {
+                current = getManifest();
+            } catch (IOException e) {
+                LOGGER.warn(String.format("Failed to load manifest of %s", getRootPath()), e);
+                current = new ArtifactoryManifest();
+            }
+            return new ArtifactoryManifestVirtualFile(getRootPath() + "/artifacts", current, "", build);
+        }
+        // Artifacts of a referenced build are read in place, under those archived by this build
+        ArtifactoryStorageReferences.Reference reference = ArtifactoryStorageReferences.get().get(getRootPath());
+        String referenced = reference != null && reference.getArtifacts() != null
+                ? reference.getArtifacts() + "/artifacts"
+                : null;
+        return new ArtifactoryVirtualFile(getRootPath() + "/artifacts", referenced, build);
     }
 
     @Override
@@ -105,20 +387,171 @@ public class ArtifactoryArtifactManager extends ArtifactManager implements Stash
             boolean useDefaultExcludes,
             boolean allowEmpty)
             throws IOException, InterruptedException {
+        keepJobFolder();
+        if (config.isPerFileStashes()) {
+            stashFiles(name, workspace, listener, includes, excludes, useDefaultExcludes, allowEmpty);
+            return;
+        }
         String path = getFilePath("stashes/" + name + ".tgz");
         FilePath tempDir = WorkspaceList.tempDir(workspace);
         if (tempDir == null) {
             throw new AbortException("Could not make temporary directory in " + workspace);
         }
-        workspace.act(new Stash(
-                buildArtifactoryConfig(),
+        if (config.getStashShards() > 1) {
+            stashShards(name, workspace, listener, includes, excludes, useDefaultExcludes, allowEmpty, tempDir);
+        } else {
+            workspace.act(new Stash(
+                    buildArtifactoryConfig(workspace),
+                    build.getExternalizableId(),
+                    path,
+                    includes,
+                    excludes,
+                    useDefaultExcludes,
+                    allowEmpty,
+                    tempDir.getRemote(),
+                    false,
+                    listener));
+        }
+        if (!ArtifactoryBlobStore.get().isEmpty()) {
+            // A stash of the same name stored file by file would take precedence on unstash
+            String manifestPath = getFilePath("stashes/" + name + ".json");
+            try (ArtifactoryClient client = buildArtifactoryClient()) {
+                Set<String> replaced = stashBlobs(client, manifestPath);
+                if (replaced != null) {
+                    client.deleteArtifact(manifestPath);
+                    ArtifactoryBlobStore.get().release(replaced);
+                }
+            } catch (Exception e) {
+                throw new IOException(String.format("Failed to replace stash %s", manifestPath), e);
+            }
+        }
+    }
+
+    /**
+     * Stash files as several archives of balanced sizes, compressed and uploaded in parallel, in a folder named after
+     * the stash with an index written last. Stashes too small to be split are stored as a single archive.
+     */
+    private void stashShards(
+            String name,
+            FilePath workspace,
+            TaskListener listener,
+            String includes,
+            String excludes,
+            boolean useDefaultExcludes,
+            boolean allowEmpty,
+            FilePath tempDir)
+            throws IOException, InterruptedException {
+        String path = getFilePath("stashes/" + name + ".tgz");
+        String folder = getFilePath("stashes/" + name);
+        try (ArtifactoryClient client = buildArtifactoryClient()) {
+            // Shards of a previous stash of the same name, possibly more of them
+            if (client.isFolder(folder)) {
+                client.deleteArtifact(folder);
+            }
+        } catch (Exception e) {
+            throw new IOException(String.format("Failed to replace stash %s", folder), e);
+        }
+        int shards = workspace.act(new StashShards(
+                buildArtifactoryConfig(workspace),
+                build.getExternalizableId(),
                 path,
+                folder,
                 includes,
                 excludes,
                 useDefaultExcludes,
                 allowEmpty,
                 tempDir.getRemote(),
+                config.getStashShards(),
+                MIN_SHARD_SIZE,
                 listener));
+        if (shards > 1) {
+            // A single archive of a previous stash of the same name would take precedence on unstash
+            try (ArtifactoryClient client = buildArtifactoryClient()) {
+                if (client.isFile(path)) {
+                    client.deleteArtifact(path);
+                }
+            } catch (Exception e) {
+                throw new IOException(String.format("Failed to replace stash %s", path), e);
+            }
+        }
+    }
+
+    /**
+     * Stash files one by one in the content addressed store, under a manifest listing them. Files whose content is
+     * already stored are deployed by checksum, the others are uploaded in parallel.
+     */
+    private void stashFiles(
+            String name,
+            FilePath workspace,
+            TaskListener listener,
+            String includes,
+            String excludes,
+            boolean useDefaultExcludes,
+            boolean allowEmpty)
+            throws IOException, InterruptedException {
+        Map<String, ArtifactoryManifest.Entry> hashes =
+                workspace.act(new HashStash(includes, excludes, useDefaultExcludes));
+        if (hashes.isEmpty() && !allowEmpty) {
+            throw new AbortException("No files included in stash");
+        }
+        ArtifactoryManifest stash = new ArtifactoryManifest();
+        Map<String, BlobUpload> uploads = new LinkedHashMap<>();
+        for (Map.Entry<String, ArtifactoryManifest.Entry> file : hashes.entrySet()) {
+            ArtifactoryManifest.Entry entry = file.getValue();
+            stash.put(file.getKey(), entry);
+            uploads.putIfAbsent(
+                    entry.getSha256(),
+                    new BlobUpload(
+                            file.getKey(),
+                            new ArtifactoryClient.Checksums(entry.getMd5(), entry.getSha1(), entry.getSha256()),
+                            ArtifactoryBlobStore.blobPath(entry.getSha256())));
+        }
+        String path = getFilePath("stashes/" + name + ".json");
+        ArtifactoryBlobStore blobs = ArtifactoryBlobStore.get();
+        Set<String> acquired = stash.getBlobs();
+        blobs.acquire(acquired);
+        Set<String> replaced;
+        try (ArtifactoryClient client = buildArtifactoryClient()) {
+            workspace.act(new UploadBlobs(
+                    buildArtifactoryConfig(workspace),
+                    build.getExternalizableId(),
+                    ArtifactoryBandwidthShaper.Priority.STASH,
+                    new ArrayList<>(uploads.values())));
+            replaced = stashBlobs(client, path);
+            client.uploadContent(stash.toJson(), path);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            blobs.release(acquired);
+            throw e;
+        } catch (Exception e) {
+            blobs.release(acquired);
+            throw new IOException(String.format("Failed to stash %s to %s", name, path), e);
+        }
+        if (replaced != null) {
+            blobs.release(replaced);
+        }
+        String archive = getFilePath("stashes/" + name + ".tgz");
+        try (ArtifactoryClient client = buildArtifactoryClient()) {
+            if (client.isFile(archive)) {
+                client.deleteArtifact(archive);
+            }
+        } catch (Exception e) {
+            LOGGER.warn(String.format("Failed to delete previous stash %s", archive), e);
+        }
+        listener.getLogger().printf("Stashed %d file(s) to %s%n", hashes.size(), path);
+    }
+
+    /**
+     * Blobs referenced by the manifest of a stash stored file by file
+     * @return the blobs, null if there is no such stash
+     */
+    @CheckForNull
+    private static Set<String> stashBlobs(ArtifactoryClient client, String path) throws IOException {
+        if (!client.isFile(path)) {
+            return null;
+        }
+        try (InputStream is = client.downloadArtifact(path)) {
+            return ArtifactoryManifest.parse(is).getBlobs();
+        }
     }
 
     @Override
@@ -129,27 +562,141 @@ public class ArtifactoryArtifactManager extends ArtifactManager implements Stash
             @NonNull EnvVars env,
             @NonNull TaskListener listener)
             throws IOException, InterruptedException {
-        String path = getFilePath("stashes/" + name + ".tgz");
+        unstash(name, workspace, listener, null, null);
+    }
+
+    /**
+     * Unstash the files of a stash matching patterns.
+     * Only the parts of the stash archive holding matching files are downloaded, or only the matching files of a
+     * stash stored file by file.
+     * @param name the name of the stash
+     * @param workspace the workspace to unstash to
+     * @param listener the listener
+     * @param includes comma separated Ant patterns of the files to unstash, null for all files
+     * @param excludes comma separated Ant patterns of the files not to unstash, can be null
+     * @throws IOException if the stash cannot be found or downloaded
+     * @throws InterruptedException if interrupted
+     */
+    public void unstash(
+            @NonNull String name,
+            @NonNull FilePath workspace,
+            @NonNull TaskListener listener,
+            @CheckForNull String includes,
+            @CheckForNull String excludes)
+            throws IOException, InterruptedException {
+        boolean selective = Util.fixEmptyAndTrim(includes) != null || Util.fixEmptyAndTrim(excludes) != null;
+        String owner = getStashOwner(name);
+        String path = owner + "/stashes/" + name + ".tgz";
+        String manifestPath = owner + "/stashes/" + name + ".json";
         FilePath tempDir = WorkspaceList.tempDir(workspace);
         if (tempDir == null) {
             throw new AbortException("Could not make temporary directory in " + workspace);
         }
+        String shardsPath = owner + "/stashes/" + name + "/" + SHARDS_INDEX;
+        ArtifactoryManifest stash = null;
+        List<String> shards = null;
         try (ArtifactoryClient client = buildArtifactoryClient()) {
-            if (!client.isFile(path)) {
-                throw new AbortException(String.format("No such saved stash ‘%s’ found at %s", name, path));
+            // Stashes stored file by file reference blobs, no need to look for them when no blob is referenced
+            if ((config.isPerFileStashes() || !ArtifactoryBlobStore.get().isEmpty())
+                    && client.isFile(manifestPath)) {
+                try (InputStream is = client.downloadArtifact(manifestPath)) {
+                    stash = ArtifactoryManifest.parse(is);
+                }
+            } else if (!client.isFile(path)) {
+                if (!client.isFile(shardsPath)) {
+                    throw new AbortException(String.format("No such saved stash ‘%s’ found at %s", name, path));
+                }
+                try (InputStream is = client.downloadArtifact(shardsPath)) {
+                    shards = parseShards(shardsPath, is);
+                }
             }
         } catch (Exception e) {
             throw new AbortException(String.format("Failed to stash %s from %s", name, path));
         }
-        workspace.act(new Unstash(buildArtifactoryConfig(), path, listener));
+        if (stash != null) {
+            Predicate<String> filter = Utils.pathFilter(includes, excludes);
+            List<StashFile> files = new ArrayList<>();
+            stash.getEntries().forEach((file, entry) -> {
+                if (filter.test(file)) {
+                    files.add(new StashFile(file, ArtifactoryBlobStore.blobPath(entry.getSha256()), entry));
+                }
+            });
+            workspace.act(new UnstashFiles(
+                    buildArtifactoryConfig(workspace), build.getExternalizableId(), files, listener));
+            return;
+        }
+        if (shards != null) {
+            if (!selective) {
+                workspace.act(new UnstashShards(
+                        buildArtifactoryConfig(workspace), build.getExternalizableId(), shards, listener));
+                return;
+            }
+            workspace.act(new UnstashSelected(
+                    buildArtifactoryConfig(workspace),
+                    build.getExternalizableId(),
+                    shards,
+                    includes,
+                    excludes,
+                    listener));
+            return;
+        }
+        if (selective) {
+            workspace.act(new UnstashSelected(
+                    buildArtifactoryConfig(workspace),
+                    build.getExternalizableId(),
+                    List.of(path),
+                    includes,
+                    excludes,
+                    listener));
+            return;
+        }
+        workspace.act(new Unstash(
+                buildArtifactoryConfig(workspace),
+                build.getExternalizableId(),
+                path,
+                stashCacheDir(config, workspace),
+                config.getStashCacheSize() * 1024L * 1024L,
+                listener));
+    }
+
+    /**
+     * Paths of the shards listed by the index of a sharded stash
+     */
+    private static List<String> parseShards(String indexPath, InputStream is) throws IOException {
+        String folder = indexPath.substring(0, indexPath.length() - SHARDS_INDEX.length());
+        JSONArray shards = JSONObject.fromObject(new String(is.readAllBytes(), StandardCharsets.UTF_8))
+                .getJSONArray("shards");
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            paths.add(folder + shards.getJSONObject(i).getString("path"));
+        }
+        return paths;
+    }
+
+    /**
+     * Folder of the stash cache on the agent of a workspace
+     * @return the remote path, null if stashes are not cached
+     */
+    @CheckForNull
+    static String stashCacheDir(ArtifactoryGenericArtifactConfig config, FilePath workspace) {
+        if (config.getStashCacheSize() <= 0) {
+            return null;
+        }
+        Computer computer = workspace.toComputer();
+        Node node = computer != null ? computer.getNode() : null;
+        FilePath root = node != null ? node.getRootPath() : null;
+        return root != null ? root.child(STASH_CACHE_DIR).getRemote() : null;
     }
 
     @Override
     public void clearAllStashes(@NonNull TaskListener listener) throws IOException, InterruptedException {
+        // Referenced stashes belong to another build
+        ArtifactoryStorageReferences.get().clearStashes(getRootPath());
         String virtualPath = getFilePath("stashes");
         LOGGER.trace(String.format("Deleting %s...", virtualPath));
         try (ArtifactoryClient client = buildArtifactoryClient()) {
             if (client.isFolder(virtualPath)) {
+                ArtifactoryBlobStore.get().releaseUnder(client, Utils.stripTrailingSlash(virtualPath));
                 client.deleteArtifact(virtualPath);
                 listener.getLogger().println("Deleted all stashes on Artifactory Storage");
                 LOGGER.debug(String.format("Deleted stash %s", virtualPath));
@@ -171,9 +718,16 @@ public class ArtifactoryArtifactManager extends ArtifactManager implements Stash
                     String.format("Cannot copy artifacts and stashes to %s using %s", to, artifactManager.getClass()));
         }
         ArtifactoryArtifactManager artifactoryArtifactManager = (ArtifactoryArtifactManager) artifactManager;
+        if (contentAddressed) {
+            copyManifest(artifactoryArtifactManager, listener);
+        }
+        if (artifactoryArtifactManager.config.isReferenceCopies()) {
+            referenceAllArtifactsAndStashes(artifactoryArtifactManager, listener);
+            return;
+        }
         try (ArtifactoryClient client = buildArtifactoryClient()) {
-            String stashedPath = getFilePath("stashes");
-            String artifactPath = getFilePath("artifacts");
+            String stashedPath = getStashesOwner(client) + "/stashes";
+            String artifactPath = getArtifactsOwner(client) + "/artifacts";
             String toStashedPath = artifactoryArtifactManager.getFilePath("stashes");
             String toArtifactPath = artifactoryArtifactManager.getFilePath("artifacts");
             if (client.isFolder(artifactPath)) {
@@ -187,6 +741,7 @@ public class ArtifactoryArtifactManager extends ArtifactManager implements Stash
                         .println(String.format("Copying stashes from %s to %s", stashedPath, toStashedPath));
                 LOGGER.debug(String.format("Copying stashes from %s to %s", stashedPath, toStashedPath));
                 client.copy(stashedPath, toStashedPath);
+                ArtifactoryBlobStore.get().acquireUnder(client, Utils.stripTrailingSlash(toStashedPath));
             }
         } catch (Exception e) {
             listener.getLogger()
@@ -195,52 +750,343 @@ public class ArtifactoryArtifactManager extends ArtifactManager implements Stash
         }
     }
 
+    /**
+     * Copy artifacts stored in the content addressed layout. Only the manifest is copied when the target build uses
+     * the same layout, otherwise each blob is copied to the regular artifacts folder of the target build.
+     */
+    private void copyManifest(ArtifactoryArtifactManager to, TaskListener listener) throws IOException {
+        Map<String, ArtifactoryManifest.Entry> files = getManifest().getEntries();
+        if (files.isEmpty()) {
+            return;
+        }
+        listener.getLogger().printf("Copying manifest of %d artifact(s) to %s%n", files.size(), to.build);
+        if (to.contentAddressed) {
+            Set<String> acquired = to.acquireBlobs(files.values());
+            try {
+                to.commitManifest(files);
+            } catch (IOException e) {
+                ArtifactoryBlobStore.get().release(acquired);
+                throw e;
+            }
+            return;
+        }
+        try (ArtifactoryClient client = buildArtifactoryClient()) {
+            for (Map.Entry<String, ArtifactoryManifest.Entry> file : files.entrySet()) {
+                client.copy(
+                        ArtifactoryBlobStore.blobPath(file.getValue().getSha256()),
+                        to.getFilePath("artifacts/" + file.getKey()));
+            }
+        } catch (Exception e) {
+            throw new IOException(String.format("Failed to copy artifacts to %s", to.getRootPath()), e);
+        }
+    }
+
+    /**
+     * Record that the given build reads artifacts and stashes from the build owning the data of this one
+     */
+    private void referenceAllArtifactsAndStashes(ArtifactoryArtifactManager to, TaskListener listener)
+            throws IOException {
+        try (ArtifactoryClient client = buildArtifactoryClient()) {
+            String artifactsOwner = getArtifactsOwner(client);
+            String stashesOwner = getStashesOwner(client);
+            boolean hasArtifacts = client.isFolder(artifactsOwner + "/artifacts");
+            boolean hasStashes = client.isFolder(stashesOwner + "/stashes");
+            if (hasArtifacts || hasStashes) {
+                listener.getLogger().printf("Referencing artifacts and stashes of %s from %s%n", build, to.build);
+                LOGGER.debug(String.format(
+                        "%s references artifacts of %s and stashes of %s",
+                        to.getRootPath(), artifactsOwner, stashesOwner));
+                ArtifactoryStorageReferences.get()
+                        .put(
+                                to.getRootPath(),
+                                hasArtifacts ? artifactsOwner : null,
+                                hasStashes ? stashesOwner : null);
+            }
+        } catch (Exception e) {
+            listener.getLogger()
+                    .printf(
+                            "Failed to reference artifact and stashes on Artifactory Storage. Details %s%n",
+                            e.getMessage());
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Copy the data a build references from a source build next to the data it wrote itself, then drop the reference
+     * @param client the client
+     * @param source the build root path owning the data
+     * @param target the referencing build root path
+     * @param reference the reference of the target build
+     */
+    private static void materialize(
+            ArtifactoryClient client, String source, String target, ArtifactoryStorageReferences.Reference reference)
+            throws IOException {
+        ArtifactoryStorageReferences references = ArtifactoryStorageReferences.get();
+        if (source.equals(reference.getArtifacts())) {
+            materialize(client, source + "/artifacts", target + "/artifacts", false);
+            references.clearArtifacts(target);
+        }
+        if (source.equals(reference.getStashes())) {
+            materialize(client, source + "/stashes", target + "/stashes", true);
+            references.clearStashes(target);
+        }
+    }
+
+    /**
+     * Copy a referenced folder. Files written by the referencing build take precedence: an artifact is only copied if
+     * the referencing build has no artifact of that path, a stash if it has no stash of that name.
+     * @param client the client
+     * @param from the folder of the source build
+     * @param to the same folder of the referencing build
+     * @param stashes whether the folder holds stashes
+     */
+    private static void materialize(ArtifactoryClient client, String from, String to, boolean stashes)
+            throws IOException {
+        if (!client.isFolder(from)) {
+            return;
+        }
+        LOGGER.debug(String.format("Copying referenced files from %s to %s", from, to));
+        if (!client.isFolder(to)) {
+            client.copy(from, to);
+            if (stashes) {
+                ArtifactoryBlobStore.get().acquireUnder(client, to);
+            }
+            return;
+        }
+        Set<String> own = new HashSet<>();
+        for (ArtifactoryClient.FileInfo file : client.listFiles(to)) {
+            own.add(materializedName(file.getPath().substring(to.length() + 1), stashes));
+        }
+        for (ArtifactoryClient.FileInfo file : client.listFiles(from)) {
+            String relative = file.getPath().substring(from.length() + 1);
+            if (own.contains(materializedName(relative, stashes))) {
+                continue;
+            }
+            String copy = to + "/" + relative;
+            client.copy(file.getPath(), copy);
+            if (stashes && ArtifactoryBlobStore.isManifest(copy)) {
+                try (InputStream is = client.downloadArtifact(copy)) {
+                    ArtifactoryBlobStore.get().acquire(ArtifactoryManifest.parse(is).getBlobs());
+                }
+            }
+        }
+    }
+
+    /**
+     * Artifact path, or stash name, of a file relative to the artifacts or stashes folder
+     */
+    private static String materializedName(String relative, boolean stashes) {
+        if (!stashes) {
+            return relative;
+        }
+        // <name>.tgz, <name>.json or the shards of <name>/
+        int slash = relative.indexOf('/');
+        if (slash >= 0) {
+            return relative.substring(0, slash);
+        }
+        int dot = relative.lastIndexOf('.');
+        return dot >= 0 ? relative.substring(0, dot) : relative;
+    }
+
+    /**
+     * Build root path owning all the artifacts visible from this build. Referenced artifacts are copied first if this
+     * build archived its own next to them, so they can be read from a single place.
+     */
+    private String getArtifactsOwner(ArtifactoryClient client) throws IOException {
+        ArtifactoryStorageReferences.Reference reference = ArtifactoryStorageReferences.get().get(getRootPath());
+        if (reference == null || reference.getArtifacts() == null) {
+            return getRootPath();
+        }
+        if (client.isFolder(getRootPath() + "/artifacts")) {
+            materialize(
+                    client,
+                    reference.getArtifacts(),
+                    getRootPath(),
+                    new ArtifactoryStorageReferences.Reference(reference.getArtifacts(), null));
+            return getRootPath();
+        }
+        return reference.getArtifacts();
+    }
+
+    /**
+     * Build root path owning all the stashes visible from this build. Referenced stashes are copied first if this
+     * build stashed its own next to them, so they can be read from a single place.
+     */
+    private String getStashesOwner(ArtifactoryClient client) throws IOException {
+        ArtifactoryStorageReferences.Reference reference = ArtifactoryStorageReferences.get().get(getRootPath());
+        if (reference == null || reference.getStashes() == null) {
+            return getRootPath();
+        }
+        if (client.isFolder(getRootPath() + "/stashes")) {
+            materialize(
+                    client,
+                    reference.getStashes(),
+                    getRootPath(),
+                    new ArtifactoryStorageReferences.Reference(null, reference.getStashes()));
+            return getRootPath();
+        }
+        return reference.getStashes();
+    }
+
+    /**
+     * Build root path owning a stash. Stashes of a referenced build are read in place unless this build stashed files
+     * under the same name since.
+     */
+    private String getStashOwner(String name) throws IOException {
+        ArtifactoryStorageReferences.Reference reference = ArtifactoryStorageReferences.get().get(getRootPath());
+        if (reference == null || reference.getStashes() == null) {
+            return getRootPath();
+        }
+        String stash = getRootPath() + "/stashes/" + name;
+        try (ArtifactoryClient client = buildArtifactoryClient()) {
+            if (client.isFolder(getRootPath() + "/stashes")
+                    && (client.isFile(stash + ".tgz")
+                            || client.isFile(stash + ".json")
+                            || client.isFile(stash + "/" + SHARDS_INDEX))) {
+                return getRootPath();
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(String.format("Failed to look up stash %s", stash), e);
+        }
+        return reference.getStashes();
+    }
+
+    /**
+     * Whether artifacts of this build are stored in the content addressed layout
+     */
+    boolean isContentAddressed() {
+        return contentAddressed;
+    }
+
+    /**
+     * Folder of the files uploaded ahead of archiving
+     */
+    String getEagerUploadsPath() {
+        return getFilePath(ArtifactoryEagerUploads.FOLDER + "/");
+    }
+
+    /**
+     * Delete the files uploaded ahead of archiving that were never archived
+     */
+    void clearEagerUploads() throws IOException {
+        String path = getFilePath(ArtifactoryEagerUploads.FOLDER);
+        try (ArtifactoryClient client = buildArtifactoryClient()) {
+            if (client.isFolder(path)) {
+                ArtifactoryDeletionQueue.get().enqueue(path);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Make sure the deletion of a deleted job of the same name, still queued, does not remove the data of this build
+     */
+    private void keepJobFolder() throws InterruptedException {
+        if (stableJobKey) {
+            // A new job gets a new id
+            return;
+        }
+        keepJobFolder(build.getParent().getFullName());
+    }
+
+    /**
+     * Cancel the queued deletion of the folder of a job, or wait for it if it is already running
+     * @param fullName the full name of the job
+     */
+    static void keepJobFolder(String fullName) throws InterruptedException {
+        String path = Utils.getFilePath(fullName, "");
+        ArtifactoryDeletionQueue queue = ArtifactoryDeletionQueue.get();
+        if (queue.cancel(path)) {
+            return;
+        }
+        LOGGER.debug(String.format("Waiting for the deletion of %s to complete", path));
+        queue.awaitDeletion(path);
+    }
+
+    private String getRootPath() {
+        return Utils.stripTrailingSlash(getFilePath(""));
+    }
+
     private String getFilePath(String path) {
         return Utils.getFilePath(defaultKey, path);
     }
 
     private ArtifactoryClient buildArtifactoryClient() {
-        return new ArtifactoryClient(this.config.getServerUrl(), this.config.getRepository(), Utils.getCredentials());
+        return new ArtifactoryClient(this.config.getServerUrl(), this.config.getRepository(), Utils.getCredentials())
+                .withLane(ArtifactoryRequestScheduler.Lane.BUILD, Utils.ownerOf(build));
     }
 
-    private ArtifactoryClient.ArtifactoryConfig buildArtifactoryConfig() {
+    private ArtifactoryClient.ArtifactoryConfig buildArtifactoryConfig(FilePath workspace) {
+        return buildArtifactoryConfig(config, workspace);
+    }
+
+    /**
+     * Build the config sent to the agent of a workspace, with the bandwidth cap resolved from its labels
+     */
+    static ArtifactoryClient.ArtifactoryConfig buildArtifactoryConfig(
+            ArtifactoryGenericArtifactConfig config, FilePath workspace) {
+        Computer computer = workspace.toComputer();
+        Node node = computer != null ? computer.getNode() : null;
         return new ArtifactoryClient.ArtifactoryConfig(
-                this.config.getServerUrl(),
-                this.config.getRepository(),
+                config.getServerUrl(),
+                config.getRepository(),
                 Utils.getCredentials(),
-                this.config.getMaxUploadRetries(),
-                this.config.getRetryDelaySeconds());
+                config.getMaxUploadRetries(),
+                config.getRetryDelaySeconds(),
+                node != null ? config.getBandwidthLimit(node) : 0);
     }
 
+    /**
+     * A blob to upload from the workspace, with the checksums computed when hashing the files to archive
+     */
+    private record BlobUpload(String name, ArtifactoryClient.Checksums checksums, String path)
+            implements Serializable {}
+
+    /**
+     * A file to archive. The artifact path is only kept when it differs from the workspace path, to keep the remoting
+     * payload small
+     */
     private static class UploadFile implements Serializable {
         private final String name;
-        private final String url;
+        private final String path;
 
-        public UploadFile(String name, String url) {
+        public UploadFile(String name, String path) {
             this.name = name;
-            this.url = url;
+            this.path = name.equals(path) ? null : path;
         }
 
         public String getName() {
             return name;
         }
 
-        public String getUrl() {
-            return url;
+        /**
+         * Path of the artifact, relative to the artifacts folder
+         */
+        public String getPath() {
+            return path != null ? path : name;
         }
     }
 
     /**
      * Master to slave callable that stashes files to Artifactory storage.
+     * Archives are indexed so a subset of the files can be unstashed with ranged downloads. Also saves caches,
+     * compressed with the fastest level as they are large and written often.
      */
-    private record Stash(
+    record Stash(
             ArtifactoryClient.ArtifactoryConfig config,
+            String owner,
             String path,
             String includes,
             String excludes,
             boolean useDefaultExcludes,
             boolean allowEmpty,
             String tempDir,
+            boolean fastCompression,
             TaskListener listener)
             implements ControllerToAgentFileCallable<Void> {
 
@@ -255,14 +1101,10 @@ public class ArtifactoryArtifactManager extends ArtifactManager implements Stash
             try {
                 int count;
                 try (OutputStream os = Files.newOutputStream(tmp)) {
-                    count = new FilePath(f)
-                            .archive(
-                                    ArchiverFactory.TARGZ,
-                                    os,
-                                    new DirScanner.Glob(
-                                            Util.fixEmpty(includes) == null ? "**" : includes,
-                                            excludes,
-                                            useDefaultExcludes));
+                    DirScanner scanner = new DirScanner.Glob(
+                            Util.fixEmpty(includes) == null ? "**" : includes, excludes, useDefaultExcludes);
+                    count = ArtifactoryTar.archive(
+                            f, scanner, os, fastCompression ? Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION);
                 } catch (InvalidPathException e) {
                     throw new IOException(e);
                 }
@@ -274,7 +1116,8 @@ public class ArtifactoryArtifactManager extends ArtifactManager implements Stash
                 try {
                     executeWithRetry(
                             () -> {
-                                try (ArtifactoryClient client = new ArtifactoryClient(this.config)) {
+                                try (ArtifactoryClient client = new ArtifactoryClient(this.config)
+                                        .withTransferPriority(ArtifactoryBandwidthShaper.Priority.STASH, owner)) {
                                     client.uploadArtifact(tmp, path);
                                 }
                             },
@@ -299,9 +1142,248 @@ public class ArtifactoryArtifactManager extends ArtifactManager implements Stash
     }
 
     /**
-     * Master to slave callable that unstashes files from Artifactory storage.
+     * A file or link to stash, with its size to balance shards
+     */
+    record ShardEntry(String path, long size, @CheckForNull String link) implements Serializable {}
+
+    /**
+     * Scanner replaying the entries of a shard
+     */
+    private static final class ShardScanner extends DirScanner {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final List<ShardEntry> entries;
+
+        private ShardScanner(List<ShardEntry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public void scan(File dir, FileVisitor visitor) throws IOException {
+            for (ShardEntry entry : entries) {
+                File file = new File(dir, entry.path());
+                if (entry.link() != null && visitor.understandsSymlink()) {
+                    visitor.visitSymlink(file, entry.link(), entry.path());
+                } else {
+                    visitor.visit(file, entry.path());
+                }
+            }
+        }
+    }
+
+    /**
+     * Master to slave callable that stashes files as several archives compressed and uploaded in parallel.
+     * Files are spread over the shards largest first, each to the shard holding the fewest bytes so far, which keeps
+     * the shards within a few percent of each other. The index listing the shards is uploaded last, once all of them
+     * were stored. Stashes too small to be split are stored as a single archive by {@link Stash}.
+     */
+    record StashShards(
+            ArtifactoryClient.ArtifactoryConfig config,
+            String owner,
+            String path,
+            String folder,
+            String includes,
+            String excludes,
+            boolean useDefaultExcludes,
+            boolean allowEmpty,
+            String tempDir,
+            int shards,
+            long minShardSize,
+            TaskListener listener)
+            implements ControllerToAgentFileCallable<Integer> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Integer invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+            List<ShardEntry> entries = new ArrayList<>();
+            try {
+                new DirScanner.Glob(Util.fixEmpty(includes) == null ? "**" : includes, excludes, useDefaultExcludes)
+                        .scan(f, new FileVisitor() {
+                            @Override
+                            public void visit(File file, String relativePath) throws IOException {
+                                long size = file.isFile() ? Files.size(file.toPath()) : 0;
+                                entries.add(new ShardEntry(relativePath.replace('\\', '/'), size, null));
+                            }
+
+                            @Override
+                            public boolean understandsSymlink() {
+                                return true;
+                            }
+
+                            @Override
+                            public void visitSymlink(File link, String target, String relativePath) {
+                                entries.add(new ShardEntry(relativePath.replace('\\', '/'), 0, target));
+                            }
+                        });
+            } catch (InvalidPathException e) {
+                throw new IOException(e);
+            }
+            long total = entries.stream().mapToLong(ShardEntry::size).sum();
+            int count = (int) Math.min(Math.min(shards, entries.size()), total / Math.max(1, minShardSize));
+            if (count <= 1) {
+                Stash stash = new Stash(
+                        config,
+                        owner,
+                        path,
+                        includes,
+                        excludes,
+                        useDefaultExcludes,
+                        allowEmpty,
+                        tempDir,
+                        false,
+                        listener);
+                stash.invoke(f, channel);
+                return 1;
+            }
+            List<List<ShardEntry>> partition = partition(entries, count);
+            Path tempDirP = Paths.get(tempDir);
+            Files.createDirectories(tempDirP);
+            JSONArray index = new JSONArray();
+            for (int i = 0; i < count; i++) {
+                index.add(new JSONObject().element("path", shardName(i)).element("files", partition.get(i).size()));
+            }
+            AtomicLong compressed = new AtomicLong();
+            try (ArtifactoryClient client = new ArtifactoryClient(this.config)
+                    .withTransferPriority(ArtifactoryBandwidthShaper.Priority.STASH, owner)) {
+                try {
+                    ArtifactoryExecutors.forEachBounded(
+                            IntStream.range(0, count).iterator(),
+                            count,
+                            i -> compressed.addAndGet(
+                                    upload(client, f, tempDirP, partition.get(i), folder + "/" + shardName(i))));
+                } catch (IOException e) {
+                    throw new AbortException("Unable to stash files to Artifactory. Details: " + e.getMessage());
+                }
+                // The stash only exists once its index is stored
+                client.uploadContent(
+                        new JSONObject().element("shards", index).toString().getBytes(StandardCharsets.UTF_8),
+                        folder + "/" + SHARDS_INDEX);
+                listener.getLogger()
+                        .printf(
+                                "Stashed %d file(s) to %d shards of %d bytes in total at %s%n",
+                                entries.size(), count, compressed.get(), folder);
+            } catch (IOException | InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e.getMessage(), e);
+            } finally {
+                listener.getLogger().flush();
+            }
+            return count;
+        }
+
+        private static String shardName(int i) {
+            return "shard-" + i + ".tgz";
+        }
+
+        /**
+         * Archive a shard and upload it
+         * @return the size of the archive
+         */
+        private long upload(ArtifactoryClient client, File f, Path tempDirP, List<ShardEntry> shard, String target)
+                throws IOException {
+            Path tmp = Files.createTempFile(tempDirP, "shard", ".tgz");
+            try {
+                try (OutputStream os = Files.newOutputStream(tmp)) {
+                    ArtifactoryTar.archive(f, new ShardScanner(shard), os, Deflater.DEFAULT_COMPRESSION);
+                }
+                executeWithRetry(
+                        () -> client.uploadArtifact(tmp, target),
+                        "Uploading shard to " + target,
+                        this.config.getMaxUploadRetries(),
+                        this.config.getRetryDelaySeconds() * 1000L,
+                        "Unable to stash files to Artifactory");
+                return Files.size(tmp);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        /**
+         * Spread entries over shards, largest first to the shard holding the fewest bytes, in path order in each shard
+         */
+        static List<List<ShardEntry>> partition(List<ShardEntry> entries, int count) {
+            List<ShardEntry> sorted = new ArrayList<>(entries);
+            sorted.sort(Comparator.comparingLong(ShardEntry::size).reversed());
+            List<List<ShardEntry>> shards = new ArrayList<>();
+            long[] sizes = new long[count];
+            for (int i = 0; i < count; i++) {
+                shards.add(new ArrayList<>());
+            }
+            for (ShardEntry entry : sorted) {
+                int smallest = 0;
+                for (int i = 1; i < count; i++) {
+                    if (sizes[i] < sizes[smallest]) {
+                        smallest = i;
+                    }
+                }
+                shards.get(smallest).add(entry);
+                sizes[smallest] += entry.size();
+            }
+            for (List<ShardEntry> shard : shards) {
+                shard.sort(Comparator.comparing(ShardEntry::path));
+            }
+            return shards;
+        }
+    }
+
+    /**
+     * Master to slave callable that downloads and extracts the shards of a stash in parallel
+     */
+    private record UnstashShards(
+            ArtifactoryClient.ArtifactoryConfig config, String owner, List<String> paths, TaskListener listener)
+            implements ControllerToAgentFileCallable<Void> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Void invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+            try (ArtifactoryClient client = new ArtifactoryClient(this.config)
+                    .withTransferPriority(ArtifactoryBandwidthShaper.Priority.STASH, owner)) {
+                AtomicInteger count = new AtomicInteger();
+                ArtifactoryExecutors.forEachBounded(paths.iterator(), paths.size(), path -> {
+                    AtomicInteger extracted = new AtomicInteger();
+                    executeWithRetry(
+                            () -> {
+                                try (InputStream is = client.downloadArtifact(path)) {
+                                    extracted.set(ArtifactoryUntar.extract(is, f));
+                                    is.transferTo(OutputStream.nullOutputStream());
+                                }
+                            },
+                            "Unstashing " + path,
+                            this.config.getMaxUploadRetries(),
+                            this.config.getRetryDelaySeconds() * 1000L,
+                            "Unable to download stash");
+                    count.addAndGet(extracted.get());
+                });
+                listener.getLogger().printf("Unstashed %d file(s) from %d shards%n", count.get(), paths.size());
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                LOGGER.error("Unable to unstash files from Artifactory", e);
+                throw new AbortException("Unable to unstash files from Artifactory. Details: " + e.getMessage());
+            } finally {
+                listener.getLogger().flush();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Master to slave callable that unstashes files from Artifactory storage. Also restores caches.
      */
-    private record Unstash(ArtifactoryClient.ArtifactoryConfig config, String path, TaskListener listener)
+    record Unstash(
+            ArtifactoryClient.ArtifactoryConfig config,
+            String owner,
+            String path,
+            @CheckForNull String cacheDir,
+            long cacheSize,
+            TaskListener listener)
             implements ControllerToAgentFileCallable<Void> {
 
         @Serial
@@ -309,68 +1391,442 @@ public class ArtifactoryArtifactManager extends ArtifactManager implements Stash
 
         @Override
         public Void invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
-            try (ArtifactoryClient client = new ArtifactoryClient(this.config)) {
-                try (InputStream is = client.downloadArtifact(path)) {
-                    new FilePath(f).untarFrom(is, FilePath.TarCompression.GZIP);
-                } finally {
-                    listener.getLogger().flush();
-                }
+            try (ArtifactoryClient client = new ArtifactoryClient(this.config)
+                    .withTransferPriority(ArtifactoryBandwidthShaper.Priority.STASH, owner)) {
+                // Cut bodies are resumed by the client, corrupted ones are downloaded again
+                executeWithRetry(
+                        () -> {
+                            InputStream cached = cacheDir != null
+                                    ? new ArtifactoryStashCache(Paths.get(cacheDir), cacheSize).open(client, path)
+                                    : null;
+                            try (InputStream is = cached != null ? cached : client.downloadArtifact(path)) {
+                                ArtifactoryUntar.extract(is, f);
+                                // The archive may end before the compressed stream, read it up to the checksum check
+                                is.transferTo(OutputStream.nullOutputStream());
+                            }
+                        },
+                        "Unstashing " + path,
+                        this.config.getMaxUploadRetries(),
+                        this.config.getRetryDelaySeconds() * 1000L,
+                        "Unable to download stash");
             } catch (Exception e) {
                 LOGGER.error("Unable to unstash files from Artifactory", e);
                 throw new AbortException("Unable to unstash files from Artifactory. Details: " + e.getMessage());
+            } finally {
+                listener.getLogger().flush();
             }
             return null;
         }
     }
 
     /**
-     * Master to slave callable that uploads files to Artifactory storage.
+     * Master to slave callable that unstashes the files of stash archives matching patterns, the archives of a sharded
+     * stash in parallel.
+     * The index at the end of an archive gives the gzip members holding matching entries, which are fetched with
+     * ranged downloads and verified against the checksums of the index. Archives without an index are downloaded
+     * whole and filtered on extraction.
      */
-    private record UploadToArtifactoryStorage(ArtifactoryClient.ArtifactoryConfig config, List<UploadFile> files)
+    private record UnstashSelected(
+            ArtifactoryClient.ArtifactoryConfig config,
+            String owner,
+            List<String> paths,
+            String includes,
+            String excludes,
+            TaskListener listener)
             implements ControllerToAgentFileCallable<Void> {
 
+        @Serial
+        private static final long serialVersionUID = 1L;
+
         @Override
-        public Void invoke(File folder, VirtualChannel channel) throws IOException, InterruptedException {
-            try (ArtifactoryClient client = new ArtifactoryClient(this.config)) {
-                ExecutorService executor = Executors.newFixedThreadPool(UPLOAD_THREADS);
-                try {
-                    CompletableFuture<Void> allUploads = CompletableFuture.allOf(files.stream()
-                            .map(file -> CompletableFuture.runAsync(
-                                    () -> upload(client, folder, file, this.config), executor))
-                            .toArray(CompletableFuture[]::new));
-                    allUploads.get();
-                } finally {
-                    executor.shutdown();
+        public Void invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+            Predicate<String> filter = Utils.pathFilter(includes, excludes);
+            try (ArtifactoryClient client = new ArtifactoryClient(this.config)
+                    .withTransferPriority(ArtifactoryBandwidthShaper.Priority.STASH, owner)) {
+                ArtifactoryExecutors.forEachBounded(
+                        paths.iterator(), paths.size(), path -> unstash(client, f, path, filter));
+            } catch (Exception e) {
+                LOGGER.error("Unable to unstash files from Artifactory", e);
+                throw new AbortException("Unable to unstash files from Artifactory. Details: " + e.getMessage());
+            } finally {
+                listener.getLogger().flush();
+            }
+            return null;
+        }
+
+        /**
+         * Unstash the matching files of an archive
+         */
+        private void unstash(ArtifactoryClient client, File f, String path, Predicate<String> filter) {
+            executeWithRetry(
+                    () -> {
+                        long size = client.stat(path).getSize();
+                        List<ArtifactoryTar.Range> ranges = ranges(client, path, size, filter);
+                        int count = 0;
+                        long fetched = 0;
+                        if (ranges == null) {
+                            try (InputStream is = client.downloadArtifact(path)) {
+                                count = ArtifactoryUntar.extract(is, f, filter);
+                                is.transferTo(OutputStream.nullOutputStream());
+                            }
+                            fetched = size;
+                        } else {
+                            for (ArtifactoryTar.Range range : ranges) {
+                                try (InputStream is = ArtifactoryTar.verify(
+                                        client.downloadRange(path, range.offset(), range.length()), range)) {
+                                    count += ArtifactoryUntar.extract(is, f, filter);
+                                    // Read to the end so the last members are verified too
+                                    is.transferTo(OutputStream.nullOutputStream());
+                                }
+                                fetched += range.length();
+                            }
+                        }
+                        listener.getLogger()
+                                .printf("Unstashed %d file(s), downloaded %d of %d bytes%n", count, fetched, size);
+                    },
+                    "Unstashing " + path,
+                    this.config.getMaxUploadRetries(),
+                    this.config.getRetryDelaySeconds() * 1000L,
+                    "Unable to download stash");
+        }
+
+        /**
+         * Ranges of the archive holding the matching entries
+         * @return the ranges, or null if the archive has no index
+         */
+        @CheckForNull
+        private static List<ArtifactoryTar.Range> ranges(
+                ArtifactoryClient client, String path, long size, Predicate<String> filter) throws IOException {
+            long footerOffset = size - ArtifactoryTar.FOOTER_SIZE;
+            if (footerOffset < 0) {
+                return null;
+            }
+            byte[] footer;
+            try (InputStream is = client.downloadRange(path, footerOffset, ArtifactoryTar.FOOTER_SIZE)) {
+                footer = is.readAllBytes();
+            }
+            long indexOffset = ArtifactoryTar.indexOffset(footer);
+            if (indexOffset < 0 || indexOffset >= footerOffset) {
+                LOGGER.debug(String.format("Stash %s has no index, downloading it whole", path));
+                return null;
+            }
+            try (InputStream is = client.downloadRange(path, indexOffset, footerOffset - indexOffset)) {
+                return ArtifactoryTar.select(is, filter);
+            }
+        }
+    }
+
+    /**
+     * A file of a stash stored file by file, with the path of its blob computed on the controller
+     */
+    private record StashFile(String name, String path, ArtifactoryManifest.Entry entry) implements Serializable {}
+
+    /**
+     * Master to slave callable that restores a stash stored file by file.
+     * Files already in the workspace with the stashed content are kept, the others are downloaded in parallel.
+     */
+    private record UnstashFiles(
+            ArtifactoryClient.ArtifactoryConfig config, String owner, List<StashFile> files, TaskListener listener)
+            implements ControllerToAgentFileCallable<Void> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Void invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+            Path root = f.toPath().toAbsolutePath().normalize();
+            Files.createDirectories(root);
+            Path realRoot = root.toRealPath();
+            // Folders are created upfront, refusing any path leading out of the workspace
+            Set<Path> created = new HashSet<>();
+            created.add(root);
+            for (StashFile file : files) {
+                ArtifactoryUntar.createDirectories(
+                        realRoot, ArtifactoryUntar.resolve(root, file.name()).getParent(), created);
+            }
+            List<StashFile> ordered = new ArrayList<>(files);
+            ordered.sort(Comparator.comparingLong((StashFile file) -> file.entry().getSize()).reversed());
+            AtomicInteger downloaded = new AtomicInteger();
+            try (ArtifactoryClient client = new ArtifactoryClient(this.config)
+                    .withTransferPriority(ArtifactoryBandwidthShaper.Priority.STASH, owner)) {
+                ArtifactoryExecutors.forEachBounded(ordered.iterator(), UPLOAD_THREADS, file -> {
+                    Path target = ArtifactoryUntar.resolve(root, file.name());
+                    if (isUpToDate(target, file.entry())) {
+                        return;
+                    }
+                    executeWithRetry(
+                            () -> {
+                                // Replaces links and read-only files left by a previous unstash
+                                Files.deleteIfExists(target);
+                                client.downloadTo(file.path(), target, false);
+                            },
+                            "Unstashing " + file.name() + " from " + file.path(),
+                            this.config.getMaxUploadRetries(),
+                            this.config.getRetryDelaySeconds() * 1000L,
+                            "Unable to download " + file.name());
+                    ArtifactoryUntar.restore(target, file.entry().getMode(), file.entry().getLastModified());
+                    downloaded.incrementAndGet();
+                });
+                listener.getLogger()
+                        .printf(
+                                "Unstashed %d file(s), %d already up to date%n",
+                                downloaded.get(), files.size() - downloaded.get());
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                LOGGER.error("Unable to unstash files from Artifactory", e);
+                throw new AbortException("Unable to unstash files from Artifactory. Details: " + e.getMessage());
+            } finally {
+                listener.getLogger().flush();
+            }
+            return null;
+        }
+
+        /**
+         * Whether a workspace file already holds the stashed content. Files of the same size and modification time
+         * are kept as is, like rsync does, others of the same size are compared by checksum.
+         */
+        private static boolean isUpToDate(Path target, ArtifactoryManifest.Entry entry) throws IOException {
+            if (!Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS) || Files.size(target) != entry.getSize()) {
+                return false;
+            }
+            if (entry.getLastModified() > 0
+                    && Files.getLastModifiedTime(target).toMillis() == entry.getLastModified()) {
+                return true;
+            }
+            try (ArtifactoryClient.ChecksumInputStream is =
+                    new ArtifactoryClient.ChecksumInputStream(Files.newInputStream(target))) {
+                is.transferTo(OutputStream.nullOutputStream());
+                return entry.getSha256().equals(is.getChecksums().sha256());
+            }
+        }
+    }
+
+    /**
+     * Master to slave callable that computes the checksums of the files to stash.
+     */
+    private record HashStash(String includes, String excludes, boolean useDefaultExcludes)
+            implements ControllerToAgentFileCallable<Map<String, ArtifactoryManifest.Entry>> {
+
+        @Override
+        public Map<String, ArtifactoryManifest.Entry> invoke(File f, VirtualChannel channel)
+                throws IOException, InterruptedException {
+            List<String> names = new ArrayList<>();
+            try {
+                // Links are followed, their targets are stashed as regular files
+                new DirScanner.Glob(Util.fixEmpty(includes) == null ? "**" : includes, excludes, useDefaultExcludes)
+                        .scan(f, new FileVisitor() {
+                            @Override
+                            public void visit(File file, String relativePath) {
+                                if (file.isFile()) {
+                                    names.add(relativePath.replace('\\', '/'));
+                                }
+                            }
+                        });
+            } catch (InvalidPathException e) {
+                throw new IOException(e);
+            }
+            return new HashArtifacts(names).invoke(f, channel);
+        }
+    }
+
+    /**
+     * Master to slave callable that computes the checksums of files to archive.
+     */
+    private record HashArtifacts(List<String> names)
+            implements ControllerToAgentFileCallable<Map<String, ArtifactoryManifest.Entry>> {
+
+        @Override
+        public Map<String, ArtifactoryManifest.Entry> invoke(File folder, VirtualChannel channel)
+                throws IOException, InterruptedException {
+            ExecutorService executor = Executors.newFixedThreadPool(UPLOAD_THREADS);
+            try {
+                Map<String, CompletableFuture<ArtifactoryManifest.Entry>> futures = new LinkedHashMap<>();
+                for (String name : names) {
+                    futures.put(
+                            name, CompletableFuture.supplyAsync(() -> hash(new File(folder, name)), executor));
+                }
+                Map<String, ArtifactoryManifest.Entry> hashes = new HashMap<>();
+                for (Map.Entry<String, CompletableFuture<ArtifactoryManifest.Entry>> future : futures.entrySet()) {
+                    hashes.put(future.getKey(), future.getValue().get());
+                }
+                return hashes;
+            } catch (ExecutionException e) {
+                throw new IOException("Unable to compute checksums of files to archive", e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        private static ArtifactoryManifest.Entry hash(File file) {
+            // All checksums in a single read, MD5 is kept for fingerprints
+            try (ArtifactoryClient.ChecksumInputStream is =
+                    new ArtifactoryClient.ChecksumInputStream(Files.newInputStream(file.toPath()))) {
+                byte[] buffer = new byte[64 * 1024];
+                while (is.read(buffer) > 0) {
+                    // Hash
                 }
+                ArtifactoryClient.Checksums checksums = is.getChecksums();
+                return new ArtifactoryManifest.Entry(
+                        checksums.sha256(),
+                        checksums.sha1(),
+                        checksums.md5(),
+                        file.length(),
+                        file.lastModified(),
+                        ArtifactoryUntar.mode(file.toPath()));
+            } catch (IOException e) {
+                throw new IllegalStateException(String.format("Failed to hash %s", file), e);
+            }
+        }
+    }
+
+    /**
+     * Master to slave callable that uploads blobs to Artifactory storage.
+     * Content already known to Artifactory is deployed by checksum without sending it.
+     */
+    private record UploadBlobs(
+            ArtifactoryClient.ArtifactoryConfig config,
+            String owner,
+            ArtifactoryBandwidthShaper.Priority priority,
+            List<BlobUpload> blobs)
+            implements ControllerToAgentFileCallable<Void> {
+
+        @Override
+        public Void invoke(File folder, VirtualChannel channel) throws IOException, InterruptedException {
+            try (ArtifactoryClient client = new ArtifactoryClient(this.config).withTransferPriority(priority, owner)) {
+                ArtifactoryExecutors.forEachBounded(
+                        largestFirst(folder, blobs, BlobUpload::name).iterator(),
+                        UPLOAD_THREADS,
+                        blob -> executeWithRetry(
+                                () -> {
+                                    if (!client.deployByChecksum(blob.checksums().sha1(), blob.path())) {
+                                        // Fails if the file changed since it was hashed
+                                        client.uploadArtifact(
+                                                new File(folder, blob.name()).toPath(),
+                                                blob.path(),
+                                                Map.of(),
+                                                blob.checksums());
+                                    }
+                                },
+                                "Uploading " + blob.name() + " to " + blob.path(),
+                                config.getMaxUploadRetries(),
+                                config.getRetryDelaySeconds() * 1000L,
+                                "Failed to upload " + blob.name()));
+            } catch (InterruptedException e) {
+                throw e;
             } catch (Exception e) {
                 LOGGER.error("Unable to upload files to Artifactory", e);
                 throw new AbortException("Unable to upload files to Artifactory. Details: " + e.getMessage());
             }
             return null;
         }
+    }
+
+    /**
+     * Master to slave callable that uploads files to Artifactory storage.
+     * Returns the checksums of the uploaded files by artifact path, computed while sending them. Files uploaded ahead
+     * of archiving and unchanged since are moved instead.
+     */
+    private record UploadToArtifactoryStorage(
+            ArtifactoryClient.ArtifactoryConfig config,
+            String owner,
+            String base,
+            List<UploadFile> files,
+            Map<String, ArtifactoryEagerUploads.Staged> staged,
+            Map<String, String> properties)
+            implements ControllerToAgentFileCallable<Map<String, ArtifactoryClient.Checksums>> {
+
+        @Override
+        public Map<String, ArtifactoryClient.Checksums> invoke(File folder, VirtualChannel channel)
+                throws IOException, InterruptedException {
+            Map<String, ArtifactoryClient.Checksums> checksums = new ConcurrentHashMap<>();
+            try (ArtifactoryClient client = new ArtifactoryClient(this.config)
+                    .withTransferPriority(ArtifactoryBandwidthShaper.Priority.ARCHIVE, owner)) {
+                // Workers pull from a bounded queue, memory doesn't depend on the number of files
+                ArtifactoryExecutors.forEachBounded(
+                        largestFirst(folder, files, UploadFile::getName).iterator(),
+                        UPLOAD_THREADS,
+                        file -> upload(client, folder, file, this.config, checksums));
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                LOGGER.error("Unable to upload files to Artifactory", e);
+                throw new AbortException("Unable to upload files to Artifactory. Details: " + e.getMessage());
+            }
+            return new HashMap<>(checksums);
+        }
 
         private void upload(
                 ArtifactoryClient client,
                 File folder,
                 UploadFile uploadFile,
-                ArtifactoryClient.ArtifactoryConfig config) {
+                ArtifactoryClient.ArtifactoryConfig config,
+                Map<String, ArtifactoryClient.Checksums> checksums) {
             File sourceFile = new File(folder, uploadFile.getName());
             String filePath = sourceFile.toPath().toString();
-            String targetUrl = uploadFile.getUrl();
+            String targetUrl = base + uploadFile.getPath();
+            ArtifactoryEagerUploads.Staged eager = staged.get(uploadFile.getName());
+            if (eager != null && eager.matches(sourceFile) && commit(client, eager, targetUrl)) {
+                checksums.put(uploadFile.getPath(), eager.checksums());
+                return;
+            }
 
             try {
                 executeWithRetry(
-                        () -> client.uploadArtifact(sourceFile.toPath(), targetUrl),
+                        () -> checksums.put(
+                                uploadFile.getPath(),
+                                client.uploadArtifact(sourceFile.toPath(), targetUrl, properties)),
                         "Uploading " + filePath + " to " + targetUrl,
                         config.getMaxUploadRetries(),
                         config.getRetryDelaySeconds() * 1000L, // Convert seconds to milliseconds
                         "Failed to upload " + filePath);
                 LOGGER.debug(String.format("Successfully uploaded %s to %s", filePath, targetUrl));
             } catch (RuntimeException e) {
-                // Re-throw as RuntimeException to be handled by the CompletableFuture
+                // Re-throw as RuntimeException to be reported by the upload workers
                 throw e;
             }
         }
+
+        /**
+         * Move a file uploaded ahead of archiving to its artifact path
+         * @return whether it was moved, else it is uploaded again
+         */
+        private boolean commit(ArtifactoryClient client, ArtifactoryEagerUploads.Staged eager, String targetUrl) {
+            try {
+                client.move(eager.path(), targetUrl);
+                if (!properties.isEmpty()) {
+                    client.setProperties(targetUrl, properties);
+                }
+                LOGGER.debug(String.format("Moved %s uploaded ahead of archiving to %s", eager.path(), targetUrl));
+                return true;
+            } catch (IOException e) {
+                LOGGER.debug(String.format("Failed to move %s to %s, uploading it again", eager.path(), targetUrl), e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Order files to upload largest first. Workers take the next file as soon as they are free, so the longest
+     * uploads start first and small files fill the remaining workers, which keeps a large file picked last from
+     * setting the wall time of the whole archive.
+     * @param folder the workspace folder
+     * @param items the files to upload
+     * @param name the path of a file relative to the folder
+     * @return the files, largest first
+     */
+    static <T> List<T> largestFirst(File folder, List<T> items, Function<T, String> name) {
+        List<Map.Entry<T, Long>> sized = new ArrayList<>(items.size());
+        for (T item : items) {
+            // Missing files sort last and fail on upload as before
+            sized.add(Map.entry(item, new File(folder, name.apply(item)).length()));
+        }
+        sized.sort(Map.Entry.<T, Long>comparingByValue().reversed());
+        List<T> ordered = new ArrayList<>(sized.size());
+        for (Map.Entry<T, Long> entry : sized) {
+            ordered.add(entry.getKey());
+        }
+        return ordered;
     }
 
     /**
@@ -388,41 +1844,79 @@ public class ArtifactoryArtifactManager extends ArtifactManager implements Stash
                 return;
             }
 
-            String path = Utils.stripTrailingSlash(Utils.getFilePath(item.getFullName(), ""));
-            LOGGER.debug(String.format("Checking if %s must be deleted on Artifactory Storage", path));
-            try (ArtifactoryClient client =
-                    new ArtifactoryClient(config.getServerUrl(), config.getRepository(), Utils.getCredentials())) {
-                if (client.isFolder(path)) {
-                    LOGGER.debug(String.format("Deleting %s...", path));
-                    client.deleteArtifact(path);
-                    LOGGER.debug(String.format("Deleted %s on Artifactory Storage", path));
-                }
-            } catch (Exception e) {
-                LOGGER.error(String.format("Failed to delete %s", path), e);
+            ArtifactoryDeletionQueue queue = ArtifactoryDeletionQueue.get();
+            ArtifactoryStorageReferences references = ArtifactoryStorageReferences.get();
+            List<String> paths = new ArrayList<>();
+            paths.add(Utils.getFilePath(item.getFullName(), ""));
+            for (String key : ArtifactoryJobKeys.get().remove(item.getFullName())) {
+                paths.add(Utils.getFilePath(key, ""));
+            }
+            // Builds of deleted jobs are not deleted one by one, the queue releases their blobs from the manifests
+            boolean releaseBlobs = !ArtifactoryBlobStore.get().isEmpty();
+            for (String path : paths) {
+                references.removeUnder(Utils.stripTrailingSlash(path));
+                queue.enqueue(path, releaseBlobs);
+            }
+        }
+
+        /**
+         * A job created with the name of a deleted job keeps the folder of the deleted job rather than lose its own
+         * builds when the queued deletion runs
+         */
+        @Override
+        public void onCreated(Item item) {
+            ArtifactoryGenericArtifactConfig config = Utils.getArtifactConfig();
+
+            // Not configured, or a new job gets a new id
+            if (config == null || config.isStableJobKeys()) {
+                return;
+            }
+
+            if (!ArtifactoryDeletionQueue.get().cancel(Utils.getFilePath(item.getFullName(), ""))) {
+                // Builds wait for the deletion before archiving or stashing
+                LOGGER.debug(String.format("Folder of %s is being deleted", item.getFullName()));
             }
         }
 
         @Override
         public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            // Builds stored under a stable job id only need the mapping to be updated
+            int relocated = ArtifactoryJobKeys.get().relocate(oldFullName, newFullName);
+            if (relocated > 0) {
+                LOGGER.debug(String.format(
+                        "Relocated %d job key(s) from %s to %s", relocated, oldFullName, newFullName));
+            }
+
             ArtifactoryGenericArtifactConfig config = Utils.getArtifactConfig();
+
+            // Not configured
+            if (config == null) {
+                return;
+            }
+
             String sourcePath = Utils.stripTrailingSlash(Utils.getFilePath(oldFullName, ""));
             String targetPath = Utils.stripTrailingSlash(Utils.getFilePath(newFullName, ""));
             LOGGER.debug(
                     String.format("Checking if %s must be moved to %s on Artifactory Storage", sourcePath, targetPath));
-            try (ArtifactoryClient client =
-                    new ArtifactoryClient(config.getServerUrl(), config.getRepository(), Utils.getCredentials())) {
+            try (ArtifactoryClient client = new ArtifactoryClient(
+                            config.getServerUrl(), config.getRepository(), Utils.getCredentials())
+                    .withLane(ArtifactoryRequestScheduler.Lane.BUILD, newFullName)) {
+                // The target may be the folder of a deleted job still queued for deletion
+                keepJobFolder(newFullName);
                 if (client.isFolder(sourcePath)) {
                     LOGGER.debug(String.format("Moving %s...", sourcePath));
                     client.move(sourcePath, targetPath);
                     LOGGER.debug(String.format("Moving %s on Artifactory Storage", targetPath));
+                    ArtifactoryStorageReferences.get().relocate(sourcePath, targetPath);
 
                     // TODO: We move all artifact but previous build artifacts still reference old name
-                    // We should update the references to the new name ?
+                    // We should update the references to the new name ? Enabling stable job keys avoids the move.
 
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
-                LOGGER.error(
-                        String.format("Failed to move %s to %s. Artifactory Pro is needed", sourcePath, targetPath));
+                LOGGER.error(String.format("Failed to move %s to %s", sourcePath, targetPath), e);
             }
         }
     }
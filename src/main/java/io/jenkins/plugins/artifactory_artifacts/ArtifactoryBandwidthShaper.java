@@ -0,0 +1,349 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Agent-wide shaping of transfers to and from Artifactory.
+ * All callables running in the same agent JVM share a number of transfer slots and a token bucket. Stash and unstash
+ * transfers are admitted and served before archive transfers, and waiting transfers of the same priority are admitted
+ * round-robin per build so concurrent builds get a fair share. The bandwidth cap is resolved on the controller from
+ * the agent labels and sent with each callable.
+ */
+@Restricted(NoExternalUse.class)
+public final class ArtifactoryBandwidthShaper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryBandwidthShaper.class);
+
+    static final int MAX_TRANSFERS =
+            SystemProperties.getInteger(ArtifactoryBandwidthShaper.class.getName() + ".maxTransfers", 8);
+
+    /**
+     * Longest wait for tokens before checking again, so a raised cap or a new stash is picked up quickly
+     */
+    private static final long MAX_WAIT_MILLIS = 100;
+
+    private static final ArtifactoryBandwidthShaper INSTANCE = new ArtifactoryBandwidthShaper(MAX_TRANSFERS);
+
+    /**
+     * Transfer priorities, in admission order
+     */
+    public enum Priority {
+        /**
+         * Stash and unstash, a stage is waiting for them
+         */
+        STASH,
+        /**
+         * Bulk artifact uploads
+         */
+        ARCHIVE
+    }
+
+    private final int maxTransfers;
+    private final EnumMap<Priority, LinkedHashMap<String, ArrayDeque<Waiter>>> queues = new EnumMap<>(Priority.class);
+    private int active;
+
+    /**
+     * Explicit locks rather than monitors, so virtual threads waiting for a slot or tokens don't pin their carrier
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition admitted = lock.newCondition();
+    private final ReentrantLock bucket = new ReentrantLock();
+    private final Condition refilled = bucket.newCondition();
+    private long rate;
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private int stashWaiting;
+
+    ArtifactoryBandwidthShaper(int maxTransfers) {
+        this.maxTransfers = Math.max(1, maxTransfers);
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new LinkedHashMap<>());
+        }
+    }
+
+    public static ArtifactoryBandwidthShaper get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Wait for a transfer slot
+     * @param priority the priority of the transfer
+     * @param owner the build the transfer is made for, used for fairness
+     * @param bytesPerSecond the bandwidth cap of this agent, 0 for no cap
+     * @return the transfer to close once completed
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public Transfer begin(@NonNull Priority priority, @NonNull String owner, long bytesPerSecond)
+            throws InterruptedIOException {
+        lock.lock();
+        try {
+            if (!hasWaiting(priority) && active < maxTransfers) {
+                active++;
+                return new Transfer(this, priority, bytesPerSecond);
+            }
+            Waiter waiter = new Waiter();
+            queues.get(priority).computeIfAbsent(owner, k -> new ArrayDeque<>()).add(waiter);
+            LOGGER.trace(String.format("Queued %s transfer of %s, %d transfer(s) active", priority, owner, active));
+            try {
+                while (!waiter.admitted) {
+                    admitted.await();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    end();
+                } else {
+                    remove(priority, owner, waiter);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a transfer slot");
+            }
+            return new Transfer(this, priority, bytesPerSecond);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of active transfers
+     * @return the number of transfers
+     */
+    public int getActive() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of transfers waiting for a slot
+     * @param priority the priority
+     * @return the number of transfers
+     */
+    public int getWaiting(@NonNull Priority priority) {
+        lock.lock();
+        try {
+            int waiting = 0;
+            for (ArrayDeque<Waiter> waiters : queues.get(priority).values()) {
+                waiting += waiters.size();
+            }
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether transfers of the same or a higher priority are waiting
+     */
+    private boolean hasWaiting(Priority priority) {
+        for (Priority other : Priority.values()) {
+            if (!queues.get(other).isEmpty()) {
+                return true;
+            }
+            if (other == priority) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private void end() {
+        lock.lock();
+        try {
+            active--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Admit waiting transfers while slots are free, by priority then round-robin per build
+     */
+    private void dispatch() {
+        boolean signal = false;
+        for (Priority priority : Priority.values()) {
+            LinkedHashMap<String, ArrayDeque<Waiter>> owners = queues.get(priority);
+            while (!owners.isEmpty() && active < maxTransfers) {
+                // Round-robin: serve the first owner then move it to the end
+                Iterator<Map.Entry<String, ArrayDeque<Waiter>>> it = owners.entrySet().iterator();
+                Map.Entry<String, ArrayDeque<Waiter>> next = it.next();
+                it.remove();
+                Waiter waiter = next.getValue().poll();
+                if (!next.getValue().isEmpty()) {
+                    owners.put(next.getKey(), next.getValue());
+                }
+                if (waiter != null) {
+                    active++;
+                    waiter.admitted = true;
+                    signal = true;
+                }
+            }
+        }
+        if (signal) {
+            admitted.signalAll();
+        }
+    }
+
+    private void remove(Priority priority, String owner, Waiter waiter) {
+        ArrayDeque<Waiter> waiters = queues.get(priority).get(owner);
+        if (waiters != null) {
+            waiters.remove(waiter);
+            if (waiters.isEmpty()) {
+                queues.get(priority).remove(owner);
+            }
+        }
+    }
+
+    /**
+     * Take tokens for bytes already transferred, waiting while the bucket is in debt.
+     * Archive transfers also wait while a stash transfer is waiting for tokens.
+     * @param priority the priority of the transfer
+     * @param bytesPerSecond the bandwidth cap, 0 for no cap
+     * @param bytes the number of bytes transferred
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    void consume(Priority priority, long bytesPerSecond, int bytes) throws InterruptedIOException {
+        if (bytesPerSecond <= 0 || bytes <= 0) {
+            return;
+        }
+        bucket.lock();
+        try {
+            if (rate != bytesPerSecond) {
+                // Latest cap resolved for this agent
+                rate = bytesPerSecond;
+                tokens = Math.min(tokens, rate);
+            }
+            boolean stash = priority == Priority.STASH;
+            if (stash) {
+                stashWaiting++;
+            }
+            try {
+                while (true) {
+                    refill();
+                    if (tokens > 0 && (stash || stashWaiting == 0)) {
+                        tokens -= bytes;
+                        return;
+                    }
+                    long millis = tokens > 0 ? MAX_WAIT_MILLIS : (long) Math.ceil(-tokens * 1000 / rate) + 1;
+                    refilled.await(Math.min(MAX_WAIT_MILLIS, millis), TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+            } finally {
+                if (stash) {
+                    stashWaiting--;
+                }
+                refilled.signalAll();
+            }
+        } finally {
+            bucket.unlock();
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        // At most one second of burst
+        tokens = Math.min(rate, tokens + (double) rate * (now - refilledAt) / TimeUnit.SECONDS.toNanos(1));
+        refilledAt = now;
+    }
+
+    private static final class Waiter {
+        private boolean admitted;
+    }
+
+    /**
+     * An admitted transfer, closing it admits the next waiting transfer
+     */
+    public static final class Transfer implements AutoCloseable {
+
+        static final Transfer NONE = new Transfer(null, Priority.ARCHIVE, 0);
+
+        private final ArtifactoryBandwidthShaper shaper;
+        private final Priority priority;
+        private final long bytesPerSecond;
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        private Transfer(ArtifactoryBandwidthShaper shaper, Priority priority, long bytesPerSecond) {
+            this.shaper = shaper;
+            this.priority = priority;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        /**
+         * Whether the bandwidth of this transfer is capped
+         * @return true if streams must be throttled
+         */
+        public boolean isThrottled() {
+            return shaper != null && bytesPerSecond > 0;
+        }
+
+        /**
+         * Throttle a stream to the bandwidth cap. Closing the stream also ends the transfer
+         * @param is the stream to throttle
+         * @return the throttled stream
+         */
+        public InputStream throttle(InputStream is) {
+            return new FilterInputStream(is) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0 && isThrottled()) {
+                        shaper.consume(priority, bytesPerSecond, 1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (isThrottled()) {
+                        shaper.consume(priority, bytesPerSecond, read);
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Transfer.this.close();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            if (shaper == null) {
+                return;
+            }
+            if (ended.compareAndSet(false, true)) {
+                shaper.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reference counts of the blobs of the content addressed layout.
+ * Blobs are stored once under {@code @cas/<first 2 chars of sha256>/<sha256>} and shared by all builds whose
+ * manifest, or the manifest of one of their stashes, references them. A blob is queued for deletion when the last
+ * manifest referencing it is deleted.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class ArtifactoryBlobStore implements Saveable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryBlobStore.class);
+
+    /**
+     * Root folder of the blobs. '@' is not allowed in item names so it cannot clash with a job folder.
+     */
+    static final String FOLDER = "@cas";
+
+    /**
+     * Manifest of a build, {@code <job>/<build number>/manifest.json}, or of a stash stored file by file,
+     * {@code <job>/<build number>/stashes/<name>.json}
+     */
+    private static final Pattern MANIFEST =
+            Pattern.compile("(?:.*/)?\\d+/(?:" + Pattern.quote(ArtifactoryManifest.NAME) + "|stashes/[^/]+\\.json)");
+
+    /**
+     * Files archived by a build, which may have any name
+     */
+    private static final Pattern BUILD_FILES = Pattern.compile("(?:.*/)?\\d+/(?:artifacts|eager)/.*");
+
+    private Map<String, Integer> references = new ConcurrentHashMap<>();
+
+    public ArtifactoryBlobStore() {
+        load();
+    }
+
+    public static ArtifactoryBlobStore get() {
+        return ExtensionList.lookupSingleton(ArtifactoryBlobStore.class);
+    }
+
+    /**
+     * Return the path of a blob
+     * @param sha256 the SHA-256 of the content
+     * @return the path relative to the repository
+     */
+    static String blobPath(@NonNull String sha256) {
+        return Utils.getFilePath(FOLDER, sha256.substring(0, 2) + "/" + sha256);
+    }
+
+    /**
+     * Add a reference to blobs. Called before uploading so a pending deletion cannot remove a blob being reused.
+     * When the deletion of a blob already started, waits for it to complete so the blob is uploaded again rather
+     * than deployed by checksum right before it is deleted.
+     * @param blobs the SHA-256 of the blobs
+     * @throws IOException if interrupted while waiting for a deletion
+     */
+    public void acquire(@NonNull Collection<String> blobs) throws IOException {
+        if (blobs.isEmpty()) {
+            return;
+        }
+        ArtifactoryDeletionQueue queue = ArtifactoryDeletionQueue.get();
+        List<String> deleting = new ArrayList<>();
+        synchronized (this) {
+            for (String blob : blobs) {
+                if (references.merge(blob, 1, Integer::sum) == 1 && !queue.cancel(blobPath(blob))) {
+                    deleting.add(blobPath(blob));
+                }
+            }
+            saveQuietly();
+        }
+        try {
+            for (String path : deleting) {
+                LOGGER.debug(String.format("Waiting for the deletion of reused blob %s", path));
+                queue.awaitDeletion(path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(blobs);
+            throw new InterruptedIOException("Interrupted while waiting for the deletion of reused blobs");
+        }
+    }
+
+    /**
+     * Remove a reference to blobs and queue the unreferenced ones for deletion
+     * @param blobs the SHA-256 of the blobs
+     * @return the blobs that are no longer referenced
+     */
+    public synchronized List<String> release(@NonNull Collection<String> blobs) {
+        List<String> unreferenced = new ArrayList<>();
+        if (blobs.isEmpty()) {
+            return unreferenced;
+        }
+        for (String blob : blobs) {
+            Integer count = references.computeIfPresent(blob, (k, v) -> v > 1 ? v - 1 : null);
+            if (count == null) {
+                unreferenced.add(blob);
+            }
+        }
+        saveQuietly();
+        ArtifactoryDeletionQueue queue = ArtifactoryDeletionQueue.get();
+        for (String blob : unreferenced) {
+            LOGGER.debug(String.format("Blob %s is no longer referenced", blob));
+            queue.enqueue(blobPath(blob));
+        }
+        return unreferenced;
+    }
+
+    /**
+     * Release the blobs of all manifests stored under a path, before the path is deleted
+     * @param client the client
+     * @param path a job, folder, build or stashes path
+     */
+    void releaseUnder(@NonNull ArtifactoryClient client, @NonNull String path) {
+        if (references.isEmpty()) {
+            return;
+        }
+        try {
+            release(blobsUnder(client, path));
+        } catch (Exception e) {
+            LOGGER.warn(String.format("Failed to release blobs referenced under %s", path), e);
+        }
+    }
+
+    /**
+     * Reference the blobs of all manifests stored under a path, after the path was copied
+     * @param client the client
+     * @param path a build or stashes path
+     * @throws IOException if the manifests cannot be read
+     */
+    void acquireUnder(@NonNull ArtifactoryClient client, @NonNull String path) throws IOException {
+        acquire(blobsUnder(client, path));
+    }
+
+    /**
+     * Blobs of the manifests stored under a path, once per manifest referencing them
+     */
+    private static List<String> blobsUnder(ArtifactoryClient client, String path) throws IOException {
+        List<String> blobs = new ArrayList<>();
+        if (!client.isFolder(path)) {
+            return blobs;
+        }
+        for (ArtifactoryClient.FileInfo file : client.listFiles(path)) {
+            if (!isManifest(file.getPath())) {
+                continue;
+            }
+            // A manifest that cannot be read must not prevent the others from being released
+            try (InputStream is = client.downloadArtifact(file.getPath())) {
+                blobs.addAll(ArtifactoryManifest.parse(is).getBlobs());
+            } catch (Exception e) {
+                LOGGER.warn(String.format("Failed to read manifest %s, its blobs stay referenced", file.getPath()), e);
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Whether a file is the manifest of a build or of a stash stored file by file, not an archived file of the same
+     * name
+     */
+    static boolean isManifest(String path) {
+        return MANIFEST.matcher(path).matches() && !BUILD_FILES.matcher(path).matches();
+    }
+
+    /**
+     * Number of builds referencing a blob
+     * @param sha256 the SHA-256 of the blob
+     * @return the reference count
+     */
+    public int getReferenceCount(@NonNull String sha256) {
+        return references.getOrDefault(sha256, 0);
+    }
+
+    public boolean isEmpty() {
+        return references.isEmpty();
+    }
+
+    private XmlFile getConfigFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.get().getRootDir(), getClass().getName() + ".xml"));
+    }
+
+    private synchronized void load() {
+        XmlFile file = getConfigFile();
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            file.unmarshal(this);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Failed to load %s", file), e);
+        }
+        if (references == null) {
+            references = new ConcurrentHashMap<>();
+        } else if (!(references instanceof ConcurrentHashMap)) {
+            references = new ConcurrentHashMap<>(references);
+        }
+    }
+
+    @Override
+    public synchronized void save() throws IOException {
+        getConfigFile().write(this);
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            LOGGER.error("Failed to save Artifactory blob references", e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import jenkins.util.SystemProperties;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically deletes the caches of the {@link ArtifactoryCacheStep} that were not restored for the configured
+ * number of days. The last use of a cache is the {@link ArtifactoryCacheStep#LAST_USED} property set by each
+ * restore, or its creation when it was never restored, so a single AQL query finds all expired caches. Download
+ * statistics are not used as they are updated asynchronously and also count downloads other than restores.
+ * Deletions go through the {@link ArtifactoryDeletionQueue}.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class ArtifactoryCacheRetention extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryCacheRetention.class);
+
+    static final long RECURRENCE_MINUTES =
+            SystemProperties.getLong(ArtifactoryCacheRetention.class.getName() + ".recurrenceMinutes", 360L);
+
+    public ArtifactoryCacheRetention() {
+        super("Artifactory cache retention");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(Math.max(1, RECURRENCE_MINUTES));
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        ArtifactoryGenericArtifactConfig config = Utils.getArtifactConfig();
+        if (config == null || config.getCacheRetentionDays() <= 0) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(config.getCacheRetentionDays());
+        List<String> expired = expire(config, cutoff);
+        listener.getLogger().printf("Queued %d expired cache(s) for deletion%n", expired.size());
+    }
+
+    /**
+     * Queue the deletion of the caches not restored since a date
+     * @param config the config
+     * @param cutoff the date in milliseconds since the epoch
+     * @return the paths of the expired caches
+     * @throws IOException if the caches cannot be queried
+     */
+    static List<String> expire(ArtifactoryGenericArtifactConfig config, long cutoff) throws IOException {
+        JSONObject criteria = new JSONObject();
+        criteria.put("repo", config.getRepository());
+        criteria.put("type", "file");
+        // Caches are stored in a folder per scope
+        criteria.put("path", new JSONObject().element("$match", Utils.getFilePath(ArtifactoryCacheStep.FOLDER, "*")));
+        criteria.put("name", new JSONObject().element("$match", "*.tgz"));
+        // Caches created since the cutoff cannot be expired yet
+        criteria.put("created", new JSONObject().element("$lt", Instant.ofEpochMilli(cutoff).toString()));
+        String query = "items.find(" + criteria + ").include(\"repo\",\"path\",\"name\",\"created\",\"property\")";
+
+        List<String> expired = new ArrayList<>();
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                        config.getServerUrl(), config.getRepository(), Utils.getCredentials())
+                .withLane(ArtifactoryRequestScheduler.Lane.BACKGROUND, "cache-retention")) {
+            JSONArray results = client.aql(query);
+            for (int i = 0; i < results.size(); i++) {
+                JSONObject item = results.getJSONObject(i);
+                long lastUsed = ArtifactoryClient.parseTimestamp(item.optString("created", null));
+                JSONArray properties = item.optJSONArray("properties");
+                for (int j = 0; properties != null && j < properties.size(); j++) {
+                    JSONObject property = properties.getJSONObject(j);
+                    if (ArtifactoryCacheStep.LAST_USED.equals(property.optString("key"))) {
+                        String value = property.optString("value", null);
+                        lastUsed = Math.max(lastUsed, ArtifactoryClient.parseTimestamp(value));
+                    }
+                }
+                if (lastUsed < cutoff) {
+                    expired.add(item.getString("path") + "/" + item.getString("name"));
+                }
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to query caches on Artifactory", e);
+        }
+        for (String path : expired) {
+            LOGGER.debug(String.format("Cache %s expired", path));
+            ArtifactoryDeletionQueue.get().enqueue(path);
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,413 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.WorkspaceList;
+import hudson.util.DirScanner;
+import hudson.util.FileVisitor;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serial;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import jenkins.MasterToSlaveFileCallable;
+import org.jenkinsci.plugins.workflow.steps.GeneralNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache a folder of the workspace across builds, such as a local Maven repository or {@code node_modules}.
+ * The folder is restored from the cache of the key, or from the most recent cache matching a restore key, before the
+ * body runs. Once the body succeeded, the folder is saved under the key unless the key was already saved.
+ * Caches are archives stored in the Artifactory repository, created with the fastest compression level. They are
+ * scoped by top-level item, so the jobs of a folder or the branches of a multibranch project share their caches, but
+ * a job cannot restore or save the caches of jobs it does not share a top-level item with.
+ */
+public class ArtifactoryCacheStep extends Step {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryCacheStep.class);
+
+    /**
+     * Folder of the caches, under the prefix
+     */
+    static final String FOLDER = "@caches";
+
+    /**
+     * Property recording the last time a cache was restored, used to expire caches not restored for a while
+     */
+    static final String LAST_USED = "cache.lastUsed";
+
+    private static final Pattern KEY = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]*");
+
+    private final String path;
+    private final String key;
+    private String hashFiles;
+    private List<String> restoreKeys = new ArrayList<>();
+    private String excludes;
+
+    @DataBoundConstructor
+    public ArtifactoryCacheStep(String path, String key) {
+        this.path = path;
+        this.key = key;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getHashFiles() {
+        return hashFiles;
+    }
+
+    /**
+     * Files whose content is hashed into the key, usually lock files
+     * @param hashFiles Ant-style pattern relative to the workspace
+     */
+    @DataBoundSetter
+    public void setHashFiles(String hashFiles) {
+        this.hashFiles = Util.fixEmptyAndTrim(hashFiles);
+    }
+
+    public List<String> getRestoreKeys() {
+        return restoreKeys;
+    }
+
+    /**
+     * Prefixes of keys to restore from when the key was not saved yet, in order of preference
+     * @param restoreKeys the prefixes
+     */
+    @DataBoundSetter
+    public void setRestoreKeys(List<String> restoreKeys) {
+        this.restoreKeys = restoreKeys != null ? new ArrayList<>(restoreKeys) : new ArrayList<>();
+    }
+
+    public String getExcludes() {
+        return excludes;
+    }
+
+    @DataBoundSetter
+    public void setExcludes(String excludes) {
+        this.excludes = Util.fixEmptyAndTrim(excludes);
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new Execution(this, context);
+    }
+
+    /**
+     * Path of the archive of a cache
+     * @param scope the scope of the cache, see {@link #scopeOf(Run)}
+     * @param key the key of the cache
+     */
+    static String cachePath(String scope, String key) {
+        return Utils.getFilePath(FOLDER + "/" + scope, key + ".tgz");
+    }
+
+    /**
+     * Scope of the caches of a build: the name of the top-level item of its job
+     */
+    static String scopeOf(Run<?, ?> run) {
+        String fullName = run.getParent().getFullName();
+        int slash = fullName.indexOf('/');
+        return slash >= 0 ? fullName.substring(0, slash) : fullName;
+    }
+
+    private static void validate(String key) throws AbortException {
+        if (key == null || !KEY.matcher(key).matches()) {
+            throw new AbortException(String.format(
+                    "Invalid cache key %s, only letters, digits, '.', '_' and '-' are allowed", key));
+        }
+    }
+
+    private static ArtifactoryGenericArtifactConfig getConfig() throws AbortException {
+        ArtifactoryGenericArtifactConfig config = Utils.getArtifactConfig();
+        if (config == null) {
+            throw new AbortException("Artifactory storage is not configured");
+        }
+        return config;
+    }
+
+    private static ArtifactoryClient buildArtifactoryClient(ArtifactoryGenericArtifactConfig config, Run<?, ?> run) {
+        return new ArtifactoryClient(config.getServerUrl(), config.getRepository(), Utils.getCredentials())
+                .withLane(ArtifactoryRequestScheduler.Lane.BUILD, Utils.ownerOf(run));
+    }
+
+    private static final class Execution extends GeneralNonBlockingStepExecution {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient ArtifactoryCacheStep step;
+
+        Execution(ArtifactoryCacheStep step, StepContext context) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        public boolean start() throws Exception {
+            run(this::restore);
+            return false;
+        }
+
+        private void restore() throws Exception {
+            Run<?, ?> run = getContext().get(Run.class);
+            FilePath workspace = getContext().get(FilePath.class);
+            TaskListener listener = getContext().get(TaskListener.class);
+            ArtifactoryGenericArtifactConfig config = getConfig();
+            validate(step.getKey());
+            for (String restoreKey : step.getRestoreKeys()) {
+                validate(restoreKey);
+            }
+            String cacheKey = step.getKey();
+            if (step.getHashFiles() != null) {
+                cacheKey += "-" + workspace.act(new HashFiles(step.getHashFiles()));
+            }
+            FilePath target = workspace.child(step.getPath());
+
+            boolean hit = false;
+            try (ArtifactoryClient client = buildArtifactoryClient(config, run)) {
+                ArtifactoryClient.FileInfo cache = find(client, scopeOf(run), cacheKey);
+                if (cache == null) {
+                    listener.getLogger().printf("No cache found for key %s%n", cacheKey);
+                } else {
+                    hit = cache.getPath().equals(cachePath(scopeOf(run), cacheKey));
+                    listener.getLogger().printf("Restoring %s from cache %s%n", step.getPath(), cache.getPath());
+                    target.mkdirs();
+                    target.act(new ArtifactoryArtifactManager.Unstash(
+                            ArtifactoryArtifactManager.buildArtifactoryConfig(config, workspace),
+                            run.getExternalizableId(),
+                            cache.getPath(),
+                            ArtifactoryArtifactManager.stashCacheDir(config, workspace),
+                            config.getStashCacheSize() * 1024L * 1024L,
+                            listener));
+                    touch(client, cache.getPath());
+                }
+            } catch (IOException e) {
+                // A build never fails because of its cache, it only runs slower
+                LOGGER.warn(String.format("Failed to restore cache %s", cacheKey), e);
+                listener.getLogger().printf("Failed to restore cache %s: %s%n", cacheKey, e.getMessage());
+            }
+            getContext()
+                    .newBodyInvoker()
+                    .withCallback(new Save(step.getPath(), step.getExcludes(), cacheKey, hit))
+                    .start();
+        }
+
+        /**
+         * Record the restore of a cache, so it is not expired while in use
+         */
+        private static void touch(ArtifactoryClient client, String cachePath) {
+            try {
+                client.setProperties(cachePath, Map.of(LAST_USED, Instant.now().toString()));
+            } catch (IOException e) {
+                LOGGER.warn(String.format("Failed to record the use of cache %s", cachePath), e);
+            }
+        }
+
+        /**
+         * Find the cache to restore: the one of the key, else the most recent one matching the first restore key
+         * with a match
+         */
+        @CheckForNull
+        private ArtifactoryClient.FileInfo find(ArtifactoryClient client, String scope, String cacheKey)
+                throws IOException {
+            String path = cachePath(scope, cacheKey);
+            if (client.isFile(path)) {
+                return client.stat(path);
+            }
+            String folder = Utils.stripTrailingSlash(Utils.getFilePath(FOLDER + "/" + scope, ""));
+            if (step.getRestoreKeys().isEmpty() || !client.isFolder(folder)) {
+                return null;
+            }
+            List<ArtifactoryClient.FileInfo> caches = client.listFiles(folder);
+            for (String restoreKey : step.getRestoreKeys()) {
+                ArtifactoryClient.FileInfo latest = null;
+                for (ArtifactoryClient.FileInfo cache : caches) {
+                    String name = cache.getPath().substring(folder.length() + 1);
+                    if (name.startsWith(restoreKey)
+                            && name.endsWith(".tgz")
+                            && name.indexOf('/') < 0
+                            && (latest == null || cache.getLastUpdated() > latest.getLastUpdated())) {
+                        latest = cache;
+                    }
+                }
+                if (latest != null) {
+                    return latest;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Save the folder once the body succeeded, unless it was restored from the cache of its key
+         */
+        private final class Save extends TailCall {
+
+            @Serial
+            private static final long serialVersionUID = 1L;
+
+            private final String path;
+            private final String excludes;
+            private final String cacheKey;
+            private final boolean hit;
+
+            Save(String path, String excludes, String cacheKey, boolean hit) {
+                this.path = path;
+                this.excludes = excludes;
+                this.cacheKey = cacheKey;
+                this.hit = hit;
+            }
+
+            @Override
+            protected void finished(StepContext context) throws Exception {
+                if (hit) {
+                    return;
+                }
+                Run<?, ?> run = context.get(Run.class);
+                FilePath workspace = context.get(FilePath.class);
+                TaskListener listener = context.get(TaskListener.class);
+                FilePath target = workspace.child(path);
+                String cachePath = cachePath(scopeOf(run), cacheKey);
+                try {
+                    ArtifactoryGenericArtifactConfig config = getConfig();
+                    try (ArtifactoryClient client = buildArtifactoryClient(config, run)) {
+                        // Saved meanwhile by a concurrent build, caches of a key are never replaced
+                        if (client.isFile(cachePath)) {
+                            listener.getLogger().printf("Cache %s already saved%n", cacheKey);
+                            return;
+                        }
+                    }
+                    if (!target.isDirectory()) {
+                        listener.getLogger().printf("Not saving cache %s, %s is not a folder%n", cacheKey, path);
+                        return;
+                    }
+                    FilePath tempDir = WorkspaceList.tempDir(workspace);
+                    if (tempDir == null) {
+                        throw new AbortException("Could not make temporary directory in " + workspace);
+                    }
+                    target.act(new ArtifactoryArtifactManager.Stash(
+                            ArtifactoryArtifactManager.buildArtifactoryConfig(config, workspace),
+                            run.getExternalizableId(),
+                            cachePath,
+                            "**",
+                            excludes,
+                            false,
+                            false,
+                            tempDir.getRemote(),
+                            true,
+                            listener));
+                } catch (IOException e) {
+                    LOGGER.warn(String.format("Failed to save cache %s", cacheKey), e);
+                    listener.getLogger().printf("Failed to save cache %s: %s%n", cacheKey, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Hash the content of the files matching a pattern, in path order
+     */
+    private static final class HashFiles extends MasterToSlaveFileCallable<String> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final String pattern;
+
+        HashFiles(String pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public String invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+            TreeMap<String, File> files = new TreeMap<>();
+            new DirScanner.Glob(pattern, null).scan(f, new FileVisitor() {
+                @Override
+                public void visit(File file, String relativePath) {
+                    if (file.isFile()) {
+                        files.put(relativePath.replace('\\', '/'), file);
+                    }
+                }
+            });
+            if (files.isEmpty()) {
+                throw new AbortException(String.format("No files matching %s to hash into the cache key", pattern));
+            }
+            MessageDigest hash = newDigest();
+            for (Map.Entry<String, File> entry : files.entrySet()) {
+                MessageDigest digest = newDigest();
+                try (InputStream is = new DigestInputStream(Files.newInputStream(entry.getValue().toPath()), digest)) {
+                    is.transferTo(OutputStream.nullOutputStream());
+                }
+                // Renaming a file changes the key as well
+                hash.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                hash.update(digest.digest());
+            }
+            return HexFormat.of().formatHex(hash.digest());
+        }
+
+        private static MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Set.of(Run.class, FilePath.class, TaskListener.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "artifactoryCache";
+        }
+
+        @Override
+        public boolean takesImplicitBlockArgument() {
+            return true;
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Cache a workspace folder in Artifactory across builds";
+        }
+    }
+}
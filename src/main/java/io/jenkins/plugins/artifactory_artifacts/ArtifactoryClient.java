@@ -2,16 +2,53 @@ package io.jenkins.plugins.artifactory_artifacts;
 
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.Objects;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import jenkins.util.SystemProperties;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
 import org.jfrog.artifactory.client.*;
+import org.jfrog.artifactory.client.impl.ArtifactoryRequestImpl;
 import org.jfrog.artifactory.client.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,73 +57,674 @@ class ArtifactoryClient implements AutoCloseable {
 
     public static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryClient.class);
 
+    /**
+     * Non-blocking HTTP engine shared by all clients of this JVM, used by the asynchronous API.
+     * Thousands of requests can be in flight with a handful of threads. Redirects are followed by {@link #exchange}.
+     */
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+
+    /**
+     * Time to wait for the response headers of a request, the upload of its body included
+     */
+    static final long REQUEST_TIMEOUT_SECONDS =
+            SystemProperties.getLong(ArtifactoryClient.class.getName() + ".requestTimeoutSeconds", 300L);
+
+    /**
+     * Slowest upload rate accounted for in the timeout of uploads, in bytes per second
+     */
+    static final long MIN_UPLOAD_RATE =
+            SystemProperties.getLong(ArtifactoryClient.class.getName() + ".minUploadRate", 64L * 1024L);
+
+    private static final int MAX_REDIRECTS = 5;
+
+    /**
+     * Maximum number of concurrent checksum deploys when copying without Artifactory Pro
+     */
+    static final int COPY_THREADS = SystemProperties.getInteger(ArtifactoryClient.class.getName() + ".copyThreads", 8);
+
+    /**
+     * Error message of the copy and move APIs on Artifactory OSS
+     */
+    private static final String PRO_ONLY = "available only in Artifactory Pro";
+
+    /**
+     * Maximum number of ranged requests sent to resume a download after the body was cut
+     */
+    static final int MAX_RESUMES = SystemProperties.getInteger(ArtifactoryClient.class.getName() + ".maxResumes", 3);
+
     private final ArtifactoryConfig config;
     private final Artifactory artifactory;
 
+    /**
+     * Lane of requests sent from the controller, null when not scheduled, e.g. on agents
+     */
+    private ArtifactoryRequestScheduler.Lane lane;
+
+    private String owner;
+
+    /**
+     * Priority of transfers made from an agent, null when not shaped, e.g. on the controller
+     */
+    private ArtifactoryBandwidthShaper.Priority priority;
+
+    private String transferOwner;
+
     public ArtifactoryClient(
             @NonNull String serverUrl, @NonNull String repository, @NonNull UsernamePasswordCredentials credentials) {
-        this.config = new ArtifactoryConfig(serverUrl, repository, credentials);
-        this.artifactory = buildArtifactory();
+        this(new ArtifactoryConfig(serverUrl, repository, credentials));
     }
 
     public ArtifactoryClient(@NonNull ArtifactoryConfig config) {
-        this(config.getServerUrl(), config.getRepository(), config.getCredentials());
+        this.config = config;
+        this.artifactory = buildArtifactory();
+    }
+
+    /**
+     * Send the requests of this client through the controller scheduler
+     * @param lane the priority lane
+     * @param owner the job the requests are made for
+     * @return this client
+     */
+    public ArtifactoryClient withLane(@NonNull ArtifactoryRequestScheduler.Lane lane, @NonNull String owner) {
+        this.lane = lane;
+        this.owner = owner;
+        return this;
+    }
+
+    /**
+     * Shape uploads and downloads of this client with the other transfers of the agent
+     * @param priority the priority of the transfers
+     * @param owner the build the transfers are made for
+     * @return this client
+     */
+    public ArtifactoryClient withTransferPriority(
+            @NonNull ArtifactoryBandwidthShaper.Priority priority, @NonNull String owner) {
+        this.priority = priority;
+        this.transferOwner = owner;
+        return this;
+    }
+
+    /**
+     * Wait for an agent transfer slot
+     * @return the transfer to close once completed
+     */
+    private ArtifactoryBandwidthShaper.Transfer beginTransfer() throws IOException {
+        if (priority == null) {
+            return ArtifactoryBandwidthShaper.Transfer.NONE;
+        }
+        return ArtifactoryBandwidthShaper.get().begin(priority, transferOwner, config.getBandwidthLimit());
+    }
+
+    /**
+     * Wait for the scheduler to admit a request
+     * @return the permit to close once the request completed
+     */
+    private ArtifactoryRequestScheduler.Permit admit() throws IOException {
+        if (lane == null) {
+            return ArtifactoryRequestScheduler.Permit.NONE;
+        }
+        try {
+            return ArtifactoryRequestScheduler.get().acquire(lane, owner);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a request to Artifactory");
+        }
+    }
+
+    /**
+     * Send a single request once admitted by the scheduler
+     */
+    private <T> T send(Request<T> request) throws IOException {
+        try (ArtifactoryRequestScheduler.Permit permit = admit()) {
+            return request.call();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Request<T> {
+        T call() throws IOException;
     }
 
     /**
      * Upload an artifact to the repository
      * @param file the file to upload
      * @param targetPath the path to upload the file to
+     * @return the checksums of the uploaded content
+     * @throws IOException if the file cannot be uploaded
+     */
+    public Checksums uploadArtifact(Path file, String targetPath) throws IOException {
+        return uploadArtifact(file, targetPath, Map.of());
+    }
+
+    /**
+     * Upload an artifact to the repository with properties.
+     * Properties are sent as matrix parameters of the deploy request, so no extra request is needed.
+     * @param file the file to upload
+     * @param targetPath the path to upload the file to
+     * @param properties the properties to attach to the artifact
+     * @return the checksums of the uploaded content
+     * @throws IOException if the file cannot be uploaded
+     */
+    public Checksums uploadArtifact(Path file, String targetPath, Map<String, String> properties) throws IOException {
+        return uploadArtifact(file, targetPath, properties, null);
+    }
+
+    /**
+     * Upload an artifact to the repository with properties and checksums computed beforehand
+     * @param file the file to upload
+     * @param targetPath the path to upload the file to
+     * @param properties the properties to attach to the artifact
+     * @param expected the checksums of the file, sent for the server to verify, or null if not known
+     * @return the checksums of the uploaded content
      * @throws IOException if the file cannot be uploaded
      */
-    public void uploadArtifact(Path file, String targetPath) throws IOException {
-        UploadableArtifact artifact =
-                artifactory.repository(this.config.repository).upload(Utils.urlEncodeParts(targetPath), file.toFile());
-        artifact.withSize(Files.size(file));
-        artifact.withListener(
-                (bytesRead, totalBytes) -> LOGGER.trace(String.format("Uploaded %d/%d", bytesRead, totalBytes)));
-        artifact.doUpload();
-        LOGGER.trace(String.format("Uploaded %s to %s", file, targetPath));
+    public Checksums uploadArtifact(
+            Path file, String targetPath, Map<String, String> properties, @CheckForNull Checksums expected)
+            throws IOException {
+        Checksums checksums = await(uploadArtifactAsync(file, targetPath, properties, expected));
+        LOGGER.trace(String.format("Uploaded %s to %s with SHA-1 %s", file, targetPath, checksums.sha1()));
+        return checksums;
+    }
+
+    /**
+     * Upload an artifact to the repository without blocking the calling thread.
+     * On agents, waiting for a transfer slot still blocks the calling thread.
+     * @param file the file to upload
+     * @param targetPath the path to upload the file to
+     * @param properties the properties to attach to the artifact
+     * @return a future completed with the checksums of the uploaded content
+     */
+    public CompletableFuture<Checksums> uploadArtifactAsync(
+            Path file, String targetPath, Map<String, String> properties) {
+        return uploadArtifactAsync(file, targetPath, properties, null);
+    }
+
+    /**
+     * Upload an artifact to the repository without blocking the calling thread.
+     * The content is hashed while it is sent, so the file is read once. The checksums are compared to the checksums
+     * Artifactory computed for the stored content and to the expected checksums, if any.
+     * @param file the file to upload
+     * @param targetPath the path to upload the file to
+     * @param properties the properties to attach to the artifact
+     * @param expected the checksums of the file, sent for the server to verify, or null if not known
+     * @return a future completed with the checksums of the uploaded content
+     */
+    public CompletableFuture<Checksums> uploadArtifactAsync(
+            Path file, String targetPath, Map<String, String> properties, @CheckForNull Checksums expected) {
+        ArtifactoryBandwidthShaper.Transfer transfer;
+        try {
+            transfer = beginTransfer();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        // The body is read again from the start if the request is resent, hash the last attempt only. An empty body
+        // may not be read at all
+        AtomicReference<ChecksumInputStream> sent =
+                new AtomicReference<>(new ChecksumInputStream(InputStream.nullInputStream()));
+        HttpRequest.BodyPublisher body;
+        long size;
+        try {
+            size = Files.size(file);
+            body = HttpRequest.BodyPublishers.fromPublisher(
+                    HttpRequest.BodyPublishers.ofInputStream(() -> {
+                        try {
+                            ChecksumInputStream is = new ChecksumInputStream(Files.newInputStream(file));
+                            sent.set(is);
+                            return transfer.isThrottled() ? transfer.throttle(is) : is;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }),
+                    size);
+        } catch (IOException e) {
+            transfer.close();
+            return CompletableFuture.failedFuture(e);
+        }
+        HttpRequest.Builder request = newRequest(artifactUri(targetPath, properties)).timeout(uploadTimeout(size));
+        if (expected != null) {
+            // Headers precede the body, so only checksums known before the upload can be verified by the server
+            if (expected.sha1() != null) {
+                request.header("X-Checksum-Sha1", expected.sha1());
+            }
+            if (expected.sha256() != null) {
+                request.header("X-Checksum-Sha256", expected.sha256());
+            }
+            if (expected.md5() != null) {
+                request.header("X-Checksum", expected.md5());
+            }
+        }
+        return sendAsync(request.PUT(body).build(), HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    check(response, "upload " + targetPath);
+                    Checksums checksums = sent.get().getChecksums();
+                    verify(targetPath, checksums, expected, "expected");
+                    verify(targetPath, checksums, parseChecksums(response.body()), "stored by Artifactory");
+                    return checksums;
+                })
+                .whenComplete((result, e) -> transfer.close());
+    }
+
+    /**
+     * Upload content held in memory to the repository
+     * @param content the content to upload
+     * @param targetPath the path to upload the content to
+     * @throws IOException if the content cannot be uploaded
+     */
+    public void uploadContent(byte[] content, String targetPath) throws IOException {
+        HttpRequest request = newRequest(artifactUri(targetPath, Map.of()))
+                .timeout(uploadTimeout(content.length))
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(content))
+                .build();
+        await(sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .thenAccept(response -> check(response, "upload " + targetPath)));
+        LOGGER.trace(String.format("Uploaded %d bytes to %s", content.length, targetPath));
     }
 
     /**
      * Delete an artifact or path from the repository
      * @param targetPath the path of the artifact to delete
+     * @throws IOException if interrupted while waiting to send the request
+     */
+    public void deleteArtifact(String targetPath) throws IOException {
+        send(() -> artifactory.repository(this.config.repository).delete(Utils.urlEncodeParts(targetPath)));
+    }
+
+    /**
+     * Move an artifact from one path to another.
+     * Without Artifactory PRO the files are copied by checksum and the source is deleted.
+     * @param sourcePath the source path
+     * @param targetPath the target path
+     * @throws IOException if the files cannot be moved
+     */
+    public void move(String sourcePath, String targetPath) throws IOException {
+        if (copyOrMove("move", sourcePath, targetPath)) {
+            return;
+        }
+        LOGGER.debug(String.format("Server side move requires Artifactory PRO, copying %s by checksum", sourcePath));
+        copyByChecksum(sourcePath, targetPath);
+        deleteArtifact(sourcePath);
+    }
+
+    /**
+     * Copy an artifact from one path to another.
+     * Without Artifactory PRO the files are copied by checksum.
+     * @param sourcePath the source path
+     * @param targetPath the target path
+     * @throws IOException if the files cannot be copied
      */
-    public void deleteArtifact(String targetPath) {
-        artifactory.repository(this.config.repository).delete(Utils.urlEncodeParts(targetPath));
+    public void copy(String sourcePath, String targetPath) throws IOException {
+        if (copyOrMove("copy", sourcePath, targetPath)) {
+            return;
+        }
+        LOGGER.debug(String.format("Server side copy requires Artifactory PRO, copying %s by checksum", sourcePath));
+        copyByChecksum(sourcePath, targetPath);
     }
 
     /**
-     * Move an artifact from one path to another. Require Artifactory PRO
+     * Copy or move a file or folder server side
+     * @param operation copy or move
      * @param sourcePath the source path
      * @param targetPath the target path
+     * @return false if the server does not provide the API, as Artifactory OSS
+     * @throws IOException if the request failed for any other reason
      */
-    public void move(String sourcePath, String targetPath) {
-        ItemHandle sourceItem = artifactory.repository(this.config.repository).folder(Utils.urlEncodeParts(sourcePath));
-        sourceItem.move(this.config.repository, Utils.urlEncodeParts(targetPath));
+    private boolean copyOrMove(String operation, String sourcePath, String targetPath) throws IOException {
+        String repository = this.config.repository;
+        ArtifactoryResponse response = send(() -> artifactory.restCall(new ArtifactoryRequestImpl()
+                .method(ArtifactoryRequest.Method.POST)
+                .apiUrl(String.format(
+                        "api/%s/%s/%s?to=/%s/%s",
+                        operation,
+                        repository,
+                        Utils.urlEncodeParts(sourcePath),
+                        repository,
+                        Utils.urlEncodeParts(targetPath)))
+                .responseType(ArtifactoryRequest.ContentType.JSON)));
+        if (response.isSuccessResponse()) {
+            return true;
+        }
+        int status = response.getStatusLine().getStatusCode();
+        String body = response.getRawBody();
+        if ((status == 400 || status == 404 || status == 405) && body != null && body.contains(PRO_ONLY)) {
+            return false;
+        }
+        throw new IOException(String.format(
+                "Failed to %s %s to %s: %s", operation, sourcePath, targetPath, response.getStatusLine()));
     }
 
     /**
-     * Copy an artifact from one path to another. Require Artifactory PRO
+     * Copy a file or folder without Artifactory PRO.
+     * The source tree is listed with a single request, then each file is deployed at the target by checksum only,
+     * so no content is transferred. Files whose checksum is unknown to the server are downloaded to a temporary file
+     * then uploaded.
      * @param sourcePath the source path
      * @param targetPath the target path
+     * @throws IOException if a file cannot be copied
+     */
+    public void copyByChecksum(String sourcePath, String targetPath) throws IOException {
+        String source = Utils.stripTrailingSlash(sourcePath);
+        String target = Utils.stripTrailingSlash(targetPath);
+        List<FileInfo> files;
+        if (isFolder(source)) {
+            files = listFiles(source);
+        } else {
+            files = List.of(stat(source));
+        }
+        LOGGER.debug(String.format("Copying %d file(s) from %s to %s by checksum", files.size(), source, target));
+        ExecutorService executor = ArtifactoryExecutors.newTransferExecutor(Math.min(COPY_THREADS, files.size()));
+        try {
+            List<CompletableFuture<Void>> copies = new ArrayList<>();
+            for (FileInfo file : files) {
+                String fileTarget = target + file.getPath().substring(source.length());
+                copies.add(CompletableFuture.runAsync(
+                        () -> {
+                            try {
+                                copyFile(file, fileTarget);
+                            } catch (IOException e) {
+                                throw new IllegalStateException(
+                                        String.format("Failed to copy %s to %s", file.getPath(), fileTarget), e);
+                            }
+                        },
+                        executor));
+            }
+            CompletableFuture.allOf(copies.toArray(CompletableFuture[]::new)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(String.format("Interrupted while copying %s", source), e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void copyFile(FileInfo file, String targetPath) throws IOException {
+        if (file.getSha1() != null && deployByChecksum(file.getSha1(), targetPath)) {
+            return;
+        }
+        LOGGER.debug(String.format("Checksum deploy of %s not possible, copying content", targetPath));
+        // Buffered to a file, so the download permit is released before the upload waits for its own
+        Path temp = Files.createTempFile("artifactory-copy", ".tmp");
+        try {
+            downloadTo(file.getPath(), temp, false);
+            uploadArtifact(temp, targetPath);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Deploy a file by checksum only. No content is sent
+     * @param sha1 the SHA-1 checksum of content already stored on the server
+     * @param targetPath the path of the new file
+     * @return true if the file was deployed, false if the server doesn't know the checksum
+     * @throws IOException if the request failed
+     */
+    public boolean deployByChecksum(String sha1, String targetPath) throws IOException {
+        ArtifactoryResponse response = send(() -> artifactory.restCall(new ArtifactoryRequestImpl()
+                .method(ArtifactoryRequest.Method.PUT)
+                .apiUrl(this.config.repository + "/" + Utils.urlEncodeParts(targetPath))
+                .addHeader("X-Checksum-Deploy", "true")
+                .addHeader("X-Checksum-Sha1", sha1)
+                .responseType(ArtifactoryRequest.ContentType.JSON)));
+        if (response.isSuccessResponse()) {
+            LOGGER.trace(String.format("Deployed %s by checksum %s", targetPath, sha1));
+            return true;
+        }
+        int status = response.getStatusLine().getStatusCode();
+        if (status == 404) {
+            return false;
+        }
+        throw new IOException(String.format(
+                "Failed to deploy %s by checksum: %s", targetPath, response.getStatusLine()));
+    }
+
+    /**
+     * Set properties on a file or folder and all its children
+     * @param targetPath the path
+     * @param properties the properties to set
+     * @throws IOException if the properties cannot be set
+     */
+    public void setProperties(String targetPath, Map<String, String> properties) throws IOException {
+        String value = properties.entrySet().stream()
+                .map(property -> property.getKey() + "=" + property.getValue())
+                .collect(Collectors.joining(";"));
+        ArtifactoryResponse response = send(() -> artifactory.restCall(new ArtifactoryRequestImpl()
+                .method(ArtifactoryRequest.Method.PUT)
+                .apiUrl("api/storage/" + this.config.repository + "/" + Utils.urlEncodeParts(targetPath))
+                .addQueryParam("properties", value)
+                .addQueryParam("recursive", "1")));
+        if (!response.isSuccessResponse()) {
+            throw new IOException(
+                    String.format("Failed to set properties on %s: %s", targetPath, response.getStatusLine()));
+        }
+    }
+
+    /**
+     * Run an AQL query
+     * @param query the query
+     * @return the results of the query
+     * @throws IOException if the query failed
      */
-    public void copy(String sourcePath, String targetPath) {
-        ItemHandle sourceItem = artifactory.repository(this.config.repository).folder(Utils.urlEncodeParts(sourcePath));
-        sourceItem.copy(this.config.repository, Utils.urlEncodeParts(targetPath));
+    public JSONArray aql(String query) throws IOException {
+        LOGGER.trace(String.format("Running AQL query %s", query));
+        ArtifactoryResponse response = send(() -> artifactory.restCall(new ArtifactoryRequestImpl()
+                .method(ArtifactoryRequest.Method.POST)
+                .apiUrl("api/search/aql")
+                .requestType(ArtifactoryRequest.ContentType.TEXT)
+                .requestBody(query)
+                .responseType(ArtifactoryRequest.ContentType.JSON)));
+        if (!response.isSuccessResponse()) {
+            throw new IOException(String.format("AQL query failed: %s", response.getStatusLine()));
+        }
+        JSONArray results = JSONObject.fromObject(response.getRawBody()).optJSONArray("results");
+        return results == null ? new JSONArray() : results;
+    }
+
+    /**
+     * List all files under a folder, recursively, with a single request.
+     * Uses the Artifactory file list API and returns the size, SHA-1 and modification time of each file.
+     * @param targetPath the folder to list
+     * @return the files under the folder
+     * @throws IOException if the folder cannot be listed
+     */
+    public List<FileInfo> listFiles(String targetPath) throws IOException {
+        String folder = Utils.stripTrailingSlash(targetPath);
+        ArtifactoryResponse response = send(() -> artifactory.restCall(new ArtifactoryRequestImpl()
+                .method(ArtifactoryRequest.Method.GET)
+                .apiUrl("api/storage/" + this.config.repository + "/" + Utils.urlEncodeParts(folder))
+                .addQueryParam("list", "")
+                .addQueryParam("deep", "1")
+                .addQueryParam("listFolders", "0")
+                .responseType(ArtifactoryRequest.ContentType.JSON)));
+        if (!response.isSuccessResponse()) {
+            throw new IOException(String.format("Failed to list files of %s: %s", folder, response.getStatusLine()));
+        }
+        JSONArray entries = JSONObject.fromObject(response.getRawBody()).optJSONArray("files");
+        List<FileInfo> files = new ArrayList<>();
+        if (entries == null) {
+            return files;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            JSONObject entry = entries.getJSONObject(i);
+            if (entry.optBoolean("folder")) {
+                continue;
+            }
+            files.add(new FileInfo(
+                    folder + entry.getString("uri"),
+                    parseTimestamp(entry.optString("lastModified", null)),
+                    entry.optLong("size"),
+                    AqlItemType.FILE,
+                    entry.optString("sha1", null)));
+        }
+        return files;
     }
 
     /**
      * Download an artifact from the repository
      * @param targetPath the path of the artifact to download
-     * @return a pair of the closable client and the input stream of the artifact
+     * @return the input stream of the artifact
      * @throws IOException if the artifact cannot be downloaded
      */
     public InputStream downloadArtifact(String targetPath) throws IOException {
-        DownloadableArtifact artifact =
-                artifactory.repository(this.config.repository).download(Utils.urlEncodeParts(targetPath));
-        return artifact.doDownload();
+        return await(downloadArtifactAsync(targetPath));
+    }
+
+    /**
+     * Download an artifact from the repository without blocking the calling thread.
+     * The request is in flight until the returned stream is closed. The content is verified while it is read against
+     * the checksum reported by Artifactory, and a truncated or interrupted body is resumed with a ranged request.
+     * @param targetPath the path of the artifact to download
+     * @return a future completed with the input stream of the artifact once the response headers are received
+     */
+    public CompletableFuture<InputStream> downloadArtifactAsync(String targetPath) {
+        ArtifactoryBandwidthShaper.Transfer transfer;
+        try {
+            transfer = beginTransfer();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        HttpRequest request = newRequest(artifactUri(targetPath, Map.of())).GET().build();
+        return admitAsync()
+                .thenCompose(permit -> exchange(request, HttpResponse.BodyHandlers.ofInputStream())
+                        .thenApply(response -> {
+                            try {
+                                check(response, "download " + targetPath);
+                            } catch (CompletionException e) {
+                                closeQuietly(response.body());
+                                throw e;
+                            }
+                            InputStream body = new VerifyingInputStream(targetPath, response);
+                            return transfer.throttle(new FilterInputStream(body) {
+                                @Override
+                                public void close() throws IOException {
+                                    try {
+                                        super.close();
+                                    } finally {
+                                        permit.close();
+                                    }
+                                }
+                            });
+                        })
+                        .whenComplete((is, e) -> {
+                            if (e != null) {
+                                permit.close();
+                            }
+                        }))
+                .whenComplete((is, e) -> {
+                    if (e != null) {
+                        transfer.close();
+                    }
+                });
+    }
+
+    /**
+     * Download a range of bytes of an artifact.
+     * The content is not verified as Artifactory only reports the checksum of whole artifacts, callers verify it
+     * against checksums of their own, see {@link ArtifactoryTar#verify}. When the server ignores the range, the bytes
+     * before it are skipped and the body is cut at its end.
+     * @param targetPath the path of the artifact
+     * @param offset the position of the first byte
+     * @param length the number of bytes
+     * @return the input stream of the range
+     * @throws IOException if the range cannot be downloaded
+     */
+    public InputStream downloadRange(String targetPath, long offset, long length) throws IOException {
+        ArtifactoryBandwidthShaper.Transfer transfer = beginTransfer();
+        HttpRequest request = newRequest(artifactUri(targetPath, Map.of()))
+                .header("Range", "bytes=" + offset + "-" + (offset + length - 1))
+                .GET()
+                .build();
+        return await(admitAsync()
+                .thenCompose(permit -> exchange(request, HttpResponse.BodyHandlers.ofInputStream())
+                        .thenApply(response -> {
+                            InputStream body = response.body();
+                            try {
+                                check(response, "download " + targetPath);
+                                if (response.statusCode() != 206) {
+                                    body.skipNBytes(offset);
+                                }
+                            } catch (IOException e) {
+                                closeQuietly(body);
+                                throw new CompletionException(e);
+                            } catch (CompletionException e) {
+                                closeQuietly(body);
+                                throw e;
+                            }
+                            return transfer.throttle(new RangeInputStream(body, length, permit));
+                        })
+                        .whenComplete((is, e) -> {
+                            if (e != null) {
+                                permit.close();
+                            }
+                        }))
+                .whenComplete((is, e) -> {
+                    if (e != null) {
+                        transfer.close();
+                    }
+                }));
+    }
+
+    /**
+     * Download an artifact to a file.
+     * The response buffers are written to the file channel as they arrive, without going through an
+     * {@link InputStream}. The content is verified against the announced size and the checksum reported by
+     * Artifactory. Throttled transfers go through the stream path. Downloads are not resumed, the file is deleted if
+     * the download fails.
+     * @param targetPath the path of the artifact to download
+     * @param file the file to write, replaced if it exists
+     * @param fsync true to flush the content to the storage device before returning
+     * @return the number of bytes written
+     * @throws IOException if the artifact cannot be downloaded
+     */
+    public long downloadTo(String targetPath, Path file, boolean fsync) throws IOException {
+        try {
+            return download(targetPath, file, fsync);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    private long download(String targetPath, Path file, boolean fsync) throws IOException {
+        if (priority != null && config.getBandwidthLimit() > 0) {
+            try (InputStream is = downloadArtifact(targetPath);
+                    FileChannel channel = FileChannel.open(
+                            file,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                long written = 0;
+                ReadableByteChannel source = Channels.newChannel(is);
+                long transferred;
+                while ((transferred = channel.transferFrom(source, written, 8 * 1024 * 1024)) > 0) {
+                    written += transferred;
+                }
+                if (fsync) {
+                    channel.force(true);
+                }
+                return written;
+            }
+        }
+        try (ArtifactoryBandwidthShaper.Transfer transfer = beginTransfer()) {
+            HttpRequest request = newRequest(artifactUri(targetPath, Map.of())).GET().build();
+            HttpResponse.BodyHandler<Long> handler = info -> info.statusCode() / 100 == 2
+                    ? HttpResponse.BodySubscribers.fromSubscriber(
+                            new FileSubscriber(targetPath, file, info.headers(), fsync), FileSubscriber::written)
+                    : HttpResponse.BodySubscribers.replacing(-1L);
+            long written = await(sendAsync(request, handler)
+                    .thenApply(response -> check(response, "download " + targetPath).body()));
+            LOGGER.trace(String.format("Downloaded %d bytes of %s to %s", written, targetPath, file));
+            return written;
+        }
     }
 
     /**
@@ -96,17 +734,19 @@ class ArtifactoryClient implements AutoCloseable {
      * @throws IOException if the path cannot be checked
      */
     public boolean isFolder(String targetPath) throws IOException {
-        try {
-            return artifactory.repository(this.config.repository).isFolder(Utils.urlEncodeParts(targetPath));
-        } catch (Exception e) {
-            LOGGER.debug(String.format("Failed to check if %s is a folder", targetPath));
-            return false;
-        }
+        return send(() -> {
+            try {
+                return artifactory.repository(this.config.repository).isFolder(Utils.urlEncodeParts(targetPath));
+            } catch (Exception e) {
+                LOGGER.debug(String.format("Failed to check if %s is a folder", targetPath));
+                return false;
+            }
+        });
     }
 
     /**
      * List the files in a folder
-     * Uses Artifactory Storage API
+     * Uses Artifactory Storage API. The children are looked up concurrently
      * @param targetPath the path to list
      * @return the list of files in the folder
      * @throws IOException if the files cannot be listed
@@ -116,55 +756,106 @@ class ArtifactoryClient implements AutoCloseable {
             LOGGER.debug(String.format("Target path %s is not a folder. Cannot list files", targetPath));
             return List.of();
         }
-
         try {
-            ItemHandle folderHandle =
-                    artifactory.repository(this.config.repository).folder(Utils.urlEncodeParts(targetPath));
-            Folder folder = folderHandle.info();
-            List<Item> children = folder.getChildren();
-            return children.stream()
-                    .map(item -> {
-                        try {
-                            String childPath = targetPath.endsWith("/")
-                                    ? targetPath + item.getUri().substring(1)
-                                    : targetPath + item.getUri();
-
-                            long size = 0;
-                            try {
-                                size = size(childPath);
-                            } catch (Exception e) {
-                                LOGGER.warn(String.format("Failed to get size of %s", childPath), e);
-                            }
+            return await(listAsync(targetPath));
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Failed to list folder contents for %s", targetPath), e);
+            return List.of();
+        }
+    }
 
-                            long lastModified = 0;
-                            if (item.getLastModified() != null) {
-                                lastModified = item.getLastModified().getTime();
-                            } else {
-                                try {
-                                    lastModified = lastUpdated(childPath);
-                                } catch (Exception e) {
-                                    LOGGER.warn(String.format("Failed to get last updated time of %s", childPath), e);
-                                }
-                            }
+    /**
+     * List the files in a folder with their size and last modified time, without blocking the calling thread
+     * @param targetPath the path to list
+     * @return a future completed with the files in the folder
+     */
+    public CompletableFuture<List<FileInfo>> listAsync(String targetPath) {
+        return listChildrenAsync(targetPath).thenCompose(children -> {
+            List<CompletableFuture<FileInfo>> infos = children.stream()
+                    .map(child -> statAsync(child.getPath())
+                            .thenApply(info -> new FileInfo(
+                                    child.getPath(),
+                                    info.getLastUpdated(),
+                                    child.isDirectory() ? 0 : info.getSize(),
+                                    child.isDirectory() ? AqlItemType.FOLDER : AqlItemType.FILE))
+                            .exceptionally(e -> {
+                                LOGGER.warn(String.format("Failed to get details of %s", child.getPath()), e);
+                                return child;
+                            }))
+                    .toList();
+            return CompletableFuture.allOf(infos.toArray(CompletableFuture[]::new))
+                    .thenApply(done -> infos.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+        });
+    }
 
-                            return new FileInfo(
-                                    childPath,
-                                    lastModified,
-                                    size,
-                                    item.isFolder() ? AqlItemType.FOLDER : AqlItemType.FILE);
-                        } catch (Exception e) {
-                            LOGGER.error(String.format("Error processing item in %s", targetPath), e);
-                            return null;
-                        }
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+    /**
+     * List the direct children of a folder with a single request.
+     * Unlike {@link #list(String)} the size and last modified time of children are not resolved.
+     * @param targetPath the path to list
+     * @return the children of the folder, or an empty list if the folder doesn't exist
+     */
+    public List<FileInfo> listChildren(String targetPath) {
+        try {
+            return await(listChildrenAsync(targetPath));
         } catch (Exception e) {
-            LOGGER.warn(String.format("Failed to list folder contents for %s", targetPath), e);
+            LOGGER.debug(String.format("Failed to list children of %s", targetPath));
             return List.of();
         }
     }
 
+    /**
+     * List the direct children of a folder without blocking the calling thread
+     * @param targetPath the path to list
+     * @return a future completed with the children of the folder
+     */
+    public CompletableFuture<List<FileInfo>> listChildrenAsync(String targetPath) {
+        String parent = Utils.stripTrailingSlash(targetPath);
+        return getJsonAsync(storageUri(parent + "/"), "list " + parent).thenApply(folder -> {
+            List<FileInfo> children = new ArrayList<>();
+            JSONArray entries = folder.optJSONArray("children");
+            if (entries != null) {
+                for (int i = 0; i < entries.size(); i++) {
+                    JSONObject entry = entries.getJSONObject(i);
+                    children.add(new FileInfo(
+                            parent + entry.getString("uri"),
+                            0,
+                            0,
+                            entry.optBoolean("folder") ? AqlItemType.FOLDER : AqlItemType.FILE));
+                }
+            }
+            return children;
+        });
+    }
+
+    /**
+     * Get the details of a file or folder with a single request
+     * @param targetPath the path
+     * @return the details
+     * @throws IOException if the path doesn't exist or cannot be read
+     */
+    public FileInfo stat(String targetPath) throws IOException {
+        return await(statAsync(targetPath));
+    }
+
+    /**
+     * Get the details of a file or folder without blocking the calling thread
+     * @param targetPath the path
+     * @return a future completed with the details
+     */
+    public CompletableFuture<FileInfo> statAsync(String targetPath) {
+        return getJsonAsync(storageUri(targetPath), "stat " + targetPath).thenApply(info -> {
+            JSONObject checksums = info.optJSONObject("checksums");
+            return new FileInfo(
+                    targetPath,
+                    parseTimestamp(info.optString("lastModified", null)),
+                    info.optLong("size"),
+                    info.has("children") ? AqlItemType.FOLDER : AqlItemType.FILE,
+                    checksums != null ? checksums.optString("sha1", null) : null);
+        });
+    }
+
     /**
      * Check if a path is a file
      * @param targetPath the path to check
@@ -176,11 +867,9 @@ class ArtifactoryClient implements AutoCloseable {
             return false;
         }
         try {
-            File file = artifactory
-                    .repository(this.config.repository)
-                    .file(Utils.urlEncodeParts(targetPath))
-                    .info();
-            return !file.isFolder();
+            return stat(targetPath).isFile();
+        } catch (InterruptedIOException e) {
+            throw e;
         } catch (Exception e) {
             LOGGER.debug(String.format("Failed to check if %s is a file", targetPath));
             return false;
@@ -195,12 +884,7 @@ class ArtifactoryClient implements AutoCloseable {
      */
     public long lastUpdated(String targetPath) throws IOException {
         LOGGER.trace(String.format("Getting last updated time for %s", targetPath));
-        return artifactory
-                .repository(this.config.repository)
-                .file(Utils.urlEncodeParts(targetPath))
-                .info()
-                .getLastModified()
-                .getTime();
+        return stat(targetPath).getLastUpdated();
     }
 
     /**
@@ -210,15 +894,226 @@ class ArtifactoryClient implements AutoCloseable {
      * @throws IOException if the size cannot be checked
      */
     public long size(String targetPath) throws IOException {
-        if (isFolder(targetPath)) {
+        LOGGER.trace(String.format("Getting size for %s", targetPath));
+        FileInfo info = stat(targetPath);
+        return info.isDirectory() ? 0 : info.getSize();
+    }
+
+    /**
+     * Send a request once admitted by the scheduler, without blocking the calling thread
+     */
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(
+            HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return admitAsync().thenCompose(permit -> exchange(request, handler)
+                .whenComplete((response, e) -> permit.close()));
+    }
+
+    /**
+     * Send a request, following redirects. Credentials are only sent again to the origin of the request, so a
+     * redirect to another host, such as a download CDN, never receives them.
+     */
+    private static <T> CompletableFuture<HttpResponse<T>> exchange(
+            HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return exchange(request, handler, 0);
+    }
+
+    private static <T> CompletableFuture<HttpResponse<T>> exchange(
+            HttpRequest request, HttpResponse.BodyHandler<T> handler, int redirects) {
+        boolean follow = redirects < MAX_REDIRECTS;
+        HttpResponse.BodyHandler<T> discardingRedirects =
+                info -> follow && isRedirect(info.statusCode(), info.headers())
+                        ? HttpResponse.BodySubscribers.replacing(null)
+                        : handler.apply(info);
+        return HTTP.sendAsync(request, discardingRedirects).thenCompose(response -> {
+            if (!follow || !isRedirect(response.statusCode(), response.headers())) {
+                return CompletableFuture.completedFuture(response);
+            }
+            URI location = request.uri().resolve(response.headers().firstValue("Location").orElseThrow());
+            boolean sameOrigin = origin(location).equals(origin(request.uri()));
+            HttpRequest.Builder redirected = HttpRequest.newBuilder(
+                            request, (name, value) -> sameOrigin || !name.equalsIgnoreCase("Authorization"))
+                    .uri(location);
+            if (response.statusCode() == 303) {
+                redirected.GET();
+            }
+            LOGGER.trace(String.format("Following redirect from %s to %s", request.uri(), location));
+            return exchange(redirected.build(), handler, redirects + 1);
+        });
+    }
+
+    private static boolean isRedirect(int statusCode, HttpHeaders headers) {
+        return (statusCode == 301 || statusCode == 302 || statusCode == 303 || statusCode == 307 || statusCode == 308)
+                && headers.firstValue("Location").isPresent();
+    }
+
+    private static String origin(URI uri) {
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+        int port = uri.getPort() >= 0 ? uri.getPort() : "https".equals(scheme) ? 443 : 80;
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+        return scheme + "://" + host + ":" + port;
+    }
+
+    /**
+     * Timeout of an upload, long enough to send the body at the slowest expected rate
+     */
+    private static Duration uploadTimeout(long size) {
+        return Duration.ofSeconds(REQUEST_TIMEOUT_SECONDS + size / Math.max(1, MIN_UPLOAD_RATE));
+    }
+
+    private CompletableFuture<ArtifactoryRequestScheduler.Permit> admitAsync() {
+        if (lane == null) {
+            return CompletableFuture.completedFuture(ArtifactoryRequestScheduler.Permit.NONE);
+        }
+        return ArtifactoryRequestScheduler.get().acquireAsync(lane, owner);
+    }
+
+    private CompletableFuture<JSONObject> getJsonAsync(URI uri, String action) {
+        HttpRequest request = newRequest(uri)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        return sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> JSONObject.fromObject(check(response, action).body()));
+    }
+
+    private HttpRequest.Builder newRequest(URI uri) {
+        String credentials =
+                config.credentials.getUsername() + ":" + config.credentials.getPassword().getPlainText();
+        return HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(REQUEST_TIMEOUT_SECONDS))
+                .header(
+                        "Authorization",
+                        "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * URI of an artifact, with properties as matrix parameters
+     */
+    private URI artifactUri(String targetPath, Map<String, String> properties) {
+        StringBuilder uri = new StringBuilder(Utils.stripTrailingSlash(config.serverUrl))
+                .append('/')
+                .append(config.repository)
+                .append('/')
+                .append(Utils.urlEncodeParts(targetPath));
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            // Values such as job names and URLs may contain reserved characters
+            uri.append(';')
+                    .append(encodeMatrixParameter(property.getKey()))
+                    .append('=')
+                    .append(encodeMatrixParameter(property.getValue()));
+        }
+        return URI.create(uri.toString());
+    }
+
+    private static String encodeMatrixParameter(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /**
+     * URI of the storage API of a path
+     */
+    private URI storageUri(String targetPath) {
+        return URI.create(String.format(
+                "%s/api/storage/%s/%s",
+                Utils.stripTrailingSlash(config.serverUrl), config.repository, Utils.urlEncodeParts(targetPath)));
+    }
+
+    /**
+     * Fail the current stage on error responses
+     */
+    private static <T> HttpResponse<T> check(HttpResponse<T> response, String action) {
+        if (response.statusCode() / 100 != 2) {
+            throw new CompletionException(new IOException(String.format(
+                    "Failed to %s: HTTP %d from %s", action, response.statusCode(), response.uri())));
+        }
+        return response;
+    }
+
+    /**
+     * Checksums returned by a deploy request, null if the response doesn't hold any
+     */
+    private static Checksums parseChecksums(String body) {
+        if (body == null || body.isBlank()) {
+            return null;
+        }
+        try {
+            JSONObject checksums = JSONObject.fromObject(body).optJSONObject("checksums");
+            if (checksums == null || checksums.isNullObject()) {
+                return null;
+            }
+            return new Checksums(
+                    checksums.optString("md5", null),
+                    checksums.optString("sha1", null),
+                    checksums.optString("sha256", null));
+        } catch (JSONException e) {
+            LOGGER.debug(String.format("Unable to parse deploy response %s", body));
+            return null;
+        }
+    }
+
+    /**
+     * Fail the upload if the checksums of the sent content differ from other checksums of the file
+     */
+    private static void verify(String targetPath, Checksums sent, @CheckForNull Checksums other, String source) {
+        if (other == null) {
+            return;
+        }
+        if (differ(sent.md5(), other.md5())
+                || differ(sent.sha1(), other.sha1())
+                || differ(sent.sha256(), other.sha256())) {
+            throw new CompletionException(new IOException(String.format(
+                    "Checksum mismatch on upload of %s: sent SHA-1 %s, %s SHA-1 %s",
+                    targetPath, sent.sha1(), source, other.sha1())));
+        }
+    }
+
+    private static boolean differ(String checksum, @CheckForNull String other) {
+        return other != null && !other.isEmpty() && !other.equalsIgnoreCase(checksum);
+    }
+
+    /**
+     * Wait for an asynchronous call, unwrapping its failure
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Artifactory");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    static long parseTimestamp(String timestamp) {
+        if (timestamp == null) {
             return 0;
         }
-        LOGGER.trace(String.format("Getting size for %s", targetPath));
-        File file = artifactory
-                .repository(this.config.repository)
-                .file(Utils.urlEncodeParts(targetPath))
-                .info();
-        return file.getSize();
+        try {
+            return OffsetDateTime.parse(timestamp).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            LOGGER.debug(String.format("Unable to parse timestamp %s", timestamp));
+            return 0;
+        }
+    }
+
+    private static void closeQuietly(InputStream is) {
+        try {
+            is.close();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to close response body", e);
+        }
     }
 
     /**
@@ -249,18 +1144,464 @@ class ArtifactoryClient implements AutoCloseable {
         artifactory.close();
     }
 
+    /**
+     * Body of a download, hashed while it is read. When the connection fails or the body ends before the announced
+     * length, the remaining bytes are requested again from the current position. Once the whole body was read, its
+     * checksum is compared to the one announced by Artifactory in the response headers.
+     */
+    private final class VerifyingInputStream extends InputStream {
+
+        private final String targetPath;
+        private final URI uri;
+        private final long length;
+        private final String validator;
+        private final MessageDigest digest;
+        private final String expected;
+        private InputStream in;
+        private long position;
+        private int resumes;
+        private boolean verified;
+
+        private VerifyingInputStream(String targetPath, HttpResponse<InputStream> response) {
+            this.targetPath = targetPath;
+            this.uri = response.uri();
+            this.in = response.body();
+            this.length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            // The resumed content must be the same version of the artifact
+            this.validator = response.headers()
+                    .firstValue("ETag")
+                    .or(() -> response.headers().firstValue("Last-Modified"))
+                    .orElse(null);
+            String algorithm = null;
+            String checksum = null;
+            // Strongest checksum first
+            for (Map.Entry<String, String> header : List.of(
+                    Map.entry("SHA-256", "X-Checksum-Sha256"),
+                    Map.entry("SHA-1", "X-Checksum-Sha1"),
+                    Map.entry("MD5", "X-Checksum-Md5"))) {
+                checksum = response.headers().firstValue(header.getValue()).orElse(null);
+                if (checksum != null) {
+                    algorithm = header.getKey();
+                    break;
+                }
+            }
+            this.expected = checksum;
+            try {
+                this.digest = algorithm != null ? MessageDigest.getInstance(algorithm) : null;
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                int read;
+                try {
+                    read = in.read(b, off, len);
+                } catch (InterruptedIOException e) {
+                    throw e;
+                } catch (IOException e) {
+                    resume(e);
+                    continue;
+                }
+                if (read < 0) {
+                    if (length >= 0 && position < length) {
+                        resume(new EOFException(String.format(
+                                "Body of %s ended after %d of %d bytes", targetPath, position, length)));
+                        continue;
+                    }
+                    verify();
+                    return -1;
+                }
+                if (digest != null) {
+                    digest.update(b, off, read);
+                }
+                position += read;
+                return read;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must be hashed too
+            byte[] buffer = new byte[(int) Math.min(8192, Math.max(0, n))];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void verify() throws IOException {
+            if (verified || digest == null) {
+                return;
+            }
+            verified = true;
+            String actual = HexFormat.of().formatHex(digest.digest());
+            if (!actual.equalsIgnoreCase(expected)) {
+                throw new IOException(String.format(
+                        "Checksum mismatch on download of %s: expected %s %s but got %s",
+                        targetPath, digest.getAlgorithm(), expected, actual));
+            }
+        }
+
+        /**
+         * Request the rest of the body from the current position
+         */
+        private void resume(IOException cause) throws IOException {
+            if (resumes >= MAX_RESUMES) {
+                throw cause;
+            }
+            resumes++;
+            LOGGER.warn(String.format(
+                    "Download of %s failed after %d bytes, resuming (%d/%d): %s",
+                    targetPath, position, resumes, MAX_RESUMES, cause.getMessage()));
+            closeQuietly(in);
+            HttpRequest.Builder request = newRequest(uri).header("Range", "bytes=" + position + "-");
+            if (validator != null) {
+                request.header("If-Range", validator);
+            }
+            HttpResponse<InputStream> response =
+                    await(exchange(request.GET().build(), HttpResponse.BodyHandlers.ofInputStream()));
+            if (response.statusCode() == 206) {
+                in = response.body();
+            } else if (response.statusCode() == 200 && digest == null) {
+                // Without a checksum, nothing proves the full body is the content already read
+                closeQuietly(response.body());
+                IOException e = new IOException(String.format(
+                        "Failed to resume download of %s: ranges not honored and no checksum to verify the content",
+                        targetPath));
+                e.addSuppressed(cause);
+                throw e;
+            } else if (response.statusCode() == 200) {
+                // Ranges not supported or the artifact changed, skip what was already read, the checksum tells
+                in = response.body();
+                try {
+                    in.skipNBytes(position);
+                } catch (IOException e) {
+                    closeQuietly(in);
+                    e.addSuppressed(cause);
+                    throw e;
+                }
+            } else {
+                closeQuietly(response.body());
+                IOException e = new IOException(String.format(
+                        "Failed to resume download of %s: HTTP %d", targetPath, response.statusCode()));
+                e.addSuppressed(cause);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Body of a ranged download, cut at the end of the range and releasing its permit once closed
+     */
+    private static final class RangeInputStream extends FilterInputStream {
+
+        private final ArtifactoryRequestScheduler.Permit permit;
+        private long remaining;
+
+        private RangeInputStream(InputStream in, long length, ArtifactoryRequestScheduler.Permit permit) {
+            super(in);
+            this.remaining = length;
+            this.permit = permit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                permit.close();
+            }
+        }
+    }
+
+    /**
+     * Write a response body to a file, hashing the buffers on the way.
+     * After a failure the rest of the body is drained, so the response always completes.
+     */
+    private static final class FileSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+
+        private final String targetPath;
+        private final Path file;
+        private final long length;
+        private final String expected;
+        private final MessageDigest digest;
+        private final boolean fsync;
+        private FileChannel channel;
+        private Flow.Subscription subscription;
+        private long written;
+        private IOException failure;
+
+        private FileSubscriber(String targetPath, Path file, HttpHeaders headers, boolean fsync) {
+            this.targetPath = targetPath;
+            this.file = file;
+            this.length = headers.firstValueAsLong("Content-Length").orElse(-1);
+            this.fsync = fsync;
+            String sha1 = headers.firstValue("X-Checksum-Sha1").orElse(null);
+            this.expected = sha1;
+            try {
+                this.digest = sha1 != null ? MessageDigest.getInstance("SHA-1") : null;
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            try {
+                channel = FileChannel.open(
+                        file,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException e) {
+                fail(e);
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            if (failure != null) {
+                subscription.request(1);
+                return;
+            }
+            try {
+                for (ByteBuffer buffer : buffers) {
+                    if (digest != null) {
+                        digest.update(buffer.duplicate());
+                    }
+                    while (buffer.hasRemaining()) {
+                        written += channel.write(buffer, written);
+                    }
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failure = throwable instanceof IOException e ? e : new IOException(throwable);
+            closeChannel();
+        }
+
+        @Override
+        public void onComplete() {
+            if (failure != null) {
+                return;
+            }
+            try {
+                if (length >= 0 && written != length) {
+                    throw new EOFException(String.format(
+                            "Body of %s ended after %d of %d bytes", targetPath, written, length));
+                }
+                if (digest != null) {
+                    String actual = HexFormat.of().formatHex(digest.digest());
+                    if (!actual.equalsIgnoreCase(expected)) {
+                        throw new IOException(String.format(
+                                "Checksum mismatch on download of %s: expected SHA-1 %s but got %s",
+                                targetPath, expected, actual));
+                    }
+                }
+                if (fsync) {
+                    channel.force(true);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                closeChannel();
+            }
+        }
+
+        private void fail(IOException e) {
+            failure = e;
+            closeChannel();
+        }
+
+        private void closeChannel() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug(String.format("Failed to close %s", file), e);
+            }
+        }
+
+        private long written() {
+            if (failure != null) {
+                throw new UncheckedIOException(failure);
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Checksums of a file. Values are lower case hexadecimal, null when not known
+     * @param md5 the MD5 checksum, as used by Jenkins fingerprints
+     * @param sha1 the SHA-1 checksum
+     * @param sha256 the SHA-256 checksum
+     */
+    public record Checksums(String md5, String sha1, String sha256) implements Serializable {}
+
+    /**
+     * Stream computing the MD5, SHA-1 and SHA-256 checksums of the content read through it
+     */
+    static final class ChecksumInputStream extends FilterInputStream {
+
+        private final MessageDigest md5;
+        private final MessageDigest sha1;
+        private final MessageDigest sha256;
+
+        ChecksumInputStream(InputStream in) {
+            super(in);
+            try {
+                this.md5 = MessageDigest.getInstance("MD5");
+                this.sha1 = MessageDigest.getInstance("SHA-1");
+                this.sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                md5.update((byte) b);
+                sha1.update((byte) b);
+                sha256.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                md5.update(b, off, read);
+                sha1.update(b, off, read);
+                sha256.update(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must be hashed too
+            byte[] buffer = new byte[(int) Math.min(8192, Math.max(0, n))];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Checksums of the content read so far. Call once
+         * @return the checksums
+         */
+        Checksums getChecksums() {
+            HexFormat hex = HexFormat.of();
+            return new Checksums(
+                    hex.formatHex(md5.digest()), hex.formatHex(sha1.digest()), hex.formatHex(sha256.digest()));
+        }
+    }
+
     public static final class FileInfo implements Serializable {
         private static final long serialVersionUID = 1L;
         private final String path;
         private final long lastUpdated;
         private final long size;
         private final AqlItemType type;
+        private final String sha1;
 
         public FileInfo(String path, long lastUpdated, long size, AqlItemType type) {
+            this(path, lastUpdated, size, type, null);
+        }
+
+        public FileInfo(String path, long lastUpdated, long size, AqlItemType type, String sha1) {
             this.path = path;
             this.lastUpdated = lastUpdated;
             this.size = size;
             this.type = type;
+            this.sha1 = sha1;
         }
 
         public String getPath() {
@@ -282,6 +1623,14 @@ class ArtifactoryClient implements AutoCloseable {
         public boolean isFile() {
             return type.equals(AqlItemType.FILE);
         }
+
+        /**
+         * SHA-1 checksum of the file, only known for files returned by {@link #listFiles(String)}
+         * @return the checksum or null
+         */
+        public String getSha1() {
+            return sha1;
+        }
     }
 
     public static final class ArtifactoryConfig implements Serializable {
@@ -291,6 +1640,10 @@ class ArtifactoryClient implements AutoCloseable {
         private final UsernamePasswordCredentials credentials;
         private final int maxUploadRetries;
         private final int retryDelaySeconds;
+        /**
+         * Bandwidth cap of the agent the config is sent to, in bytes per second, 0 for no cap
+         */
+        private final long bandwidthLimit;
 
         public ArtifactoryConfig(String serverUrl, String repository, UsernamePasswordCredentials credentials) {
             this(
@@ -307,11 +1660,22 @@ class ArtifactoryClient implements AutoCloseable {
                 UsernamePasswordCredentials credentials,
                 int maxUploadRetries,
                 int retryDelaySeconds) {
+            this(serverUrl, repository, credentials, maxUploadRetries, retryDelaySeconds, 0);
+        }
+
+        public ArtifactoryConfig(
+                String serverUrl,
+                String repository,
+                UsernamePasswordCredentials credentials,
+                int maxUploadRetries,
+                int retryDelaySeconds,
+                long bandwidthLimit) {
             this.serverUrl = serverUrl;
             this.repository = repository;
             this.credentials = CredentialsProvider.snapshot(UsernamePasswordCredentials.class, credentials);
             this.maxUploadRetries = maxUploadRetries;
             this.retryDelaySeconds = retryDelaySeconds;
+            this.bandwidthLimit = bandwidthLimit;
         }
 
         public String getServerUrl() {
@@ -333,5 +1697,9 @@ class ArtifactoryClient implements AutoCloseable {
         public int getRetryDelaySeconds() {
             return retryDelaySeconds;
         }
+
+        public long getBandwidthLimit() {
+            return bandwidthLimit;
+        }
     }
 }
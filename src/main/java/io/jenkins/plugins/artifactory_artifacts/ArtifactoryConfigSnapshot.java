@@ -0,0 +1,161 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import jenkins.model.ArtifactManagerConfiguration;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable view of the global Artifactory configuration and its resolved credentials.
+ * Hot paths read the current snapshot with a single volatile load. The snapshot is rebuilt lazily after the artifact
+ * manager configuration or the credentials are saved.
+ */
+@Restricted(NoExternalUse.class)
+public final class ArtifactoryConfigSnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryConfigSnapshot.class);
+
+    private static final AtomicLong VERSION = new AtomicLong();
+
+    /**
+     * Incremented by each invalidation, so a snapshot built from the configuration read before an invalidation is
+     * never taken for the current one
+     */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private static volatile ArtifactoryConfigSnapshot current;
+
+    private final long version;
+    private final long generation;
+    private final ArtifactoryGenericArtifactConfig config;
+    private final String credentialsId;
+    private final StandardUsernamePasswordCredentials credentials;
+
+    private ArtifactoryConfigSnapshot(
+            long version,
+            long generation,
+            ArtifactoryGenericArtifactConfig config,
+            String credentialsId,
+            StandardUsernamePasswordCredentials credentials) {
+        this.version = version;
+        this.generation = generation;
+        this.config = config;
+        this.credentialsId = credentialsId;
+        this.credentials = credentials;
+    }
+
+    /**
+     * Return the current snapshot, building it if needed
+     * @return the current snapshot
+     */
+    public static @NonNull ArtifactoryConfigSnapshot get() {
+        ArtifactoryConfigSnapshot snapshot = current;
+        if (snapshot == null || !snapshot.isCurrent()) {
+            snapshot = refresh();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drop the current snapshot. The next call to {@link #get()} will build a new one.
+     */
+    public static void invalidate() {
+        GENERATION.incrementAndGet();
+        current = null;
+    }
+
+    private static synchronized ArtifactoryConfigSnapshot refresh() {
+        ArtifactoryConfigSnapshot snapshot = current;
+        if (snapshot != null && snapshot.isCurrent()) {
+            return snapshot;
+        }
+        while (true) {
+            long generation = GENERATION.get();
+            ArtifactoryGenericArtifactConfig config = Utils.lookupArtifactConfig();
+            String credentialsId = config == null ? null : config.getStorageCredentialId();
+            StandardUsernamePasswordCredentials credentials =
+                    credentialsId == null ? null : Utils.lookupCredentials(credentialsId);
+            if (credentials != null) {
+                credentials = CredentialsProvider.snapshot(StandardUsernamePasswordCredentials.class, credentials);
+            }
+            if (GENERATION.get() != generation) {
+                // Saved while looking up, what was read may be stale
+                continue;
+            }
+            snapshot = new ArtifactoryConfigSnapshot(
+                    VERSION.incrementAndGet(), generation, config, credentialsId, credentials);
+            LOGGER.debug(
+                    String.format("Refreshed Artifactory configuration snapshot to version %d", snapshot.version));
+            current = snapshot;
+            return snapshot;
+        }
+    }
+
+    /**
+     * The snapshot is stale once invalidated, even if it was published after the invalidation. The configuration
+     * object can also be mutated in place (e.g. data bound setters), so make sure the credentials still match the
+     * configured id.
+     */
+    private boolean isCurrent() {
+        return generation == GENERATION.get()
+                && (config == null || Objects.equals(config.getStorageCredentialId(), credentialsId));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public @CheckForNull ArtifactoryGenericArtifactConfig getConfig() {
+        return config;
+    }
+
+    public @CheckForNull StandardUsernamePasswordCredentials getCredentials() {
+        return credentials;
+    }
+
+    @Initializer(after = InitMilestone.JOB_CONFIG_ADAPTED)
+    public static void onStartup() {
+        invalidate();
+    }
+
+    /**
+     * Invalidate the snapshot when the artifact manager configuration or the credentials are saved
+     */
+    @Extension
+    public static final class InvalidateOnSave extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (isRelevant(o)) {
+                invalidate();
+            }
+        }
+
+        @Override
+        public void onDeleted(Saveable o, XmlFile file) {
+            if (isRelevant(o)) {
+                invalidate();
+            }
+        }
+
+        private static boolean isRelevant(Saveable o) {
+            return o instanceof ArtifactManagerConfiguration
+                    || o instanceof SystemCredentialsProvider
+                    || o instanceof CredentialsProvider
+                    || o instanceof ArtifactoryGenericArtifactConfig.DescriptorImpl;
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Saveable;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durable background queue of paths to delete on Artifactory.
+ * Build discards and job deletions only enqueue the path and return. Paths under an already queued folder are
+ * coalesced into it, and the queue is drained with bounded parallelism and a rate limit. Pending paths are persisted
+ * in JENKINS_HOME so they survive a controller restart.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class ArtifactoryDeletionQueue implements Saveable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryDeletionQueue.class);
+
+    static final int THREADS = SystemProperties.getInteger(ArtifactoryDeletionQueue.class.getName() + ".threads", 4);
+    static final int DELETIONS_PER_SECOND =
+            SystemProperties.getInteger(ArtifactoryDeletionQueue.class.getName() + ".deletionsPerSecond", 20);
+    static final int MAX_ATTEMPTS =
+            SystemProperties.getInteger(ArtifactoryDeletionQueue.class.getName() + ".maxAttempts", 10);
+    private static final long SAVE_DELAY_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * Paths waiting to be deleted, including the ones being deleted
+     */
+    private final TreeSet<String> pending = new TreeSet<>();
+
+    /**
+     * Paths whose blob references must be released right before they are deleted, see {@link ArtifactoryBlobStore}
+     */
+    private final TreeSet<String> releasing = new TreeSet<>();
+
+    private final transient Set<String> inFlight = new HashSet<>();
+    private final transient Map<String, Integer> attempts = new HashMap<>();
+    private final transient Map<String, Long> notBefore = new HashMap<>();
+    private final transient AtomicBoolean draining = new AtomicBoolean();
+    private final transient AtomicBoolean saveScheduled = new AtomicBoolean();
+    private final transient Semaphore slots = new Semaphore(Math.max(1, THREADS));
+    private final transient ExecutorService dispatcher = Executors.newSingleThreadExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "ArtifactoryDeletionQueue.dispatcher"));
+    private final transient ExecutorService workers = Executors.newFixedThreadPool(
+            Math.max(1, THREADS), new NamingThreadFactory(new DaemonThreadFactory(), "ArtifactoryDeletionQueue"));
+    private transient long nextPermitNanos;
+
+    public ArtifactoryDeletionQueue() {
+        load();
+    }
+
+    public static ArtifactoryDeletionQueue get() {
+        return ExtensionList.lookupSingleton(ArtifactoryDeletionQueue.class);
+    }
+
+    @Initializer(after = InitMilestone.JOB_CONFIG_ADAPTED)
+    public static void resume() {
+        ArtifactoryDeletionQueue queue = get();
+        if (queue.getQueueDepth() > 0) {
+            LOGGER.info(String.format("Resuming deletion of %d path(s) on Artifactory", queue.getQueueDepth()));
+        }
+        queue.dispatch();
+    }
+
+    @Terminator
+    public static void shutdown() {
+        ArtifactoryDeletionQueue queue = get();
+        queue.dispatcher.shutdownNow();
+        queue.workers.shutdownNow();
+        try {
+            queue.save();
+        } catch (IOException e) {
+            LOGGER.error("Failed to save Artifactory deletion queue", e);
+        }
+    }
+
+    /**
+     * Queue a file or folder for deletion
+     * @param path the path relative to the repository
+     * @return true if the path will be deleted, false if it was refused
+     */
+    public boolean enqueue(@NonNull String path) {
+        return enqueue(path, false);
+    }
+
+    /**
+     * Queue a file or folder for deletion
+     * @param path the path relative to the repository
+     * @param releaseBlobs whether the blobs referenced by the manifests stored under the path are released before it
+     * is deleted, once even if the deletion is retried
+     * @return true if the path will be deleted, false if it was refused
+     */
+    public boolean enqueue(@NonNull String path, boolean releaseBlobs) {
+        String key = normalize(path);
+        if (key.isEmpty()) {
+            LOGGER.warn("Refusing to delete the repository root");
+            return false;
+        }
+        synchronized (this) {
+            if (releaseBlobs) {
+                // Also released when a queued parent is deleted
+                releasing.add(key);
+            }
+            if (isCovered(key)) {
+                LOGGER.trace(String.format("%s is already queued for deletion", key));
+                return true;
+            }
+            // Children of the new path are deleted with it, unless they are already being deleted
+            pending.subSet(key + "/", key + "/\uffff").removeIf(child -> !inFlight.contains(child));
+            pending.add(key);
+        }
+        LOGGER.debug(String.format("Queued %s for deletion", key));
+        scheduleSave();
+        dispatch();
+        return true;
+    }
+
+    /**
+     * Remove a path from the queue if it is not being deleted yet
+     * @param path the path relative to the repository
+     * @return true if the path is no longer queued
+     */
+    public boolean cancel(@NonNull String path) {
+        String key = normalize(path);
+        synchronized (this) {
+            if (inFlight.contains(key)) {
+                return false;
+            }
+            if (!pending.remove(key)) {
+                return !isCovered(key);
+            }
+            attempts.remove(key);
+            notBefore.remove(key);
+        }
+        LOGGER.debug(String.format("Cancelled deletion of %s", key));
+        scheduleSave();
+        return true;
+    }
+
+    /**
+     * Wait until a path is no longer being deleted, when {@link #cancel(String)} came too late
+     * @param path the path relative to the repository
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void awaitDeletion(@NonNull String path) throws InterruptedException {
+        String key = normalize(path);
+        while (inFlight.contains(key)) {
+            wait();
+        }
+    }
+
+    /**
+     * Number of paths waiting to be deleted, including the ones currently being deleted
+     * @return the queue depth
+     */
+    public synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * Number of paths currently being deleted
+     * @return the number of in-flight deletions
+     */
+    public synchronized int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Check if a path or one of its parents is waiting for deletion
+     * @param path the path relative to the repository
+     * @return true if the path will be deleted
+     */
+    public synchronized boolean isQueued(@NonNull String path) {
+        return isCovered(normalize(path));
+    }
+
+    private boolean isCovered(String key) {
+        String candidate = key;
+        while (true) {
+            if (pending.contains(candidate)) {
+                return true;
+            }
+            int slash = candidate.lastIndexOf('/');
+            if (slash <= 0) {
+                return false;
+            }
+            candidate = candidate.substring(0, slash);
+        }
+    }
+
+    private void dispatch() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                dispatcher.submit(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Shutting down, pending paths are resumed on next startup
+                draining.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        ArtifactoryClient client = null;
+        boolean configured = true;
+        try {
+            while (true) {
+                String next = nextPath();
+                if (next == null) {
+                    break;
+                }
+                slots.acquire();
+                throttle();
+                if (client == null) {
+                    client = buildArtifactoryClient();
+                    if (client == null) {
+                        synchronized (this) {
+                            inFlight.remove(next);
+                            notifyAll();
+                        }
+                        slots.release();
+                        LOGGER.debug("Artifactory is not configured, postponing deletions");
+                        configured = false;
+                        break;
+                    }
+                }
+                ArtifactoryClient sharedClient = client;
+                try {
+                    workers.submit(() -> {
+                        try {
+                            delete(sharedClient, next);
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    slots.release();
+                    break;
+                }
+            }
+            // Wait for in-flight deletions before closing the shared client
+            slots.acquire(Math.max(1, THREADS));
+            slots.release(Math.max(1, THREADS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(client);
+            draining.set(false);
+        }
+        rescheduleIfNeeded(configured);
+    }
+
+    private synchronized String nextPath() {
+        long now = System.currentTimeMillis();
+        for (String path : pending) {
+            if (!inFlight.contains(path) && notBefore.getOrDefault(path, 0L) <= now) {
+                inFlight.add(path);
+                return path;
+            }
+        }
+        return null;
+    }
+
+    private void throttle() throws InterruptedException {
+        if (DELETIONS_PER_SECOND <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long wait = nextPermitNanos - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        nextPermitNanos = Math.max(now, nextPermitNanos) + TimeUnit.SECONDS.toNanos(1) / DELETIONS_PER_SECOND;
+    }
+
+    private void delete(ArtifactoryClient client, String path) {
+        List<String> release = new ArrayList<>();
+        synchronized (this) {
+            if (releasing.remove(path)) {
+                release.add(path);
+            }
+            SortedSet<String> children = releasing.subSet(path + "/", path + "/\uffff");
+            release.addAll(children);
+            children.clear();
+        }
+        if (!release.isEmpty()) {
+            scheduleSave();
+            for (String released : release) {
+                ArtifactoryBlobStore.get().releaseUnder(client, released);
+            }
+        }
+        boolean done;
+        try {
+            LOGGER.trace(String.format("Deleting %s...", path));
+            client.deleteArtifact(path);
+            LOGGER.debug(String.format("Deleted %s on Artifactory Storage", path));
+            done = true;
+        } catch (Exception e) {
+            done = !exists(client, path);
+            if (done) {
+                LOGGER.debug(String.format("No file or folder found at %s", path));
+            } else {
+                LOGGER.warn(String.format("Failed to delete %s: %s", path, e.getMessage()));
+            }
+        }
+        synchronized (this) {
+            inFlight.remove(path);
+            notifyAll();
+            if (done) {
+                pending.remove(path);
+                attempts.remove(path);
+                notBefore.remove(path);
+            } else {
+                int attempt = attempts.merge(path, 1, Integer::sum);
+                if (attempt >= MAX_ATTEMPTS) {
+                    LOGGER.error(String.format("Giving up deleting %s after %d attempts", path, attempt));
+                    pending.remove(path);
+                    attempts.remove(path);
+                    notBefore.remove(path);
+                } else {
+                    long backoff = Math.min(MAX_BACKOFF_MILLIS, TimeUnit.SECONDS.toMillis(1L << Math.min(attempt, 20)));
+                    notBefore.put(path, System.currentTimeMillis() + backoff);
+                }
+            }
+        }
+        scheduleSave();
+    }
+
+    private static boolean exists(ArtifactoryClient client, String path) {
+        try {
+            return client.isFolder(path) || client.isFile(path);
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    /**
+     * Paths in back-off are retried once their delay expired
+     * @param configured false if the drain stopped because Artifactory is not configured
+     */
+    private void rescheduleIfNeeded(boolean configured) {
+        long delay;
+        synchronized (this) {
+            if (pending.size() == inFlight.size()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            delay = Long.MAX_VALUE;
+            for (String path : pending) {
+                if (!inFlight.contains(path)) {
+                    delay = Math.min(delay, Math.max(0, notBefore.getOrDefault(path, 0L) - now));
+                }
+            }
+        }
+        if (delay == 0 && configured) {
+            // Paths were queued while the previous drain was finishing
+            dispatch();
+            return;
+        }
+        // Not configured yet, try again later
+        long effectiveDelay = delay == 0 ? TimeUnit.MINUTES.toMillis(1) : delay;
+        Timer.get().schedule(this::dispatch, effectiveDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private ArtifactoryClient buildArtifactoryClient() {
+        ArtifactoryGenericArtifactConfig config = Utils.getArtifactConfig();
+        if (config == null || Utils.getCredentials() == null) {
+            return null;
+        }
+        return new ArtifactoryClient(config.getServerUrl(), config.getRepository(), Utils.getCredentials())
+                .withLane(ArtifactoryRequestScheduler.Lane.BACKGROUND, "deletion-queue");
+    }
+
+    private static void closeQuietly(ArtifactoryClient client) {
+        if (client != null) {
+            try {
+                client.close();
+            } catch (Exception e) {
+                LOGGER.warn("Failed to close Artifactory client", e);
+            }
+        }
+    }
+
+    static String normalize(String path) {
+        String key = path;
+        while (key.endsWith("/")) {
+            key = key.substring(0, key.length() - 1);
+        }
+        while (key.startsWith("/")) {
+            key = key.substring(1);
+        }
+        return key;
+    }
+
+    private XmlFile getConfigFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.get().getRootDir(), getClass().getName() + ".xml"));
+    }
+
+    private synchronized void load() {
+        XmlFile file = getConfigFile();
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            file.unmarshal(this);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Failed to load %s", file), e);
+        }
+    }
+
+    /**
+     * Save at most once per second, enqueuing thousands of builds must not rewrite the file each time
+     */
+    private void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            Timer.get()
+                    .schedule(
+                            () -> {
+                                saveScheduled.set(false);
+                                try {
+                                    save();
+                                } catch (IOException e) {
+                                    LOGGER.error("Failed to save Artifactory deletion queue", e);
+                                }
+                            },
+                            SAVE_DELAY_MILLIS,
+                            TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void save() throws IOException {
+        getConfigFile().write(this);
+    }
+}
@@ -0,0 +1,215 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.Serial;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import jenkins.model.ArtifactManager;
+import org.jenkinsci.plugins.workflow.steps.BodyExecutionCallback;
+import org.jenkinsci.plugins.workflow.steps.GeneralNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Upload files of the workspace to Artifactory while the body runs, so archiving them afterwards only moves them
+ * server side. Matching files are uploaded once their size and modification time did not change for the quiet
+ * period. Files modified after they were uploaded, or produced at the end of the body, are uploaded when archived.
+ */
+public class ArtifactoryEagerUploadStep extends Step {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryEagerUploadStep.class);
+
+    private final String includes;
+    private String excludes;
+    private int quietPeriod = 10;
+
+    @DataBoundConstructor
+    public ArtifactoryEagerUploadStep(String includes) {
+        this.includes = includes;
+    }
+
+    public String getIncludes() {
+        return includes;
+    }
+
+    public String getExcludes() {
+        return excludes;
+    }
+
+    @DataBoundSetter
+    public void setExcludes(String excludes) {
+        this.excludes = Util.fixEmptyAndTrim(excludes);
+    }
+
+    public int getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    /**
+     * Time a file must be left unchanged before it is uploaded
+     * @param quietPeriod the time in seconds
+     */
+    @DataBoundSetter
+    public void setQuietPeriod(int quietPeriod) {
+        this.quietPeriod = Math.max(0, quietPeriod);
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new Execution(this, context);
+    }
+
+    private static final class Execution extends GeneralNonBlockingStepExecution {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient ArtifactoryEagerUploadStep step;
+
+        Execution(ArtifactoryEagerUploadStep step, StepContext context) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        public boolean start() throws Exception {
+            run(this::watch);
+            return false;
+        }
+
+        private void watch() throws Exception {
+            Run<?, ?> run = getContext().get(Run.class);
+            FilePath workspace = getContext().get(FilePath.class);
+            TaskListener listener = getContext().get(TaskListener.class);
+            if (Util.fixEmptyAndTrim(step.getIncludes()) == null) {
+                throw new AbortException("No files to upload ahead of archiving");
+            }
+            ArtifactoryGenericArtifactConfig config = Utils.getArtifactConfig();
+            ArtifactManager artifactManager = run.pickArtifactManager();
+            if (config == null
+                    || !(artifactManager instanceof ArtifactoryArtifactManager manager)
+                    || manager.isContentAddressed()) {
+                // Artifacts are then uploaded when archived as usual
+                listener.getLogger().println("Uploads ahead of archiving require Artifactory storage of artifacts");
+                getContext().newBodyInvoker().withCallback(BodyExecutionCallback.wrap(getContext())).start();
+                return;
+            }
+            String token = UUID.randomUUID().toString();
+            Future<HashMap<String, ArtifactoryEagerUploads.Staged>> watch =
+                    workspace.actAsync(new ArtifactoryEagerUploads.Watch(
+                            ArtifactoryArtifactManager.buildArtifactoryConfig(config, workspace),
+                            run.getExternalizableId(),
+                            token,
+                            manager.getEagerUploadsPath(),
+                            step.getIncludes(),
+                            step.getExcludes(),
+                            step.getQuietPeriod() * 1000L));
+            ArtifactoryEagerUploads.get().watching(run, token, watch);
+            listener.getLogger().printf("Uploading %s ahead of archiving once written%n", step.getIncludes());
+            getContext().newBodyInvoker().withCallback(new Finish(token)).start();
+        }
+    }
+
+    /**
+     * Stop the uploads once the body completed, successfully or not, then complete the step
+     */
+    private static final class Finish extends BodyExecutionCallback {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final String token;
+
+        Finish(String token) {
+            this.token = token;
+        }
+
+        @Override
+        public void onSuccess(StepContext context, Object result) {
+            // Stopping waits for the uploads in progress, not on the CPS thread
+            Computer.threadPoolForRemoting.submit(() -> {
+                finish(context);
+                context.onSuccess(result);
+            });
+        }
+
+        @Override
+        public void onFailure(StepContext context, Throwable t) {
+            Computer.threadPoolForRemoting.submit(() -> {
+                finish(context);
+                context.onFailure(t);
+            });
+        }
+
+        private void finish(StepContext context) {
+            try {
+                Run<?, ?> run = context.get(Run.class);
+                FilePath workspace = context.get(FilePath.class);
+                TaskListener listener = context.get(TaskListener.class);
+                Future<HashMap<String, ArtifactoryEagerUploads.Staged>> watch =
+                        ArtifactoryEagerUploads.get().stopWatching(token);
+                if (watch == null) {
+                    listener.getLogger().println("Uploads ahead of archiving were interrupted by a restart");
+                    return;
+                }
+                try {
+                    workspace.act(new ArtifactoryEagerUploads.Stop(token));
+                    Map<String, ArtifactoryEagerUploads.Staged> staged = watch.get();
+                    ArtifactoryEagerUploads.get().add(run, staged);
+                    long size = staged.values().stream().mapToLong(ArtifactoryEagerUploads.Staged::size).sum();
+                    listener.getLogger()
+                            .printf("Uploaded %d file(s) of %d bytes ahead of archiving%n", staged.size(), size);
+                } catch (ExecutionException e) {
+                    // The files are then uploaded when archived
+                    LOGGER.warn(String.format("Failed to upload files of %s ahead of archiving", run), e.getCause());
+                    listener.getLogger()
+                            .printf("Failed to upload files ahead of archiving: %s%n", e.getCause().getMessage());
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Failed to stop uploads ahead of archiving", e);
+            }
+        }
+    }
+
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Set.of(Run.class, FilePath.class, TaskListener.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "artifactoryEagerUpload";
+        }
+
+        @Override
+        public boolean takesImplicitBlockArgument() {
+            return true;
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Upload files to Artifactory while they are built, ahead of archiving them";
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.remoting.Channel;
+import hudson.remoting.VirtualChannel;
+import hudson.util.DirScanner;
+import hudson.util.FileVisitor;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import jenkins.agents.ControllerToAgentFileCallable;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Files uploaded by {@link ArtifactoryEagerUploadStep} while a build is still running.
+ * Files are uploaded to a staging folder of the build once their size and modification time stopped changing. When
+ * the build archives a staged file that was not modified since, the file is moved server side to the artifacts
+ * folder instead of being uploaded again. Staged files that were never archived are deleted once the build completed.
+ * Staged files are only known in memory, after a controller restart archiving uploads all files again.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class ArtifactoryEagerUploads {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryEagerUploads.class);
+
+    /**
+     * Folder of the staged files, under the build folder
+     */
+    static final String FOLDER = "eager";
+
+    /**
+     * Shortest interval between two scans of the watched files
+     */
+    static final long MIN_POLL_MILLIS =
+            SystemProperties.getLong(ArtifactoryEagerUploads.class.getName() + ".minPollMillis", 1000L);
+
+    private static final int UPLOAD_THREADS = 4;
+
+    /**
+     * Stop signals of the watches running in this agent, by token
+     */
+    private static final Map<String, CountDownLatch> STOPS = new ConcurrentHashMap<>();
+
+    /**
+     * Running watches by token
+     */
+    private final Map<String, Future<HashMap<String, Staged>>> watches = new ConcurrentHashMap<>();
+
+    /**
+     * Staged files not archived yet by build, by path relative to the workspace
+     */
+    private final Map<String, Map<String, Staged>> staged = new ConcurrentHashMap<>();
+
+    public static ArtifactoryEagerUploads get() {
+        return ExtensionList.lookupSingleton(ArtifactoryEagerUploads.class);
+    }
+
+    /**
+     * Record a watch started for a build
+     * @param run the build
+     * @param token the token of the watch
+     * @param watch the watch, completed with the staged files once stopped
+     */
+    void watching(@NonNull Run<?, ?> run, @NonNull String token, @NonNull Future<HashMap<String, Staged>> watch) {
+        staged.computeIfAbsent(run.getExternalizableId(), k -> new ConcurrentHashMap<>());
+        watches.put(token, watch);
+    }
+
+    /**
+     * Forget a watch about to be stopped
+     * @return the watch, or null if it is unknown, like after a controller restart
+     */
+    @CheckForNull
+    Future<HashMap<String, Staged>> stopWatching(@NonNull String token) {
+        return watches.remove(token);
+    }
+
+    /**
+     * Record the files staged by a watch
+     */
+    void add(@NonNull Run<?, ?> run, @NonNull Map<String, Staged> files) {
+        staged.computeIfAbsent(run.getExternalizableId(), k -> new ConcurrentHashMap<>()).putAll(files);
+    }
+
+    /**
+     * Staged files of a build not archived yet
+     * @return the files by path relative to the workspace, removing an entry prevents it from being archived again
+     */
+    @NonNull
+    Map<String, Staged> staged(@NonNull Run<?, ?> run) {
+        Map<String, Staged> files = staged.get(run.getExternalizableId());
+        return files != null ? files : new HashMap<>();
+    }
+
+    /**
+     * A file uploaded to the staging folder
+     * @param path the path of the staged file
+     * @param size the size of the file when it was uploaded
+     * @param lastModified the modification time of the file when it was uploaded
+     * @param checksums the checksums of the uploaded content
+     */
+    record Staged(String path, long size, long lastModified, ArtifactoryClient.Checksums checksums)
+            implements Serializable {
+
+        /**
+         * Whether a file is still the one that was uploaded
+         */
+        boolean matches(File file) {
+            try {
+                BasicFileAttributes attributes =
+                        Files.readAttributes(file.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                return attributes.isRegularFile()
+                        && attributes.size() == size
+                        && attributes.lastModifiedTime().toMillis() == lastModified;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Size and modification time of a watched file
+     */
+    private record Observed(long size, long lastModified) {}
+
+    /**
+     * Master to slave callable that watches the files of a workspace and uploads them to the staging folder once they
+     * did not change for a quiet period, until it is stopped
+     */
+    record Watch(
+            ArtifactoryClient.ArtifactoryConfig config,
+            String owner,
+            String token,
+            String base,
+            String includes,
+            String excludes,
+            long quietMillis)
+            implements ControllerToAgentFileCallable<HashMap<String, Staged>> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public HashMap<String, Staged> invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+            CountDownLatch stop = STOPS.computeIfAbsent(token, k -> new CountDownLatch(1));
+            Map<String, Staged> uploaded = new ConcurrentHashMap<>();
+            try (ArtifactoryClient client = new ArtifactoryClient(this.config)
+                    .withTransferPriority(ArtifactoryBandwidthShaper.Priority.ARCHIVE, owner)) {
+                Map<String, Observed> previous = Map.of();
+                do {
+                    Map<String, Observed> current = scan(f);
+                    long now = System.currentTimeMillis();
+                    List<String> ready = new ArrayList<>();
+                    for (Map.Entry<String, Observed> entry : current.entrySet()) {
+                        Observed observed = entry.getValue();
+                        Staged staged = uploaded.get(entry.getKey());
+                        // Unchanged since the previous scan and for the quiet period, and not uploaded as it is
+                        if (observed.equals(previous.get(entry.getKey()))
+                                && now - observed.lastModified() >= quietMillis
+                                && (staged == null
+                                        || staged.size() != observed.size()
+                                        || staged.lastModified() != observed.lastModified())) {
+                            ready.add(entry.getKey());
+                        }
+                    }
+                    ArtifactoryExecutors.forEachBounded(
+                            ready.iterator(),
+                            UPLOAD_THREADS,
+                            name -> upload(client, f, name, current.get(name), uploaded));
+                    previous = current;
+                } while (!stop.await(Math.max(MIN_POLL_MILLIS, quietMillis), TimeUnit.MILLISECONDS)
+                        && !(channel instanceof Channel c && c.isClosingOrClosed()));
+            } catch (IOException | InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e.getMessage(), e);
+            } finally {
+                STOPS.remove(token);
+            }
+            return new HashMap<>(uploaded);
+        }
+
+        private Map<String, Observed> scan(File f) throws IOException {
+            Map<String, Observed> files = new HashMap<>();
+            new DirScanner.Glob(includes, excludes).scan(f, new FileVisitor() {
+                @Override
+                public void visit(File file, String relativePath) throws IOException {
+                    BasicFileAttributes attributes =
+                            Files.readAttributes(file.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isRegularFile()) {
+                        files.put(
+                                relativePath.replace('\\', '/'),
+                                new Observed(attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    }
+                }
+            });
+            return files;
+        }
+
+        /**
+         * Upload a file to the staging folder. Failures are only logged, the file is uploaded again when archived.
+         */
+        private void upload(
+                ArtifactoryClient client, File f, String name, Observed observed, Map<String, Staged> uploaded) {
+            Path file = new File(f, name).toPath();
+            String target = base + name;
+            try {
+                ArtifactoryClient.Checksums checksums = client.uploadArtifact(file, target);
+                // Recorded even if the file changed meanwhile, it is then uploaded again when archived
+                uploaded.put(name, new Staged(target, observed.size(), observed.lastModified(), checksums));
+                LOGGER.debug(String.format("Uploaded %s ahead of archiving to %s", file, target));
+            } catch (IOException e) {
+                LOGGER.warn(String.format("Failed to upload %s ahead of archiving to %s", file, target), e);
+            }
+        }
+    }
+
+    /**
+     * Master to slave callable that stops a watch once its uploads in progress are done
+     */
+    record Stop(String token) implements ControllerToAgentFileCallable<Void> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Void invoke(File f, VirtualChannel channel) {
+            // The watch may not have started yet, it then stops after its first scan
+            STOPS.computeIfAbsent(token, k -> new CountDownLatch(1)).countDown();
+            return null;
+        }
+    }
+
+    /**
+     * Delete the staged files never archived once the build completed. The staging folder is looked up on Artifactory
+     * rather than in memory, so files staged before a controller restart are deleted too.
+     */
+    @Extension
+    public static final class Cleanup extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            get().staged.remove(run.getExternalizableId());
+            if (!(run.getArtifactManager() instanceof ArtifactoryArtifactManager manager)
+                    || manager.isContentAddressed()) {
+                return;
+            }
+            try {
+                manager.clearEagerUploads();
+            } catch (Exception e) {
+                LOGGER.debug(String.format("Failed to delete files of %s uploaded ahead of archiving", run), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executors used to fan out transfers.
+ * When the virtual threads mode is enabled and the JVM supports them (Java 21 and later), every task runs on its own
+ * virtual thread and a JVM-wide semaphore bounds the number of tasks holding a connection. Otherwise, or on older
+ * JVMs, a fixed pool of platform threads is used. Transfers fanned out by a task already holding a connection permit
+ * run inline on its thread with that permit, as waiting for other permits could deadlock once all are held by such
+ * tasks.
+ */
+@Restricted(NoExternalUse.class)
+final class ArtifactoryExecutors {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryExecutors.class);
+
+    static final boolean VIRTUAL_THREADS =
+            SystemProperties.getBoolean(ArtifactoryExecutors.class.getName() + ".virtualThreads", false);
+    static final int MAX_CONNECTIONS =
+            SystemProperties.getInteger(ArtifactoryExecutors.class.getName() + ".maxConnections", 16);
+
+    private static final Semaphore CONNECTIONS = new Semaphore(Math.max(1, MAX_CONNECTIONS), true);
+
+    /**
+     * Whether the current thread holds a connection permit
+     */
+    private static final ThreadLocal<Boolean> HOLDING = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}, null before Java 21. Looked up reflectively as the plugin
+     * is compiled for older releases.
+     */
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = lookupVirtualThreadPerTaskExecutor();
+
+    private ArtifactoryExecutors() {}
+
+    /**
+     * Create an executor for transfers. Shut it down once the tasks completed
+     * @param platformThreads number of platform threads when virtual threads are not used
+     * @return the executor
+     */
+    static ExecutorService newTransferExecutor(int platformThreads) {
+        return newTransferExecutor(platformThreads, HOLDING.get() ? null : newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Create an executor for transfers. Shut it down once the tasks completed
+     * @param platformThreads number of platform threads when virtual threads are not used
+     * @param virtual the executor running each task on its own thread, null to use platform threads
+     * @return the executor
+     */
+    static ExecutorService newTransferExecutor(int platformThreads, @CheckForNull ExecutorService virtual) {
+        if (HOLDING.get()) {
+            if (virtual != null) {
+                virtual.shutdown();
+            }
+            return new InlineExecutor();
+        }
+        return virtual != null
+                ? new BoundedExecutor(virtual)
+                : Executors.newFixedThreadPool(Math.max(1, platformThreads));
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (VIRTUAL_THREADS && NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOGGER.warn("Unable to create virtual threads, falling back to platform threads", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Number of workers to feed for transfers
+     * @param platformThreads number of platform threads when virtual threads are not used
+     * @return the number of workers
+     */
+    static int parallelism(int platformThreads) {
+        return VIRTUAL_THREADS && NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null
+                ? Math.max(1, MAX_CONNECTIONS)
+                : Math.max(1, platformThreads);
+    }
+
+    /**
+     * Run a task for each item on a fixed number of workers fed through a bounded queue, so memory doesn't grow with
+     * the number of items. No more items are handed out after the first failure.
+     * @param items the items, consumed lazily
+     * @param platformThreads number of workers when virtual threads are not used
+     * @param task the task to run for each item
+     * @throws IOException the first failure of a task
+     * @throws InterruptedException if interrupted while feeding the workers
+     */
+    static <T> void forEachBounded(Iterator<T> items, int platformThreads, ItemTask<T> task)
+            throws IOException, InterruptedException {
+        forEachBounded(
+                items,
+                parallelism(platformThreads),
+                HOLDING.get() ? null : newVirtualThreadPerTaskExecutor(),
+                task);
+    }
+
+    /**
+     * Run a task for each item on a fixed number of workers fed through a bounded queue
+     * @param items the items, consumed lazily
+     * @param workers number of workers
+     * @param virtual the executor running each worker on its own thread, bounded by the connection permits, null to
+     * use a pool of platform threads
+     * @param task the task to run for each item
+     * @throws IOException the first failure of a task
+     * @throws InterruptedException if interrupted while feeding the workers
+     */
+    static <T> void forEachBounded(
+            Iterator<T> items, int workers, @CheckForNull ExecutorService virtual, ItemTask<T> task)
+            throws IOException, InterruptedException {
+        if (HOLDING.get()) {
+            if (virtual != null) {
+                virtual.shutdown();
+            }
+            forEachInline(items, task);
+            return;
+        }
+        BlockingQueue<Optional<T>> queue = new ArrayBlockingQueue<>(workers * 2);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        // Virtual workers only hold a connection permit while running a task, not while waiting for items
+        ExecutorService executor = virtual != null ? virtual : Executors.newFixedThreadPool(workers);
+        boolean bounded = virtual != null;
+        try {
+            List<Future<?>> running = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                running.add(executor.submit(() -> {
+                    // An empty item marks the end of the queue
+                    for (Optional<T> item = queue.take(); item.isPresent(); item = queue.take()) {
+                        if (failure.get() != null) {
+                            continue;
+                        }
+                        if (bounded) {
+                            CONNECTIONS.acquire();
+                            HOLDING.set(true);
+                        }
+                        try {
+                            task.run(item.get());
+                        } catch (Exception e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            if (bounded) {
+                                HOLDING.set(false);
+                                CONNECTIONS.release();
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            while (items.hasNext() && failure.get() == null) {
+                queue.put(Optional.of(items.next()));
+            }
+            for (int i = 0; i < workers; i++) {
+                queue.put(Optional.empty());
+            }
+            for (Future<?> worker : running) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, new IOException(e.getCause().getMessage(), e.getCause()));
+        } finally {
+            executor.shutdownNow();
+        }
+        Exception e = failure.get();
+        if (e instanceof IOException ioException) {
+            throw ioException;
+        }
+        if (e != null) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Run a task for each item on the current thread, which already holds a connection permit
+     */
+    private static <T> void forEachInline(Iterator<T> items, ItemTask<T> task)
+            throws IOException, InterruptedException {
+        while (items.hasNext()) {
+            try {
+                task.run(items.next());
+            } catch (IOException | InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Task run for each item by {@link #forEachBounded(Iterator, int, ItemTask)}
+     */
+    @FunctionalInterface
+    interface ItemTask<T> {
+        void run(T item) throws Exception;
+    }
+
+    private static Method lookupVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            if (VIRTUAL_THREADS) {
+                LOGGER.info(String.format(
+                        "Virtual threads are not supported by Java %s, using platform threads",
+                        System.getProperty("java.specification.version")));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Run each task on its own virtual thread once a connection permit is available
+     */
+    private static final class BoundedExecutor extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+
+        private BoundedExecutor(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            delegate.execute(() -> {
+                boolean acquired = false;
+                try {
+                    CONNECTIONS.acquire();
+                    acquired = true;
+                    HOLDING.set(true);
+                } catch (InterruptedException e) {
+                    // Still run the task so its future completes, it fails fast on the interrupt flag
+                    Thread.currentThread().interrupt();
+                }
+                try {
+                    command.run();
+                } finally {
+                    if (acquired) {
+                        HOLDING.set(false);
+                        CONNECTIONS.release();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @NonNull
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+
+    /**
+     * Run each task on the submitting thread, with the connection permit it already holds
+     */
+    private static final class InlineExecutor extends AbstractExecutorService {
+
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Executor is shut down");
+            }
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @NonNull
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            // Tasks complete before they are handed back to the submitter
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) {
+            return shutdown;
+        }
+    }
+}
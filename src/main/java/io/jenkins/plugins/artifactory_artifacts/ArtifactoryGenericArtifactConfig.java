@@ -7,9 +7,12 @@ import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.ExtensionList;
+import hudson.Util;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
 import hudson.model.Item;
+import hudson.model.Label;
+import hudson.model.Node;
 import hudson.security.ACL;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
@@ -17,6 +20,8 @@ import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Pattern;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
@@ -42,12 +47,24 @@ public class ArtifactoryGenericArtifactConfig extends AbstractDescribableImpl<Ar
     public static final int DEFAULT_MAX_UPLOAD_RETRIES = 0;
     public static final int DEFAULT_RETRY_DELAY_SECONDS = 5;
 
+    // Caches are kept forever unless a retention is configured
+    public static final int DEFAULT_CACHE_RETENTION_DAYS = 0;
+
     private String storageCredentialId;
     private String serverUrl;
     private String repository;
     private String prefix;
     private int maxUploadRetries = DEFAULT_MAX_UPLOAD_RETRIES;
     private int retryDelaySeconds = DEFAULT_RETRY_DELAY_SECONDS;
+    private boolean stableJobKeys;
+    private boolean referenceCopies;
+    private boolean contentAddressed;
+    private boolean perFileStashes;
+    private int stashCacheSize;
+    private int stashShards;
+    private int cacheRetentionDays = DEFAULT_CACHE_RETENTION_DAYS;
+    private boolean buildProperties;
+    private String bandwidthLimits;
 
     @DataBoundConstructor
     public ArtifactoryGenericArtifactConfig() {}
@@ -131,6 +148,157 @@ public class ArtifactoryGenericArtifactConfig extends AbstractDescribableImpl<Ar
         this.retryDelaySeconds = Math.max(0, retryDelaySeconds); // Minimum 0 seconds (no delay)
     }
 
+    public boolean isStableJobKeys() {
+        return stableJobKeys;
+    }
+
+    @DataBoundSetter
+    public void setStableJobKeys(boolean stableJobKeys) {
+        this.stableJobKeys = stableJobKeys;
+    }
+
+    public boolean isReferenceCopies() {
+        return referenceCopies;
+    }
+
+    @DataBoundSetter
+    public void setReferenceCopies(boolean referenceCopies) {
+        this.referenceCopies = referenceCopies;
+    }
+
+    public boolean isContentAddressed() {
+        return contentAddressed;
+    }
+
+    @DataBoundSetter
+    public void setContentAddressed(boolean contentAddressed) {
+        this.contentAddressed = contentAddressed;
+    }
+
+    public boolean isPerFileStashes() {
+        return perFileStashes;
+    }
+
+    @DataBoundSetter
+    public void setPerFileStashes(boolean perFileStashes) {
+        this.perFileStashes = perFileStashes;
+    }
+
+    /**
+     * Size of the stash cache of each agent
+     * @return the size in MiB, 0 when stashes are not cached
+     */
+    public int getStashCacheSize() {
+        return stashCacheSize;
+    }
+
+    @DataBoundSetter
+    public void setStashCacheSize(int stashCacheSize) {
+        this.stashCacheSize = Math.max(0, stashCacheSize);
+    }
+
+    /**
+     * Number of archives a large stash is split into, compressed and transferred in parallel
+     * @return the number of shards, 0 or 1 to store each stash as a single archive
+     */
+    public int getStashShards() {
+        return stashShards;
+    }
+
+    @DataBoundSetter
+    public void setStashShards(int stashShards) {
+        this.stashShards = Math.max(0, stashShards);
+    }
+
+    /**
+     * Number of days a cache saved by the cache step is kept without being restored
+     * @return the number of days, 0 to keep caches forever
+     */
+    public int getCacheRetentionDays() {
+        return cacheRetentionDays;
+    }
+
+    @DataBoundSetter
+    public void setCacheRetentionDays(int cacheRetentionDays) {
+        this.cacheRetentionDays = Math.max(0, cacheRetentionDays);
+    }
+
+    public boolean isBuildProperties() {
+        return buildProperties;
+    }
+
+    @DataBoundSetter
+    public void setBuildProperties(boolean buildProperties) {
+        this.buildProperties = buildProperties;
+    }
+
+    public String getBandwidthLimits() {
+        return bandwidthLimits;
+    }
+
+    @DataBoundSetter
+    public void setBandwidthLimits(String bandwidthLimits) {
+        this.bandwidthLimits = Util.fixEmptyAndTrim(bandwidthLimits);
+    }
+
+    /**
+     * Resolve the bandwidth cap of an agent from its labels. The first matching rule wins
+     * @param node the agent
+     * @return the cap in bytes per second, 0 for no cap
+     */
+    public long getBandwidthLimit(@NonNull Node node) {
+        Map<String, Long> limits;
+        try {
+            limits = parseBandwidthLimits(bandwidthLimits);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn(String.format("Ignoring invalid bandwidth limits: %s", e.getMessage()));
+            return 0;
+        }
+        for (Map.Entry<String, Long> limit : limits.entrySet()) {
+            if (Label.parseExpression(limit.getKey()).matches(node)) {
+                return limit.getValue();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Parse bandwidth rules, one {@code label expression=MiB per second} rule per line
+     * @param rules the rules
+     * @return the caps in bytes per second by label expression
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    static Map<String, Long> parseBandwidthLimits(String rules) {
+        Map<String, Long> limits = new LinkedHashMap<>();
+        if (rules == null) {
+            return limits;
+        }
+        for (String line : rules.split("\\R")) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException(String.format("Expected label=MiB/s but got '%s'", line));
+            }
+            String expression = line.substring(0, separator).trim();
+            double mebibytes;
+            try {
+                mebibytes = Double.parseDouble(line.substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("Invalid bandwidth in '%s'", line), e);
+            }
+            if (mebibytes < 0) {
+                throw new IllegalArgumentException(String.format("Negative bandwidth in '%s'", line));
+            }
+            // Fails on invalid label expressions
+            Label.parseExpression(expression);
+            limits.put(expression, (long) (mebibytes * 1024 * 1024));
+        }
+        return limits;
+    }
+
     public static ArtifactoryGenericArtifactConfig get() {
         return ExtensionList.lookupSingleton(ArtifactoryGenericArtifactConfig.class);
     }
@@ -154,6 +322,14 @@ public class ArtifactoryGenericArtifactConfig extends AbstractDescribableImpl<Ar
             return super.configure(req, json);
         }
 
+        /**
+         * Number of paths waiting to be deleted on Artifactory
+         * @return the deletion queue depth
+         */
+        public int getPendingDeletions() {
+            return ArtifactoryDeletionQueue.get().getQueueDepth();
+        }
+
         @SuppressWarnings("lgtm[jenkins/csrf]")
         public ListBoxModel doFillStorageCredentialIdItems(@AncestorInPath Item item) {
             StandardListBoxModel result = new StandardListBoxModel();
@@ -243,6 +419,17 @@ public class ArtifactoryGenericArtifactConfig extends AbstractDescribableImpl<Ar
             return FormValidation.ok();
         }
 
+        @SuppressWarnings("lgtm[jenkins/csrf]")
+        public FormValidation doCheckBandwidthLimits(@QueryParameter String bandwidthLimits) {
+            Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+            try {
+                parseBandwidthLimits(Util.fixEmptyAndTrim(bandwidthLimits));
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+            return FormValidation.ok();
+        }
+
         @RequirePOST
         public FormValidation doValidateArtifactoryConfig(
                 @QueryParameter("serverUrl") final String serverUrl,
@@ -0,0 +1,169 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.BulkChange;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Mapping between job full names and stable storage ids.
+ * When enabled, builds are stored under {@code @jobs/<id>/<build number>} so renaming or moving a job only updates
+ * this mapping and does not touch any data on Artifactory.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class ArtifactoryJobKeys implements Saveable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryJobKeys.class);
+
+    /**
+     * Root folder of the stable layout. '@' is not allowed in item names so it cannot clash with a job folder.
+     */
+    static final String FOLDER = "@jobs";
+
+    private Map<String, String> keys = new ConcurrentHashMap<>();
+
+    public ArtifactoryJobKeys() {
+        load();
+    }
+
+    public static ArtifactoryJobKeys get() {
+        return ExtensionList.lookupSingleton(ArtifactoryJobKeys.class);
+    }
+
+    /**
+     * Return the storage key of a job, allocating a new id if needed
+     * @param fullName the full name of the job
+     * @return the storage key relative to the prefix
+     */
+    public @NonNull String keyFor(@NonNull String fullName) {
+        return toKey(idFor(fullName));
+    }
+
+    /**
+     * Return the stable id of a job, allocating a new id if needed
+     * @param fullName the full name of the job
+     * @return the stable id
+     */
+    public @NonNull String idFor(@NonNull String fullName) {
+        String id = keys.get(fullName);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = keys.computeIfAbsent(fullName, k -> UUID.randomUUID().toString());
+            saveQuietly();
+        }
+        LOGGER.debug(String.format("Using storage id %s for %s", id, fullName));
+        return id;
+    }
+
+    /**
+     * Update the mapping after an item was renamed or moved
+     * @param oldFullName the old full name of the item
+     * @param newFullName the new full name of the item
+     * @return the number of jobs that were relocated
+     */
+    public synchronized int relocate(@NonNull String oldFullName, @NonNull String newFullName) {
+        int count = 0;
+        for (String fullName : new ArrayList<>(keys.keySet())) {
+            if (isSameOrChild(fullName, oldFullName)) {
+                String relocated = newFullName + fullName.substring(oldFullName.length());
+                keys.put(relocated, keys.remove(fullName));
+                count++;
+            }
+        }
+        if (count > 0) {
+            saveQuietly();
+        }
+        return count;
+    }
+
+    /**
+     * Remove an item and its children from the mapping
+     * @param fullName the full name of the deleted item
+     * @return the storage keys that were used by the removed jobs
+     */
+    public synchronized List<String> remove(@NonNull String fullName) {
+        List<String> removed = new ArrayList<>();
+        for (String name : new ArrayList<>(keys.keySet())) {
+            if (isSameOrChild(name, fullName)) {
+                removed.add(toKey(keys.remove(name)));
+            }
+        }
+        if (!removed.isEmpty()) {
+            saveQuietly();
+        }
+        return removed;
+    }
+
+    /**
+     * Return a copy of the mapping
+     * @return the job full name to id mapping
+     */
+    public Map<String, String> getKeys() {
+        return Map.copyOf(keys);
+    }
+
+    private static String toKey(String id) {
+        return FOLDER + "/" + id;
+    }
+
+    private static boolean isSameOrChild(String fullName, String parent) {
+        return fullName.equals(parent) || fullName.startsWith(parent + "/");
+    }
+
+    private XmlFile getConfigFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.get().getRootDir(), getClass().getName() + ".xml"));
+    }
+
+    private synchronized void load() {
+        XmlFile file = getConfigFile();
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            file.unmarshal(this);
+        } catch (IOException e) {
+            LOGGER.error(String.format("Failed to load %s", file), e);
+        }
+        if (keys == null) {
+            keys = new ConcurrentHashMap<>();
+        } else if (!(keys instanceof ConcurrentHashMap)) {
+            keys = new ConcurrentHashMap<>(keys);
+        }
+    }
+
+    @Override
+    public synchronized void save() throws IOException {
+        if (BulkChange.contains(this)) {
+            return;
+        }
+        XmlFile file = getConfigFile();
+        file.write(this);
+        SaveableListener.fireOnChange(this, file);
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            LOGGER.error("Failed to save Artifactory job keys", e);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Manifest of a build using the content addressed layout.
+ * Maps logical artifact paths, relative to the artifacts root, to the blobs holding their content.
+ * Stored as JSON next to the build data on Artifactory. Stashes stored file by file use the same format, with paths
+ * relative to the workspace.
+ */
+final class ArtifactoryManifest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Name of the manifest file in the build folder
+     */
+    static final String NAME = "manifest.json";
+
+    private static final int VERSION = 1;
+
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * Parse a manifest
+     * @param is the JSON content
+     * @return the manifest
+     * @throws IOException if the manifest cannot be read
+     */
+    static ArtifactoryManifest parse(InputStream is) throws IOException {
+        ArtifactoryManifest manifest = new ArtifactoryManifest();
+        JSONObject json = JSONObject.fromObject(IOUtils.toString(is, StandardCharsets.UTF_8));
+        JSONObject files = json.optJSONObject("files");
+        if (files == null) {
+            return manifest;
+        }
+        for (Object key : files.keySet()) {
+            JSONObject file = files.getJSONObject((String) key);
+            manifest.entries.put(
+                    (String) key,
+                    new Entry(
+                            file.getString("sha256"),
+                            file.optString("sha1", null),
+                            file.optString("md5", null),
+                            file.optLong("size"),
+                            file.optLong("lastModified"),
+                            file.optInt("mode")));
+        }
+        return manifest;
+    }
+
+    /**
+     * Serialize the manifest
+     * @return the JSON content
+     */
+    synchronized byte[] toJson() {
+        JSONObject files = new JSONObject();
+        entries.forEach((path, entry) -> {
+            JSONObject file = new JSONObject();
+            file.put("sha256", entry.getSha256());
+            if (entry.getSha1() != null) {
+                file.put("sha1", entry.getSha1());
+            }
+            if (entry.getMd5() != null) {
+                file.put("md5", entry.getMd5());
+            }
+            file.put("size", entry.getSize());
+            file.put("lastModified", entry.getLastModified());
+            if (entry.getMode() != 0) {
+                file.put("mode", entry.getMode());
+            }
+            files.put(path, file);
+        });
+        JSONObject json = new JSONObject();
+        json.put("version", VERSION);
+        json.put("files", files);
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Add or replace a file
+     * @param path the logical path
+     * @param entry the blob of the file
+     * @return the previous blob of the file, or null
+     */
+    synchronized @CheckForNull Entry put(@NonNull String path, @NonNull Entry entry) {
+        return entries.put(path, entry);
+    }
+
+    synchronized @CheckForNull Entry get(@NonNull String path) {
+        return entries.get(path);
+    }
+
+    synchronized SortedMap<String, Entry> getEntries() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(entries));
+    }
+
+    synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * SHA-256 of all blobs referenced by this manifest
+     * @return the distinct hashes
+     */
+    synchronized Set<String> getBlobs() {
+        Set<String> blobs = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            blobs.add(entry.getSha256());
+        }
+        return blobs;
+    }
+
+    /**
+     * Check if a logical path is a directory
+     * @param path the logical path, empty for the root
+     * @return true if files exist under the path
+     */
+    synchronized boolean isDirectory(@NonNull String path) {
+        if (path.isEmpty()) {
+            return true;
+        }
+        String dir = path + "/";
+        String next = entries.ceilingKey(dir);
+        return next != null && next.startsWith(dir);
+    }
+
+    /**
+     * Names of the direct children of a directory
+     * @param path the logical path, empty for the root
+     * @return the child names
+     */
+    synchronized Set<String> children(@NonNull String path) {
+        String dir = path.isEmpty() ? "" : path + "/";
+        Set<String> children = new TreeSet<>();
+        for (String key : entries.tailMap(dir, true).keySet()) {
+            if (!key.startsWith(dir)) {
+                break;
+            }
+            String rest = key.substring(dir.length());
+            int slash = rest.indexOf('/');
+            children.add(slash < 0 ? rest : rest.substring(0, slash));
+        }
+        return children;
+    }
+
+    /**
+     * A blob of the content addressed store
+     */
+    static final class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String sha256;
+        private final String sha1;
+        private final String md5;
+        private final long size;
+        private final long lastModified;
+        private final int mode;
+
+        Entry(String sha256, String sha1, long size, long lastModified) {
+            this(sha256, sha1, null, size, lastModified);
+        }
+
+        Entry(String sha256, String sha1, String md5, long size, long lastModified) {
+            this(sha256, sha1, md5, size, lastModified, 0);
+        }
+
+        Entry(String sha256, String sha1, String md5, long size, long lastModified, int mode) {
+            this.sha256 = sha256;
+            this.sha1 = sha1;
+            this.md5 = md5;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.mode = mode;
+        }
+
+        String getSha256() {
+            return sha256;
+        }
+
+        @CheckForNull
+        String getSha1() {
+            return sha1;
+        }
+
+        /**
+         * MD5 checksum of the file, as used by Jenkins fingerprints. Not known for files archived by older releases
+         */
+        @CheckForNull
+        String getMd5() {
+            return md5;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Permission bits of the file, 0 when unknown
+         */
+        int getMode() {
+            return mode;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ArtifactoryManifest[%d file(s)]", entries.size());
+    }
+}
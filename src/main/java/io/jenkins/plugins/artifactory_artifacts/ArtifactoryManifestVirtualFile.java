@@ -0,0 +1,174 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.Run;
+import hudson.remoting.Callable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import jenkins.util.VirtualFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Artifacts of a build using the content addressed layout.
+ * Logical paths are resolved through the build manifest, only file contents are read from Artifactory.
+ */
+public class ArtifactoryManifestVirtualFile extends ArtifactoryAbstractVirtualFile {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryManifestVirtualFile.class);
+
+    /**
+     * The artifacts folder of the build, only used to build URIs of directories
+     */
+    private final String key;
+
+    private final ArtifactoryManifest manifest;
+
+    /**
+     * Path relative to the artifacts root, empty for the root
+     */
+    private final String path;
+
+    private final transient Run<?, ?> build;
+
+    // Cached client - reused across operations to avoid creating/destroying connections
+    private transient ArtifactoryClient cachedClient;
+
+    ArtifactoryManifestVirtualFile(String key, ArtifactoryManifest manifest, String path, Run<?, ?> build) {
+        this.key = key;
+        this.manifest = manifest;
+        this.path = path;
+        this.build = build;
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        int lastSlash = path.lastIndexOf('/');
+        return lastSlash >= 0 ? path.substring(lastSlash + 1) : path;
+    }
+
+    @NonNull
+    @Override
+    public URI toURI() {
+        try {
+            return new URI(Utils.getUrl(path.isEmpty() ? key : key + "/" + path));
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @CheckForNull
+    @Override
+    public URL toExternalURL() throws IOException {
+        ArtifactoryManifest.Entry entry = manifest.get(path);
+        if (entry == null) {
+            return null;
+        }
+        return new URL(Utils.getUrl(ArtifactoryBlobStore.blobPath(entry.getSha256())));
+    }
+
+    @Override
+    public VirtualFile getParent() {
+        int lastSlash = path.lastIndexOf('/');
+        return new ArtifactoryManifestVirtualFile(
+                key, manifest, lastSlash >= 0 ? path.substring(0, lastSlash) : "", build);
+    }
+
+    @Override
+    public boolean isDirectory() throws IOException {
+        return manifest.isDirectory(path);
+    }
+
+    @Override
+    public boolean isFile() throws IOException {
+        return manifest.get(path) != null;
+    }
+
+    @Override
+    public boolean exists() throws IOException {
+        return isDirectory() || isFile();
+    }
+
+    @NonNull
+    @Override
+    public VirtualFile[] list() throws IOException {
+        return manifest.children(path).stream()
+                .map(this::child)
+                .toArray(VirtualFile[]::new);
+    }
+
+    @NonNull
+    @Override
+    public VirtualFile child(@NonNull String name) {
+        return new ArtifactoryManifestVirtualFile(key, manifest, path.isEmpty() ? name : path + "/" + name, build);
+    }
+
+    @Override
+    public long length() throws IOException {
+        ArtifactoryManifest.Entry entry = manifest.get(path);
+        return entry == null ? 0 : entry.getSize();
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        ArtifactoryManifest.Entry entry = manifest.get(path);
+        return entry == null ? 0 : entry.getLastModified();
+    }
+
+    @Override
+    public boolean canRead() throws IOException {
+        return true;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        ArtifactoryManifest.Entry entry = manifest.get(path);
+        if (entry == null) {
+            throw new FileNotFoundException(String.format("No file %s in the manifest", path));
+        }
+        String blob = ArtifactoryBlobStore.blobPath(entry.getSha256());
+        LOGGER.debug(String.format("Opening %s from %s...", path, blob));
+        try {
+            return buildArtifactoryClient().downloadArtifact(blob);
+        } catch (Exception e) {
+            LOGGER.warn(String.format("Failed to open %s", path), e);
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public <V> V run(Callable<V, IOException> callable) throws IOException {
+        try {
+            return callable.call();
+        } finally {
+            closeArtifactoryClient();
+        }
+    }
+
+    private ArtifactoryClient buildArtifactoryClient() {
+        if (cachedClient == null) {
+            ArtifactoryGenericArtifactConfig config = Utils.getArtifactConfig();
+            cachedClient = new ArtifactoryClient(config.getServerUrl(), config.getRepository(), Utils.getCredentials())
+                    .withLane(ArtifactoryRequestScheduler.Lane.BROWSE, Utils.ownerOf(build));
+        }
+        return cachedClient;
+    }
+
+    private void closeArtifactoryClient() {
+        if (cachedClient != null) {
+            try {
+                cachedClient.close();
+            } catch (Exception e) {
+                LOGGER.warn("Failed to close Artifactory client", e);
+            }
+            cachedClient = null;
+        }
+    }
+}
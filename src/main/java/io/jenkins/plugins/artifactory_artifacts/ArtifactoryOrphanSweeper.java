@@ -0,0 +1,456 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically reconciles build folders stored on Artifactory with the builds that still exist in Jenkins.
+ * The storage is listed from its root down and each folder is matched with the live items, so the folders of deleted
+ * jobs and of deleted builds are both found. Each run scans a bounded number of job folders and resumes from a
+ * persisted cursor, so the whole storage is covered incrementally. Orphan folders are reported, and deleted through
+ * the {@link ArtifactoryDeletionQueue} unless running in dry-run mode. The storage prefix should not be shared with
+ * files not managed by Jenkins, as folders holding numbered folders and matching no item are taken for deleted jobs.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class ArtifactoryOrphanSweeper extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryOrphanSweeper.class);
+
+    static final boolean ENABLED =
+            SystemProperties.getBoolean(ArtifactoryOrphanSweeper.class.getName() + ".enabled", false);
+    static final boolean DRY_RUN =
+            SystemProperties.getBoolean(ArtifactoryOrphanSweeper.class.getName() + ".dryRun", true);
+    static final long RECURRENCE_MINUTES =
+            SystemProperties.getLong(ArtifactoryOrphanSweeper.class.getName() + ".recurrenceMinutes", 60L);
+    static final int JOBS_PER_RUN =
+            SystemProperties.getInteger(ArtifactoryOrphanSweeper.class.getName() + ".jobsPerRun", 200);
+    static final int MAX_DELETIONS_PER_RUN =
+            SystemProperties.getInteger(ArtifactoryOrphanSweeper.class.getName() + ".maxDeletionsPerRun", 1000);
+    private static final int MAX_REPORT_SIZE = 1000;
+
+    private final State state = new State();
+
+    public ArtifactoryOrphanSweeper() {
+        super("Artifactory orphan sweeper");
+        state.load();
+    }
+
+    public static ArtifactoryOrphanSweeper get() {
+        return ExtensionList.lookupSingleton(ArtifactoryOrphanSweeper.class);
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(Math.max(1, RECURRENCE_MINUTES));
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        if (!ENABLED) {
+            return;
+        }
+        sweep(listener, DRY_RUN, JOBS_PER_RUN);
+    }
+
+    /**
+     * Scan the next batch of jobs
+     * @param listener the listener to report to
+     * @param dryRun true to only report orphans
+     * @param jobsPerRun maximum number of job folders to scan
+     * @return the orphan paths found in this batch
+     */
+    public List<String> sweep(TaskListener listener, boolean dryRun, int jobsPerRun) throws InterruptedException {
+        ArtifactoryGenericArtifactConfig config = Utils.getArtifactConfig();
+        if (config == null) {
+            return List.of();
+        }
+        // Items by the path of their folder on the storage, see ArtifactoryArtifactManager#onLoad
+        Map<String, Item> items = new HashMap<>();
+        Set<String> liveFolders = new HashSet<>();
+        for (Item item : Jenkins.get().allItems()) {
+            String key = storageKey(item.getFullName());
+            if (item instanceof Job<?, ?> || !items.containsKey(key)) {
+                items.put(key, item);
+            }
+            for (int slash = key.indexOf('/'); slash > 0; slash = key.indexOf('/', slash + 1)) {
+                liveFolders.add(key.substring(0, slash));
+            }
+        }
+        Map<String, Job<?, ?>> jobsById = new HashMap<>();
+        ArtifactoryJobKeys.get().getKeys().forEach((fullName, id) -> {
+            Job<?, ?> job = Jenkins.get().getItemByFullName(fullName, Job.class);
+            if (job != null) {
+                jobsById.put(id, job);
+            }
+        });
+        String cursor = getCursor();
+        if (cursor == null) {
+            // Starting a new full scan
+            synchronized (state) {
+                state.report.clear();
+            }
+        }
+
+        Walk walk;
+        boolean wrapped;
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                        config.getServerUrl(), config.getRepository(), Utils.getCredentials())
+                .withLane(ArtifactoryRequestScheduler.Lane.BACKGROUND, "orphan-sweeper")) {
+            walk = new Walk(client, config.getPrefix(), items, liveFolders, jobsById, cursor, jobsPerRun);
+            try {
+                walk.visitFolder("");
+                wrapped = !walk.stopped;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                LOGGER.warn("Failed to sweep orphan build folders", e);
+                wrapped = false;
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.warn("Failed to sweep orphan build folders", e);
+            return List.of();
+        }
+
+        List<String> orphans = walk.orphans;
+        for (String orphan : orphans) {
+            listener.getLogger().printf("%s orphan build folder %s%n", dryRun ? "Found" : "Deleting", orphan);
+            if (!dryRun) {
+                ArtifactoryDeletionQueue.get().enqueue(orphan);
+            }
+        }
+        synchronized (state) {
+            for (String orphan : orphans) {
+                if (state.report.size() < MAX_REPORT_SIZE) {
+                    state.report.add(orphan);
+                }
+            }
+        }
+        if (wrapped) {
+            listener.getLogger().println("Scanned all jobs, restarting from the beginning on next run");
+            setCursor(null);
+        }
+        listener.getLogger()
+                .printf("Scanned %d job(s), found %d orphan build folder(s)%n", walk.scanned, orphans.size());
+        state.saveQuietly();
+        return orphans;
+    }
+
+    /**
+     * Walk of the storage from its root, in name order, matching each folder with the live items.
+     * Folders of live jobs are checked for build folders of deleted builds, folders of deleted jobs are orphans as a
+     * whole, folders of live folders are walked further. Under {@code @jobs}, folders are matched with the stable ids
+     * of live jobs. Other {@code @} folders, such as blobs and caches, are left to their own retention.
+     * Each job or deleted job folder is a unit of work, recorded in the cursor once scanned.
+     */
+    private final class Walk {
+
+        private final ArtifactoryClient client;
+        private final String prefix;
+        private final Map<String, Item> items;
+        private final Set<String> liveFolders;
+        private final Map<String, Job<?, ?>> jobsById;
+        private final String cursor;
+        private final int jobsPerRun;
+        private final List<String> orphans = new ArrayList<>();
+        private int scanned;
+        private boolean stopped;
+
+        private Walk(
+                ArtifactoryClient client,
+                String prefix,
+                Map<String, Item> items,
+                Set<String> liveFolders,
+                Map<String, Job<?, ?>> jobsById,
+                String cursor,
+                int jobsPerRun) {
+            this.client = client;
+            this.prefix = prefix == null ? "" : prefix;
+            this.items = items;
+            this.liveFolders = liveFolders;
+            this.jobsById = jobsById;
+            this.cursor = cursor;
+            this.jobsPerRun = jobsPerRun;
+        }
+
+        /**
+         * Walk a folder that is not the folder of a job
+         * @param relative the path of the folder relative to the prefix, empty for the root
+         */
+        void visitFolder(String relative) throws InterruptedException {
+            for (String name : childFolders(relative)) {
+                String child = relative.isEmpty() ? name : relative + "/" + name;
+                if (stopped) {
+                    return;
+                }
+                if (isScanned(child)) {
+                    continue;
+                }
+                if (relative.isEmpty() && name.startsWith("@")) {
+                    if (name.equals(ArtifactoryJobKeys.FOLDER)) {
+                        visitJobIds(child);
+                    }
+                    continue;
+                }
+                Item item = items.get(child);
+                if (item instanceof Job<?, ?> job) {
+                    scan(child, () -> findOrphans(client, job, storagePath(child) + "/"));
+                } else if (item != null) {
+                    visitFolder(child);
+                } else {
+                    visitDeleted(child);
+                }
+            }
+        }
+
+        /**
+         * Walk the folders of the stable layout, named after the ids of the jobs
+         */
+        private void visitJobIds(String relative) throws InterruptedException {
+            for (String id : childFolders(relative)) {
+                String child = relative + "/" + id;
+                if (stopped) {
+                    return;
+                }
+                if (isScanned(child)) {
+                    continue;
+                }
+                Job<?, ?> job = jobsById.get(id);
+                if (job != null) {
+                    scan(child, () -> findOrphans(client, job, storagePath(child) + "/"));
+                } else {
+                    scan(child, () -> orphanFolder(storagePath(child)));
+                }
+            }
+        }
+
+        /**
+         * Walk a folder matching no live item. Holding build folders it was a job, else it may have been a folder
+         * of jobs or is not managed by Jenkins and is only walked. A folder holding the folder of a live item, like
+         * the parent folder of a branch named with a slash, is never an orphan.
+         */
+        private void visitDeleted(String relative) throws InterruptedException {
+            if (liveFolders.contains(relative)) {
+                visitFolder(relative);
+                return;
+            }
+            String path = storagePath(relative);
+            boolean job = client.listChildren(path).stream()
+                    .anyMatch(child -> child.isDirectory() && isBuildNumber(name(child)));
+            if (job) {
+                scan(relative, () -> orphanFolder(path));
+            } else {
+                visitFolder(relative);
+            }
+        }
+
+        private void scan(String relative, Supplier<List<String>> unit) throws InterruptedException {
+            if (scanned >= jobsPerRun || orphans.size() >= MAX_DELETIONS_PER_RUN) {
+                stopped = true;
+                return;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            orphans.addAll(unit.get());
+            scanned++;
+            setCursor(relative);
+        }
+
+        private List<String> orphanFolder(String path) {
+            if (ArtifactoryDeletionQueue.get().isQueued(path)
+                    || ArtifactoryStorageReferences.get().isReferenced(path)) {
+                return List.of();
+            }
+            return List.of(path);
+        }
+
+        /**
+         * Whether a folder was fully scanned by a previous run of the current full scan
+         */
+        private boolean isScanned(String relative) {
+            return cursor != null && compare(relative, cursor) <= 0 && !cursor.startsWith(relative + "/");
+        }
+
+        private List<String> childFolders(String relative) {
+            List<String> names = new ArrayList<>();
+            for (ArtifactoryClient.FileInfo child : client.listChildren(storagePath(relative))) {
+                if (child.isDirectory()) {
+                    names.add(name(child));
+                }
+            }
+            Collections.sort(names);
+            return names;
+        }
+
+        private String storagePath(String relative) {
+            return Utils.stripTrailingSlash(prefix + relative);
+        }
+    }
+
+    /**
+     * Path of the folder of an item relative to the prefix. Encoded slashes, as in the names of multibranch branches,
+     * are stored as folders.
+     */
+    static String storageKey(String fullName) {
+        return fullName.replace("%2F", "/");
+    }
+
+    /**
+     * Compare paths segment by segment, the order of the walk
+     */
+    static int compare(String path, String other) {
+        String[] segments = path.split("/");
+        String[] otherSegments = other.split("/");
+        for (int i = 0; i < Math.min(segments.length, otherSegments.length); i++) {
+            int comparison = segments[i].compareTo(otherSegments[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(segments.length, otherSegments.length);
+    }
+
+    private static String name(ArtifactoryClient.FileInfo child) {
+        String path = Utils.stripTrailingSlash(child.getPath());
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static boolean isBuildNumber(String name) {
+        try {
+            Integer.parseInt(name);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private List<String> findOrphans(ArtifactoryClient client, Job<?, ?> job, String jobPath) {
+        List<String> orphans = new ArrayList<>();
+        // Number possibly allocated to a build being created right now
+        int newest = job.getNextBuildNumber() - 1;
+        for (ArtifactoryClient.FileInfo child : client.listChildren(jobPath)) {
+            if (!child.isDirectory()) {
+                continue;
+            }
+            String path = Utils.stripTrailingSlash(child.getPath());
+            String name = path.substring(path.lastIndexOf('/') + 1);
+            int number;
+            try {
+                number = Integer.parseInt(name);
+            } catch (NumberFormatException e) {
+                // Not a build folder
+                continue;
+            }
+            if (number >= newest || job.getBuildByNumber(number) != null) {
+                continue;
+            }
+            if (ArtifactoryDeletionQueue.get().isQueued(path)) {
+                continue;
+            }
+            // Data of a deleted build still referenced by a replayed or restarted build
+            if (ArtifactoryStorageReferences.get().isReferenced(path)) {
+                continue;
+            }
+            orphans.add(path);
+        }
+        return orphans;
+    }
+
+    /**
+     * Orphan build folders found since the current or last full scan started
+     * @return the report
+     */
+    public List<String> getReport() {
+        synchronized (state) {
+            return Collections.unmodifiableList(new ArrayList<>(state.report));
+        }
+    }
+
+    public String getCursor() {
+        synchronized (state) {
+            return state.cursor;
+        }
+    }
+
+    private void setCursor(String cursor) {
+        synchronized (state) {
+            state.cursor = cursor;
+        }
+    }
+
+    /**
+     * Persisted progress of the sweeper
+     */
+    private static final class State implements Saveable {
+
+        /**
+         * Path relative to the prefix of the last job folder scanned, null to start from the beginning
+         */
+        private String cursor;
+
+        /**
+         * Orphan build folders found since the current or last full scan started
+         */
+        private List<String> report = new ArrayList<>();
+
+        private XmlFile getConfigFile() {
+            return new XmlFile(
+                    Jenkins.XSTREAM2,
+                    new File(Jenkins.get().getRootDir(), ArtifactoryOrphanSweeper.class.getName() + ".xml"));
+        }
+
+        private synchronized void load() {
+            XmlFile file = getConfigFile();
+            if (!file.exists()) {
+                return;
+            }
+            try {
+                file.unmarshal(this);
+            } catch (IOException e) {
+                LOGGER.error(String.format("Failed to load %s", file), e);
+            }
+            if (report == null) {
+                report = new ArrayList<>();
+            }
+        }
+
+        @Override
+        public synchronized void save() throws IOException {
+            getConfigFile().write(this);
+        }
+
+        private void saveQuietly() {
+            try {
+                save();
+            } catch (IOException e) {
+                LOGGER.error("Failed to save Artifactory orphan sweeper state", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Controller-wide admission control for Artifactory requests.
+ * Limits the number of requests in flight from the controller and serves waiting requests by lane priority, build
+ * critical requests first, then UI browsing, then background work. Browsing and background lanes have their own caps
+ * so they can never take all connections. Within a lane, waiting requests are admitted round-robin per job so a single
+ * job fanning out cannot starve the others.
+ */
+@Restricted(NoExternalUse.class)
+public final class ArtifactoryRequestScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryRequestScheduler.class);
+
+    static final int MAX_IN_FLIGHT =
+            SystemProperties.getInteger(ArtifactoryRequestScheduler.class.getName() + ".maxInFlight", 32);
+    static final int MAX_BROWSE_IN_FLIGHT =
+            SystemProperties.getInteger(ArtifactoryRequestScheduler.class.getName() + ".maxBrowseInFlight", 16);
+    static final int MAX_BACKGROUND_IN_FLIGHT =
+            SystemProperties.getInteger(ArtifactoryRequestScheduler.class.getName() + ".maxBackgroundInFlight", 4);
+
+    private static final ArtifactoryRequestScheduler INSTANCE =
+            new ArtifactoryRequestScheduler(MAX_IN_FLIGHT, MAX_BROWSE_IN_FLIGHT, MAX_BACKGROUND_IN_FLIGHT);
+
+    /**
+     * Requests already holding a permit on this thread are not admitted again, to avoid self deadlocks
+     */
+    private static final ThreadLocal<Boolean> HOLDING = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Priority lanes, in admission order
+     */
+    public enum Lane {
+        /**
+         * Requests a running build waits for: archive, stash, unstash, delete
+         */
+        BUILD,
+        /**
+         * Artifact browsing and downloads from the UI or Copy Artifact
+         */
+        BROWSE,
+        /**
+         * Deletion queue, orphan sweeper and blob garbage collection
+         */
+        BACKGROUND
+    }
+
+    private final int maxInFlight;
+    private final EnumMap<Lane, Integer> laneLimits = new EnumMap<>(Lane.class);
+    private final EnumMap<Lane, Integer> laneInFlight = new EnumMap<>(Lane.class);
+    private final EnumMap<Lane, LinkedHashMap<String, ArrayDeque<Waiter>>> queues = new EnumMap<>(Lane.class);
+    private int inFlight;
+
+    /**
+     * Explicit lock rather than monitors, so virtual threads waiting for a permit don't pin their carrier
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition admitted = lock.newCondition();
+
+    ArtifactoryRequestScheduler(int maxInFlight, int maxBrowseInFlight, int maxBackgroundInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        laneLimits.put(Lane.BUILD, this.maxInFlight);
+        laneLimits.put(Lane.BROWSE, Math.max(1, Math.min(this.maxInFlight, maxBrowseInFlight)));
+        laneLimits.put(Lane.BACKGROUND, Math.max(1, Math.min(this.maxInFlight, maxBackgroundInFlight)));
+        for (Lane lane : Lane.values()) {
+            laneInFlight.put(lane, 0);
+            queues.put(lane, new LinkedHashMap<>());
+        }
+    }
+
+    public static ArtifactoryRequestScheduler get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Wait until a request can be sent
+     * @param lane the lane of the request
+     * @param owner the job the request is made for, used for fairness
+     * @return the permit to close once the request completed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Permit acquire(@NonNull Lane lane, @NonNull String owner) throws InterruptedException {
+        if (HOLDING.get()) {
+            return Permit.NONE;
+        }
+        lock.lock();
+        try {
+            // Waiting requests of higher lanes are blocked by the global limit or their own lane limit
+            if (queues.get(lane).isEmpty() && canAdmit(lane)) {
+                admit(lane);
+                return new Permit(this, lane, true);
+            }
+            Waiter waiter = enqueue(lane, owner, null);
+            try {
+                while (!waiter.admitted) {
+                    admitted.await();
+                }
+                return new Permit(this, lane, true);
+            } catch (InterruptedException e) {
+                if (!waiter.admitted) {
+                    remove(lane, owner, waiter);
+                    throw e;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Admitted while being interrupted
+        release(lane);
+        throw new InterruptedException();
+    }
+
+    /**
+     * Admit a request without blocking the calling thread
+     * @param lane the lane of the request
+     * @param owner the job the request is made for, used for fairness
+     * @return a future completed with the permit once admitted. The permit is not bound to a thread
+     */
+    public CompletableFuture<Permit> acquireAsync(@NonNull Lane lane, @NonNull String owner) {
+        lock.lock();
+        try {
+            if (queues.get(lane).isEmpty() && canAdmit(lane)) {
+                admit(lane);
+                return CompletableFuture.completedFuture(new Permit(this, lane, false));
+            }
+            return enqueue(lane, owner, new CompletableFuture<>()).future;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Waiter enqueue(Lane lane, String owner, CompletableFuture<Permit> future) {
+        Waiter waiter = new Waiter(lane, future);
+        queues.get(lane).computeIfAbsent(owner, k -> new ArrayDeque<>()).add(waiter);
+        LOGGER.trace(String.format("Queued %s request of %s, %d request(s) in flight", lane, owner, inFlight));
+        return waiter;
+    }
+
+    /**
+     * Number of requests in flight
+     * @return the number of requests
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of requests waiting in a lane
+     * @param lane the lane
+     * @return the number of requests
+     */
+    public int getWaiting(@NonNull Lane lane) {
+        lock.lock();
+        try {
+            int waiting = 0;
+            for (ArrayDeque<Waiter> waiters : queues.get(lane).values()) {
+                waiting += waiters.size();
+            }
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean canAdmit(Lane lane) {
+        return inFlight < maxInFlight && laneInFlight.get(lane) < laneLimits.get(lane);
+    }
+
+    private void admit(Lane lane) {
+        inFlight++;
+        laneInFlight.merge(lane, 1, Integer::sum);
+    }
+
+    private void release(Lane lane) {
+        List<Waiter> ready;
+        lock.lock();
+        try {
+            inFlight--;
+            laneInFlight.merge(lane, -1, Integer::sum);
+            ready = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        // Complete asynchronous waiters outside the lock, dependent stages may run on this thread
+        for (Waiter waiter : ready) {
+            Permit permit = new Permit(this, waiter.lane, false);
+            if (!waiter.future.complete(permit)) {
+                // Cancelled while waiting
+                permit.close();
+            }
+        }
+    }
+
+    private void remove(Lane lane, String owner, Waiter waiter) {
+        ArrayDeque<Waiter> waiters = queues.get(lane).get(owner);
+        if (waiters != null) {
+            waiters.remove(waiter);
+            if (waiters.isEmpty()) {
+                queues.get(lane).remove(owner);
+            }
+        }
+    }
+
+    /**
+     * Admit waiting requests while limits allow
+     * @return the admitted asynchronous waiters
+     */
+    private List<Waiter> dispatch() {
+        List<Waiter> ready = new ArrayList<>();
+        boolean signal = false;
+        for (Lane lane : Lane.values()) {
+            LinkedHashMap<String, ArrayDeque<Waiter>> owners = queues.get(lane);
+            while (!owners.isEmpty() && canAdmit(lane)) {
+                // Round-robin: serve the first owner then move it to the end
+                Iterator<Map.Entry<String, ArrayDeque<Waiter>>> it = owners.entrySet().iterator();
+                Map.Entry<String, ArrayDeque<Waiter>> next = it.next();
+                it.remove();
+                Waiter waiter = next.getValue().poll();
+                if (!next.getValue().isEmpty()) {
+                    owners.put(next.getKey(), next.getValue());
+                }
+                if (waiter != null) {
+                    admit(lane);
+                    waiter.admitted = true;
+                    if (waiter.future != null) {
+                        ready.add(waiter);
+                    } else {
+                        signal = true;
+                    }
+                }
+            }
+        }
+        if (signal) {
+            admitted.signalAll();
+        }
+        return ready;
+    }
+
+    private static final class Waiter {
+        private final Lane lane;
+        /**
+         * Completed when admitted, null for a blocked thread
+         */
+        private final CompletableFuture<Permit> future;
+
+        private boolean admitted;
+
+        private Waiter(Lane lane, CompletableFuture<Permit> future) {
+            this.lane = lane;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Permit of an admitted request, releasing it admits the next waiting request
+     */
+    public static final class Permit implements AutoCloseable {
+
+        static final Permit NONE = new Permit(null, null, false);
+
+        private final ArtifactoryRequestScheduler scheduler;
+        private final Lane lane;
+        /**
+         * Thread sending the request, null for asynchronous requests
+         */
+        private final Thread thread;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+        private boolean detached;
+
+        private Permit(ArtifactoryRequestScheduler scheduler, Lane lane, boolean bound) {
+            this.scheduler = scheduler;
+            this.lane = lane;
+            this.thread = bound ? Thread.currentThread() : null;
+            if (scheduler != null && bound) {
+                HOLDING.set(true);
+            }
+        }
+
+        /**
+         * Keep the permit after the current call returns, e.g. until a download stream is closed.
+         * The thread may then send other requests, they are admitted separately.
+         */
+        void detach() {
+            if (scheduler != null && Thread.currentThread() == thread) {
+                detached = true;
+                HOLDING.set(false);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (scheduler == null) {
+                return;
+            }
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            if (!detached && Thread.currentThread() == thread) {
+                HOLDING.set(false);
+            }
+            scheduler.release(lane);
+        }
+    }
+}
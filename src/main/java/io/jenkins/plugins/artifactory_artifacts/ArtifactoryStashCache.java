@@ -0,0 +1,247 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Agent-local cache of stash archives, used when the same stash is unstashed many times on the same agent.
+ * Entries are keyed by the stash path and the SHA-1 reported by Artifactory, so a stash stored again under the same
+ * name never hits a stale entry, and a single stat request validates an entry. Concurrent unstashes of a stash on the
+ * same agent share one download. The least recently used entries are evicted once the folder exceeds its size, entries
+ * are read through streams opened before they can be evicted.
+ */
+@Restricted(NoExternalUse.class)
+final class ArtifactoryStashCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryStashCache.class);
+
+    /**
+     * Downloads in flight in this agent by entry
+     */
+    private static final Map<Path, CompletableFuture<Path>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    /**
+     * Age after which a partial download is assumed to be left over by a crashed agent
+     */
+    private static final long STALE_DOWNLOAD_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Attempts to open an entry evicted by concurrent unstashes before it could be opened
+     */
+    private static final int MAX_OPEN_ATTEMPTS = 3;
+
+    private final Path dir;
+    private final long maxSize;
+
+    /**
+     * @param dir the cache folder on the agent
+     * @param maxSize the maximum size of the folder in bytes
+     */
+    ArtifactoryStashCache(@NonNull Path dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Open the archive of a stash, downloading it if it is not cached yet.
+     * The stream keeps the content readable if the entry is evicted meanwhile, except on file systems refusing to
+     * delete open files where the entry is not evicted.
+     * @param client the client
+     * @param path the path of the stash archive
+     * @return the stream of the cached archive, or null if the stash cannot be cached
+     * @throws IOException if the stash cannot be downloaded or opened
+     * @throws InterruptedException if interrupted while waiting for a download of the same stash
+     */
+    @CheckForNull
+    InputStream open(@NonNull ArtifactoryClient client, @NonNull String path) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            Path entry = fetch(client, path);
+            if (entry == null) {
+                return null;
+            }
+            try {
+                return Files.newInputStream(entry);
+            } catch (NoSuchFileException e) {
+                // Evicted by another unstash between its download and its opening
+                if (attempt >= MAX_OPEN_ATTEMPTS) {
+                    throw e;
+                }
+                LOGGER.debug(
+                        String.format("Cached stash %s was evicted before it was opened, fetching it again", path));
+            }
+        }
+    }
+
+    /**
+     * Get the archive of a stash, downloading it if it is not cached yet. The entry may be evicted by another unstash
+     * once returned, use {@link #open} to read it.
+     * @param client the client
+     * @param path the path of the stash archive
+     * @return the cached archive, or null if the stash cannot be cached
+     * @throws IOException if the stash cannot be downloaded
+     * @throws InterruptedException if interrupted while waiting for a download of the same stash
+     */
+    @CheckForNull
+    Path fetch(@NonNull ArtifactoryClient client, @NonNull String path) throws IOException, InterruptedException {
+        ArtifactoryClient.FileInfo info = client.stat(path);
+        if (info.getSha1() == null || info.getSize() > maxSize) {
+            return null;
+        }
+        Path entry = dir.resolve(sha256(path) + "-" + info.getSha1() + ".tgz");
+        if (isCached(entry, info.getSize())) {
+            LOGGER.debug(String.format("Using cached stash %s from %s", path, entry));
+            return entry;
+        }
+        CompletableFuture<Path> download = new CompletableFuture<>();
+        CompletableFuture<Path> running = IN_FLIGHT.putIfAbsent(entry, download);
+        if (running != null) {
+            LOGGER.debug(String.format("Waiting for the download of stash %s to %s", path, entry));
+            return await(running);
+        }
+        try {
+            // Another download may have completed since the first check
+            if (!isCached(entry, info.getSize())) {
+                download(client, path, info.getSha1(), entry);
+                evict(entry);
+            }
+            download.complete(entry);
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            download.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(entry, download);
+        }
+    }
+
+    /**
+     * Whether an entry is complete, marking it as used
+     */
+    private static boolean isCached(Path entry, long size) {
+        try {
+            if (Files.size(entry) != size) {
+                return false;
+            }
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            // Missing or evicted meanwhile
+            return false;
+        }
+    }
+
+    private void download(ArtifactoryClient client, String path, String sha1, Path entry) throws IOException {
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, "download", ".tmp");
+        try {
+            MessageDigest digest = newDigest("SHA-1");
+            try (InputStream is = new DigestInputStream(client.downloadArtifact(path), digest)) {
+                Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // The stash may be stored again between the stat and the download
+            if (!HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(sha1)) {
+                throw new IOException(String.format("Stash %s changed while it was downloaded", path));
+            }
+            Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug(String.format("Cached stash %s to %s", path, entry));
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Delete the least recently used entries until the folder fits in its size, and partial downloads left over
+     */
+    private void evict(Path keep) {
+        List<Cached> entries = new ArrayList<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    // Evicted by another agent sharing the folder
+                    continue;
+                }
+                long lastUsed = attributes.lastModifiedTime().toMillis();
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp") && now - lastUsed > STALE_DOWNLOAD_MILLIS) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(".tgz")) {
+                    entries.add(new Cached(file, attributes.size(), lastUsed));
+                    total += attributes.size();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Failed to list stash cache %s", dir), e);
+            return;
+        }
+        entries.sort(Comparator.comparingLong(Cached::lastUsed));
+        for (Cached entry : entries) {
+            if (total <= maxSize) {
+                break;
+            }
+            if (entry.path().equals(keep)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(entry.path());
+                total -= entry.size();
+                LOGGER.debug(String.format("Evicted %s from the stash cache", entry.path()));
+            } catch (IOException e) {
+                // In use on file systems refusing to delete open files
+                LOGGER.debug(String.format("Failed to evict %s from the stash cache", entry.path()), e);
+            }
+        }
+    }
+
+    private static Path await(CompletableFuture<Path> download) throws IOException, InterruptedException {
+        try {
+            return download.get();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static String sha256(String value) {
+        return HexFormat.of().formatHex(newDigest("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Cached(Path path, long size, long lastUsed) {}
+}
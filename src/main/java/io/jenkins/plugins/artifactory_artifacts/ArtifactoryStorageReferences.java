@@ -0,0 +1,292 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.XmlFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds whose artifacts or stashes are not copied but reference the storage of another build.
+ * Used by replay and restart from stage. Keys and sources are build root paths relative to the repository.
+ * Each reference is stored in its own file so recording the reference of a build does not rewrite the others.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class ArtifactoryStorageReferences {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryStorageReferences.class);
+
+    /**
+     * Only read from the single file the references were stored in by previous versions
+     */
+    private Map<String, Reference> references = new ConcurrentHashMap<>();
+
+    public ArtifactoryStorageReferences() {
+        load();
+    }
+
+    public static ArtifactoryStorageReferences get() {
+        return ExtensionList.lookupSingleton(ArtifactoryStorageReferences.class);
+    }
+
+    /**
+     * Return the reference of a build
+     * @param target the build root path
+     * @return the reference or null if the build owns all its data
+     */
+    public @CheckForNull Reference get(@NonNull String target) {
+        return references.get(target);
+    }
+
+    /**
+     * Record that a build reads artifacts and/or stashes from another build
+     * @param target the referencing build root path
+     * @param artifacts the build root path owning the artifacts, or null
+     * @param stashes the build root path owning the stashes, or null
+     */
+    public synchronized void put(@NonNull String target, @CheckForNull String artifacts, @CheckForNull String stashes) {
+        if (artifacts == null && stashes == null) {
+            references.remove(target);
+        } else {
+            references.put(target, new Reference(artifacts, stashes));
+        }
+        persist(target);
+    }
+
+    /**
+     * The build now owns its artifacts
+     * @param target the build root path
+     */
+    public synchronized void clearArtifacts(@NonNull String target) {
+        Reference reference = references.get(target);
+        if (reference != null) {
+            put(target, null, reference.getStashes());
+        }
+    }
+
+    /**
+     * The build now owns its stashes
+     * @param target the build root path
+     */
+    public synchronized void clearStashes(@NonNull String target) {
+        Reference reference = references.get(target);
+        if (reference != null) {
+            put(target, reference.getArtifacts(), null);
+        }
+    }
+
+    public synchronized void remove(@NonNull String target) {
+        if (references.remove(target) != null) {
+            persist(target);
+        }
+    }
+
+    /**
+     * Return the builds referencing the data of a build
+     * @param source the build root path
+     * @return the references by referencing build root path
+     */
+    public synchronized Map<String, Reference> referrersOf(@NonNull String source) {
+        Map<String, Reference> referrers = new HashMap<>();
+        references.forEach((target, reference) -> {
+            if (source.equals(reference.getArtifacts()) || source.equals(reference.getStashes())) {
+                referrers.put(target, reference);
+            }
+        });
+        return referrers;
+    }
+
+    /**
+     * Check if data under a path is referenced by another build
+     * @param path a build root path or one of its parents
+     * @return true if deleting the path would break a reference
+     */
+    public synchronized boolean isReferenced(@NonNull String path) {
+        for (Reference reference : references.values()) {
+            if (isSameOrChild(reference.getArtifacts(), path) || isSameOrChild(reference.getStashes(), path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rewrite paths after a job folder was moved on Artifactory
+     * @param oldPath the old job path
+     * @param newPath the new job path
+     */
+    public synchronized void relocate(@NonNull String oldPath, @NonNull String newPath) {
+        Set<String> changed = new HashSet<>();
+        Map<String, Reference> moved = new HashMap<>();
+        references.forEach((target, reference) -> {
+            String relocatedTarget = relocate(target, oldPath, newPath);
+            Reference relocated = new Reference(
+                    relocate(reference.getArtifacts(), oldPath, newPath),
+                    relocate(reference.getStashes(), oldPath, newPath));
+            if (!relocatedTarget.equals(target) || !relocated.equals(reference)) {
+                changed.add(target);
+                changed.add(relocatedTarget);
+                moved.put(relocatedTarget, relocated);
+            }
+        });
+        // Only the references involving the moved job are stored again
+        references.keySet().removeAll(changed);
+        references.putAll(moved);
+        changed.forEach(this::persist);
+    }
+
+    /**
+     * Forget references of builds under a deleted path
+     * @param path the deleted path
+     */
+    public synchronized void removeUnder(@NonNull String path) {
+        Set<String> removed = new HashSet<>();
+        for (String target : references.keySet()) {
+            if (isSameOrChild(target, path)) {
+                removed.add(target);
+            }
+        }
+        references.keySet().removeAll(removed);
+        removed.forEach(this::persist);
+    }
+
+    private static String relocate(String path, String oldPath, String newPath) {
+        if (path != null && isSameOrChild(path, oldPath)) {
+            return newPath + path.substring(oldPath.length());
+        }
+        return path;
+    }
+
+    private static boolean isSameOrChild(String path, String parent) {
+        return path != null && (path.equals(parent) || path.startsWith(parent + "/"));
+    }
+
+    /**
+     * File of the references stored by previous versions, migrated on load
+     */
+    private XmlFile getConfigFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.get().getRootDir(), getClass().getName() + ".xml"));
+    }
+
+    private File getRootDir() {
+        return new File(Jenkins.get().getRootDir(), getClass().getName());
+    }
+
+    private XmlFile getFile(String target) {
+        return new XmlFile(Jenkins.XSTREAM2, new File(getRootDir(), Util.getDigestOf(target) + ".xml"));
+    }
+
+    private synchronized void load() {
+        XmlFile file = getConfigFile();
+        if (file.exists()) {
+            try {
+                file.unmarshal(this);
+            } catch (IOException e) {
+                LOGGER.error(String.format("Failed to load %s", file), e);
+            }
+        }
+        Map<String, Reference> migrated = references != null ? references : Map.of();
+        references = new ConcurrentHashMap<>();
+        File[] files = getRootDir().listFiles((dir, name) -> name.endsWith(".xml"));
+        if (files != null) {
+            for (File stored : files) {
+                try {
+                    Entry entry = (Entry) new XmlFile(Jenkins.XSTREAM2, stored).read();
+                    references.put(entry.target, entry.reference);
+                } catch (IOException | ClassCastException e) {
+                    LOGGER.error(String.format("Failed to load %s", stored), e);
+                }
+            }
+        }
+        if (!migrated.isEmpty()) {
+            references.putAll(migrated);
+            migrated.keySet().forEach(this::persist);
+        }
+        try {
+            Files.deleteIfExists(file.getFile().toPath());
+        } catch (IOException e) {
+            LOGGER.warn(String.format("Failed to delete %s", file), e);
+        }
+    }
+
+    /**
+     * Store the reference of a build, or delete it if the build no longer references another one
+     * @param target the build root path
+     */
+    private void persist(String target) {
+        XmlFile file = getFile(target);
+        Reference reference = references.get(target);
+        try {
+            if (reference == null) {
+                Files.deleteIfExists(file.getFile().toPath());
+            } else {
+                file.write(new Entry(target, reference));
+            }
+        } catch (IOException e) {
+            LOGGER.error(String.format("Failed to save Artifactory storage reference of %s", target), e);
+        }
+    }
+
+    /**
+     * Reference of a build as stored
+     */
+    private static final class Entry {
+        private final String target;
+        private final Reference reference;
+
+        Entry(String target, Reference reference) {
+            this.target = target;
+            this.reference = reference;
+        }
+    }
+
+    /**
+     * Build root paths owning the artifacts and stashes of a referencing build
+     */
+    public static final class Reference {
+        private final String artifacts;
+        private final String stashes;
+
+        public Reference(String artifacts, String stashes) {
+            this.artifacts = artifacts;
+            this.stashes = stashes;
+        }
+
+        public @CheckForNull String getArtifacts() {
+            return artifacts;
+        }
+
+        public @CheckForNull String getStashes() {
+            return stashes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Reference other)) {
+                return false;
+            }
+            return Objects.equals(artifacts, other.artifacts) && Objects.equals(stashes, other.stashes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(artifacts, stashes);
+        }
+    }
+}
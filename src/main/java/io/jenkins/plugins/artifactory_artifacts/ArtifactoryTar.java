@@ -0,0 +1,457 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DirScanner;
+import hudson.util.FileVisitor;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+import jenkins.util.SystemProperties;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Creation of gzipped tar archives that can be partially read.
+ * The archive is a series of gzip members cut at entry boundaries, so each member holds whole entries and can be
+ * decompressed on its own. After the tar end of archive, a member holds the index of the entries and the SHA-256
+ * of each member, and a fixed size empty member ends the archive with the position of the index in its extra field,
+ * like seekable tar formats do. Ranges read from the index are verified member by member with {@link #verify}, the
+ * index itself is only covered by the CRC of its gzip member. The whole archive remains a valid gzipped tar read by
+ * {@link ArtifactoryUntar} or by any tar implementation, which stop at the end of archive. Links are archived as
+ * links, permissions and modification times are kept.
+ */
+@Restricted(NoExternalUse.class)
+final class ArtifactoryTar {
+
+    /**
+     * Uncompressed size after which a new gzip member is started
+     */
+    static final long MEMBER_SIZE =
+            SystemProperties.getLong(ArtifactoryTar.class.getName() + ".memberSize", 1024L * 1024L);
+
+    /**
+     * Size of the member ending the archive
+     */
+    static final int FOOTER_SIZE = 42;
+
+    /**
+     * Members closer than this are fetched with a single range
+     */
+    private static final long MAX_RANGE_GAP = 256 * 1024;
+
+    private static final int FILE = 0100000;
+    private static final int DIRECTORY = 040000;
+    private static final int RECORD_SIZE = 512;
+    private static final byte[] FOOTER_ID = {'A', 'I'};
+
+    private ArtifactoryTar() {}
+
+    /**
+     * Archive the files of a folder
+     * @param dir the folder
+     * @param scanner the files to archive
+     * @param os the stream to write to, closed once the archive is written
+     * @param level the compression level
+     * @return the number of entries archived
+     * @throws IOException if a file cannot be read or the archive written
+     */
+    static int archive(File dir, DirScanner scanner, OutputStream os, int level) throws IOException {
+        GzipParameters parameters = new GzipParameters();
+        parameters.setCompressionLevel(level);
+        try (Members members = new Members(new BufferedOutputStream(os, 64 * 1024), parameters)) {
+            // Records are written through as soon as they are complete, so members are cut at entry boundaries
+            TarArchiveOutputStream tar = new TarArchiveOutputStream(members, RECORD_SIZE);
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            Visitor visitor = new Visitor(tar, members);
+            scanner.scan(dir, visitor);
+            tar.finish();
+            members.writeIndex();
+            return visitor.count;
+        }
+    }
+
+    /**
+     * Read the position of the index from the end of an archive
+     * @param footer the last {@link #FOOTER_SIZE} bytes of the archive
+     * @return the position of the index, or -1 if the archive has no index
+     */
+    static long indexOffset(byte[] footer) {
+        ByteBuffer buffer = ByteBuffer.wrap(footer).order(ByteOrder.LITTLE_ENDIAN);
+        if (footer.length != FOOTER_SIZE
+                || (buffer.getShort(0) & 0xffff) != 0x8b1f
+                || (buffer.get(3) & 0x04) == 0
+                || buffer.getShort(10) != 20
+                || buffer.get(12) != FOOTER_ID[0]
+                || buffer.get(13) != FOOTER_ID[1]
+                || buffer.getShort(14) != 16) {
+            return -1;
+        }
+        try {
+            return Long.parseUnsignedLong(new String(footer, 16, 16, StandardCharsets.US_ASCII), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Select the ranges of an archive holding the entries matching a filter
+     * @param index the compressed index of the archive
+     * @param filter the entry names to select
+     * @return the ranges, in archive order
+     * @throws IOException if the index cannot be read
+     */
+    static List<Range> select(InputStream index, Predicate<String> filter) throws IOException {
+        JSONArray members;
+        try (InputStream is = new GzipCompressorInputStream(index)) {
+            members = JSONObject.fromObject(new String(is.readAllBytes(), StandardCharsets.UTF_8))
+                    .getJSONArray("members");
+        }
+        List<Range> ranges = new ArrayList<>();
+        List<Member> skipped = new ArrayList<>();
+        for (int i = 0; i < members.size(); i++) {
+            JSONObject json = members.getJSONObject(i);
+            Member member = new Member(json.getLong("offset"), json.getLong("length"), json.optString("sha256", null));
+            JSONArray names = json.getJSONArray("names");
+            boolean selected = false;
+            for (int j = 0; j < names.size() && !selected; j++) {
+                selected = filter.test(Utils.stripTrailingSlash(names.getString(j)));
+            }
+            if (!selected) {
+                skipped.add(member);
+                continue;
+            }
+            Range last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && member.offset() - last.end() <= MAX_RANGE_GAP) {
+                // The members in between are read and skipped, cheaper than another request
+                List<Member> merged = new ArrayList<>(last.members());
+                merged.addAll(skipped);
+                merged.add(member);
+                ranges.set(ranges.size() - 1, new Range(last.offset(), member.end() - last.offset(), merged));
+            } else {
+                ranges.add(new Range(member.offset(), member.length(), List.of(member)));
+            }
+            skipped.clear();
+        }
+        return ranges;
+    }
+
+    /**
+     * Verify the members of a range against the SHA-256 recorded in the index while it is read.
+     * Members of archives indexed without checksums are only covered by their gzip CRC.
+     * @param in the content of the range
+     * @param range the range
+     * @return the stream, failing once a member does not match or the range ends before its last member
+     */
+    static InputStream verify(InputStream in, Range range) {
+        return new VerifyingInputStream(in, range);
+    }
+
+    /**
+     * A range of bytes of an archive, made of whole members
+     * @param members the members in the range, in archive order
+     */
+    record Range(long offset, long length, List<Member> members) implements Serializable {
+        long end() {
+            return offset + length;
+        }
+    }
+
+    /**
+     * A gzip member of an archive
+     * @param sha256 the checksum of the compressed member, null for archives indexed without checksums
+     */
+    record Member(long offset, long length, String sha256) implements Serializable {
+        long end() {
+            return offset + length;
+        }
+    }
+
+    /**
+     * Hash each member of a range as it is read and compare it with the index once complete
+     */
+    private static final class VerifyingInputStream extends FilterInputStream {
+
+        private final Range range;
+        private final Iterator<Member> members;
+        private final MessageDigest digest = newDigest();
+        private Member member;
+        private long position;
+
+        private VerifyingInputStream(InputStream in, Range range) {
+            super(in);
+            this.range = range;
+            this.members = range.members().iterator();
+            this.position = range.offset();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read < 0) {
+                if (member != null || members.hasNext()) {
+                    throw new EOFException(String.format(
+                            "Range %d-%d ended at %d before the end of its members",
+                            range.offset(), range.end(), position));
+                }
+                return -1;
+            }
+            update(b, off, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must be hashed too
+            byte[] buffer = new byte[(int) Math.min(8192, Math.max(0, n))];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        private void update(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (member == null) {
+                    if (!members.hasNext()) {
+                        throw new IOException(String.format(
+                                "Range %d-%d holds more bytes than its members", range.offset(), range.end()));
+                    }
+                    member = members.next();
+                    digest.reset();
+                }
+                int hashed = (int) Math.min(len, member.end() - position);
+                digest.update(b, off, hashed);
+                position += hashed;
+                off += hashed;
+                len -= hashed;
+                if (position == member.end()) {
+                    String actual = HexFormat.of().formatHex(digest.digest());
+                    if (member.sha256() != null && !actual.equalsIgnoreCase(member.sha256())) {
+                        throw new IOException(String.format(
+                                "Checksum mismatch on member at %d: expected SHA-256 %s but got %s",
+                                member.offset(), member.sha256(), actual));
+                    }
+                    member = null;
+                }
+            }
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stream of gzip members, counting the compressed bytes and the names of the entries of each member
+     */
+    private static final class Members extends OutputStream {
+
+        private final OutputStream out;
+        private final GzipParameters parameters;
+        private final JSONArray index = new JSONArray();
+        private final MessageDigest digest = newDigest();
+        private final OutputStream counting = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                digest.update((byte) b);
+                position++;
+            }
+
+            @Override
+            public void write(@NonNull byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                digest.update(b, off, len);
+                position += len;
+            }
+        };
+        private GzipCompressorOutputStream member;
+        private JSONArray names = new JSONArray();
+        private long offset;
+        private long position;
+        private long size;
+
+        private Members(OutputStream out, GzipParameters parameters) {
+            this.out = out;
+            this.parameters = parameters;
+        }
+
+        /**
+         * Record an entry about to be written, starting a new member if the current one would grow too large
+         */
+        void startEntry(String name, long entrySize) throws IOException {
+            if (member != null && size > 0 && size + entrySize > MEMBER_SIZE) {
+                cut();
+            }
+            names.add(name);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            open().write(b);
+            size++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            open().write(b, off, len);
+            size += len;
+        }
+
+        private GzipCompressorOutputStream open() throws IOException {
+            if (member == null) {
+                offset = position;
+                digest.reset();
+                member = new GzipCompressorOutputStream(counting, parameters);
+            }
+            return member;
+        }
+
+        private void cut() throws IOException {
+            if (member == null) {
+                return;
+            }
+            member.finish();
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            if (!names.isEmpty()) {
+                index.add(new JSONObject()
+                        .element("offset", offset)
+                        .element("length", position - offset)
+                        .element("sha256", sha256)
+                        .element("names", names));
+            }
+            member = null;
+            names = new JSONArray();
+            size = 0;
+        }
+
+        /**
+         * End the archive with the index member and the footer pointing to it
+         */
+        void writeIndex() throws IOException {
+            cut();
+            long indexOffset = position;
+            GzipCompressorOutputStream gzip = new GzipCompressorOutputStream(counting, parameters);
+            gzip.write(new JSONObject().element("members", index).toString().getBytes(StandardCharsets.UTF_8));
+            gzip.finish();
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            // Header with an extra field and no name, then an empty deflate block, a zero CRC and a zero size
+            footer.put(new byte[] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff});
+            footer.putShort((short) 20).put(FOOTER_ID).putShort((short) 16);
+            footer.put(String.format("%016x", indexOffset).getBytes(StandardCharsets.US_ASCII));
+            footer.put(new byte[] {3, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+            counting.write(footer.array());
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (member != null) {
+                member.flush();
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static final class Visitor extends FileVisitor {
+
+        private final TarArchiveOutputStream tar;
+        private final Members members;
+        private int count;
+
+        private Visitor(TarArchiveOutputStream tar, Members members) {
+            this.tar = tar;
+            this.members = members;
+        }
+
+        @Override
+        public void visit(File file, String relativePath) throws IOException {
+            Path path = file.toPath();
+            String name = relativePath.replace('\\', '/');
+            boolean directory = Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS);
+            TarArchiveEntry entry = new TarArchiveEntry(directory ? name + "/" : name);
+            entry.setModTime(Files.getLastModifiedTime(path).toMillis());
+            int mode = ArtifactoryUntar.mode(path);
+            if (mode != 0) {
+                entry.setMode((directory ? DIRECTORY : FILE) | mode);
+            }
+            if (directory) {
+                members.startEntry(entry.getName(), 0);
+                tar.putArchiveEntry(entry);
+            } else {
+                long size = Files.size(path);
+                entry.setSize(size);
+                members.startEntry(entry.getName(), size);
+                tar.putArchiveEntry(entry);
+                try (InputStream is = Files.newInputStream(path)) {
+                    // A file growing while it is archived is cut to the size in its header
+                    IOUtils.copyLarge(is, tar, 0, size);
+                }
+            }
+            tar.closeArchiveEntry();
+            count++;
+        }
+
+        @Override
+        public boolean understandsSymlink() {
+            return true;
+        }
+
+        @Override
+        public void visitSymlink(File link, String target, String relativePath) throws IOException {
+            TarArchiveEntry entry = new TarArchiveEntry(relativePath.replace('\\', '/'), TarArchiveEntry.LF_SYMLINK);
+            entry.setLinkName(target);
+            members.startEntry(entry.getName(), 0);
+            tar.putArchiveEntry(entry);
+            tar.closeArchiveEntry();
+            count++;
+        }
+    }
+}
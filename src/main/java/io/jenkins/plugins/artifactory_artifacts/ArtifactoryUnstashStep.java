@@ -0,0 +1,110 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.Serial;
+import java.util.Set;
+import jenkins.model.ArtifactManager;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Unstash the files of a stash matching patterns, downloading only the parts of the stash holding them.
+ */
+public class ArtifactoryUnstashStep extends Step {
+
+    private final String name;
+    private String includes;
+    private String excludes;
+
+    @DataBoundConstructor
+    public ArtifactoryUnstashStep(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getIncludes() {
+        return includes;
+    }
+
+    @DataBoundSetter
+    public void setIncludes(String includes) {
+        this.includes = Util.fixEmptyAndTrim(includes);
+    }
+
+    public String getExcludes() {
+        return excludes;
+    }
+
+    @DataBoundSetter
+    public void setExcludes(String excludes) {
+        this.excludes = Util.fixEmptyAndTrim(excludes);
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new Execution(this, context);
+    }
+
+    private static final class Execution extends SynchronousNonBlockingStepExecution<Void> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient ArtifactoryUnstashStep step;
+
+        Execution(ArtifactoryUnstashStep step, StepContext context) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        protected Void run() throws Exception {
+            Run<?, ?> run = getContext().get(Run.class);
+            ArtifactManager artifactManager = run.pickArtifactManager();
+            if (!(artifactManager instanceof ArtifactoryArtifactManager manager)) {
+                throw new AbortException("Stashes of this build are not stored on Artifactory");
+            }
+            manager.unstash(
+                    step.getName(),
+                    getContext().get(FilePath.class),
+                    getContext().get(TaskListener.class),
+                    step.getIncludes(),
+                    step.getExcludes());
+            return null;
+        }
+    }
+
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Set.of(Run.class, FilePath.class, TaskListener.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "artifactoryUnstash";
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Restore some files of a stash stored on Artifactory";
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import jenkins.util.SystemProperties;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Extraction of stash archives with parallel writers.
+ * The tar stream is decoded on the calling thread. Small entries are read in memory and written by a pool of writers,
+ * within a bound on the bytes held in memory, larger entries are written on the calling thread straight from the
+ * stream. Writes of entries with the same name are applied in archive order. Directories are created as they are met.
+ * Links are created once all files were written, so no file is ever written through a link from the archive, then the
+ * permissions and modification times of directories are applied.
+ */
+@Restricted(NoExternalUse.class)
+final class ArtifactoryUntar {
+
+    static final int WRITERS = SystemProperties.getInteger(ArtifactoryUntar.class.getName() + ".writers", 8);
+    static final int MAX_BUFFERED_ENTRY_SIZE =
+            SystemProperties.getInteger(ArtifactoryUntar.class.getName() + ".maxBufferedEntrySize", 1024 * 1024);
+    static final int MAX_BUFFERED_BYTES =
+            SystemProperties.getInteger(ArtifactoryUntar.class.getName() + ".maxBufferedBytes", 64 * 1024 * 1024);
+
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    private ArtifactoryUntar() {}
+
+    /**
+     * Extract a gzipped tar archive
+     * @param compressed the archive, not closed
+     * @param dir the folder to extract to
+     * @return the number of entries extracted
+     * @throws IOException if the archive is invalid, an entry points outside the folder or cannot be written
+     * @throws InterruptedException if interrupted while waiting for the writers
+     */
+    static int extract(InputStream compressed, File dir) throws IOException, InterruptedException {
+        return extract(compressed, dir, name -> true);
+    }
+
+    /**
+     * Extract the entries of a gzipped tar archive matching a filter
+     * @param compressed the archive, or a range of whole gzip members of it, not closed
+     * @param dir the folder to extract to
+     * @param filter the names of the entries to extract, without trailing slash
+     * @return the number of entries extracted
+     * @throws IOException if the archive is invalid, an entry points outside the folder or cannot be written
+     * @throws InterruptedException if interrupted while waiting for the writers
+     */
+    static int extract(InputStream compressed, File dir, Predicate<String> filter)
+            throws IOException, InterruptedException {
+        return extract(compressed, dir, filter, Math.max(1, WRITERS), Math.max(0, MAX_BUFFERED_ENTRY_SIZE));
+    }
+
+    static int extract(InputStream compressed, File dir, int writers, int maxBufferedEntrySize)
+            throws IOException, InterruptedException {
+        return extract(compressed, dir, name -> true, writers, maxBufferedEntrySize);
+    }
+
+    static int extract(
+            InputStream compressed, File dir, Predicate<String> filter, int writers, int maxBufferedEntrySize)
+            throws IOException, InterruptedException {
+        Path root = dir.toPath().toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        Path realRoot = root.toRealPath();
+        // Entries larger than the budget are never buffered, so a single entry always fits
+        Semaphore budget = new Semaphore(Math.max(maxBufferedEntrySize, MAX_BUFFERED_BYTES));
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        List<Metadata> directories = new ArrayList<>();
+        List<Link> links = new ArrayList<>();
+        Set<Path> created = new HashSet<>();
+        created.add(root);
+        // Pending writes by path, a later entry with the same name is written once the previous one is
+        Map<Path, CompletableFuture<Void>> writes = new ConcurrentHashMap<>();
+        int count = 0;
+        try {
+            // Archives are made of several gzip members, the end of one is not the end of the archive
+            TarArchiveInputStream tar = new TarArchiveInputStream(new GzipCompressorInputStream(compressed, true));
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextEntry()) != null && failure.get() == null) {
+                if (!filter.test(Utils.stripTrailingSlash(entry.getName()))) {
+                    continue;
+                }
+                Path target = resolve(root, entry.getName());
+                count++;
+                if (entry.isDirectory()) {
+                    createDirectories(realRoot, target, created);
+                    directories.add(new Metadata(target, entry.getMode(), entry.getModTime().getTime()));
+                    continue;
+                }
+                createDirectories(realRoot, target.getParent(), created);
+                if (entry.isSymbolicLink() || entry.isLink()) {
+                    links.add(new Link(target, entry.getLinkName(), entry.isSymbolicLink()));
+                    continue;
+                }
+                Metadata file = new Metadata(target, entry.getMode(), entry.getModTime().getTime());
+                long size = entry.getSize();
+                if (size > maxBufferedEntrySize) {
+                    CompletableFuture<Void> previous = writes.get(target);
+                    if (previous != null) {
+                        previous.join();
+                    }
+                    unlink(target);
+                    try (OutputStream os = Files.newOutputStream(target)) {
+                        tar.transferTo(os);
+                    }
+                    apply(file);
+                    continue;
+                }
+                byte[] content = tar.readNBytes((int) size);
+                budget.acquire(content.length);
+                Runnable task = () -> {
+                    try {
+                        if (failure.get() == null) {
+                            unlink(target);
+                            Files.write(target, content);
+                            apply(file);
+                        }
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        budget.release(content.length);
+                    }
+                };
+                CompletableFuture<Void> previous = writes.get(target);
+                CompletableFuture<Void> write = previous == null
+                        ? CompletableFuture.runAsync(task, executor)
+                        : previous.thenRunAsync(task, executor);
+                writes.put(target, write);
+                write.whenComplete((result, t) -> writes.remove(target, write));
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Wait for the writers
+            }
+        } finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+        }
+        Exception e = failure.get();
+        if (e instanceof IOException ioException) {
+            throw ioException;
+        }
+        if (e != null) {
+            throw new IOException(e.getMessage(), e);
+        }
+        for (Link link : links) {
+            createLink(root, realRoot, link);
+        }
+        // Writing in a folder updates its modification time, deepest folders first
+        directories.sort(Comparator.comparing((Metadata m) -> m.path().getNameCount()).reversed());
+        for (Metadata directory : directories) {
+            apply(directory);
+        }
+        return count;
+    }
+
+    /**
+     * Wait for the writers to stop even when interrupted, so no file is written once the extraction returned
+     */
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Resolve an entry, refusing names escaping the folder
+     */
+    static Path resolve(Path root, String name) throws IOException {
+        Path target = root.resolve(name).normalize();
+        if (!target.startsWith(root)) {
+            throw new IOException(String.format("Tar entry %s is outside of %s", name, root));
+        }
+        return target;
+    }
+
+    /**
+     * Create a folder, refusing to create it through a link pointing outside the folder to extract to
+     */
+    static void createDirectories(Path realRoot, Path dir, Set<Path> created) throws IOException {
+        if (created.contains(dir)) {
+            return;
+        }
+        Files.createDirectories(dir);
+        if (!dir.toRealPath().startsWith(realRoot)) {
+            throw new IOException(String.format("Folder %s is outside of %s", dir, realRoot));
+        }
+        created.add(dir);
+    }
+
+    private static void createLink(Path root, Path realRoot, Link link) throws IOException {
+        Files.deleteIfExists(link.path());
+        if (link.symbolic()) {
+            // Targets are kept as archived, like FilePath.untarFrom does
+            Files.createSymbolicLink(link.path(), link.path().getFileSystem().getPath(link.target()));
+        } else {
+            // The target may be reached through a link of the archive, refuse to copy files from outside the folder
+            Path target = resolve(root, link.target());
+            if (!target.toRealPath().startsWith(realRoot)) {
+                throw new IOException(String.format(
+                        "Tar entry %s links to %s outside of %s", link.path(), link.target(), realRoot));
+            }
+            Files.copy(target, link.path(), StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+        }
+    }
+
+    /**
+     * Remove a link left at the path of a file, so the file is not written through it
+     */
+    private static void unlink(Path target) throws IOException {
+        if (Files.isSymbolicLink(target)) {
+            Files.delete(target);
+        }
+    }
+
+    /**
+     * Apply the permissions and modification time of an extracted file
+     * @param file the file
+     * @param mode the permission bits, 0 to keep the default ones
+     * @param lastModified the modification time, 0 to keep the current one
+     */
+    static void restore(Path file, int mode, long lastModified) throws IOException {
+        apply(new Metadata(file, mode, lastModified));
+    }
+
+    /**
+     * Permission bits of a file, as stored in tar entries
+     * @param file the file
+     * @return the permission bits, 0 on file systems without POSIX permissions
+     */
+    static int mode(Path file) throws IOException {
+        if (!POSIX) {
+            return 0;
+        }
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+        PosixFilePermission[] values = PosixFilePermission.values();
+        int mode = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (permissions.contains(values[i])) {
+                mode |= 0400 >> i;
+            }
+        }
+        return mode;
+    }
+
+    private static void apply(Metadata metadata) throws IOException {
+        if (POSIX && metadata.mode() != 0) {
+            Files.setPosixFilePermissions(metadata.path(), permissions(metadata.mode()));
+        }
+        if (metadata.lastModified() > 0) {
+            Files.setLastModifiedTime(metadata.path(), FileTime.fromMillis(metadata.lastModified()));
+        }
+    }
+
+    private static Set<PosixFilePermission> permissions(int mode) {
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        PosixFilePermission[] values = PosixFilePermission.values();
+        // Values are ordered from OWNER_READ (0400) to OTHERS_EXECUTE (0001)
+        for (int i = 0; i < values.length; i++) {
+            if ((mode & (0400 >> i)) != 0) {
+                permissions.add(values[i]);
+            }
+        }
+        return permissions;
+    }
+
+    private record Metadata(Path path, int mode, long lastModified) {}
+
+    private record Link(Path path, String target, boolean symbolic) {}
+}
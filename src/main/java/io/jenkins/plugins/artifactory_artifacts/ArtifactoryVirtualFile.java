@@ -10,7 +10,10 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import jenkins.util.VirtualFile;
 import org.slf4j.Logger;
@@ -24,6 +27,12 @@ public class ArtifactoryVirtualFile extends ArtifactoryAbstractVirtualFile {
     @SuppressWarnings("lgtm[jenkins/plaintext-storage]")
     private final String key;
 
+    /**
+     * Same path in the artifacts of a referenced build, read when this build has no such file or folder, or null
+     */
+    @CheckForNull
+    private final String fallback;
+
     private final transient Run<?, ?> build;
     private final ArtifactoryClient.FileInfo fileInfo;
 
@@ -31,13 +40,30 @@ public class ArtifactoryVirtualFile extends ArtifactoryAbstractVirtualFile {
     private transient ArtifactoryClient cachedClient;
 
     public ArtifactoryVirtualFile(String key, Run<?, ?> build) {
+        this(key, null, build);
+    }
+
+    /**
+     * Artifacts of a build layered on top of the artifacts of the build it references
+     * @param key the path in the artifacts of the build
+     * @param fallback the same path in the artifacts of the referenced build, or null
+     * @param build the build
+     */
+    public ArtifactoryVirtualFile(String key, @CheckForNull String fallback, Run<?, ?> build) {
         this.key = key;
+        this.fallback = fallback;
         this.build = build;
         this.fileInfo = null;
     }
 
     public ArtifactoryVirtualFile(ArtifactoryClient.FileInfo fileInfo, Run<?, ?> build) {
+        this(fileInfo, null, build);
+    }
+
+    private ArtifactoryVirtualFile(
+            ArtifactoryClient.FileInfo fileInfo, @CheckForNull String fallback, Run<?, ?> build) {
         this.key = fileInfo.getPath();
+        this.fallback = fallback;
         this.build = build;
         this.fileInfo = fileInfo;
     }
@@ -73,12 +99,15 @@ public class ArtifactoryVirtualFile extends ArtifactoryAbstractVirtualFile {
     @CheckForNull
     @Override
     public URL toExternalURL() throws IOException {
-        return new URL(Utils.getUrl(this.key));
+        return new URL(Utils.getUrl(resolve()));
     }
 
     @Override
     public VirtualFile getParent() {
-        return new ArtifactoryVirtualFile(this.key.replaceFirst("/[^/]+$", ""), this.build);
+        return new ArtifactoryVirtualFile(
+                this.key.replaceFirst("/[^/]+$", ""),
+                this.fallback != null ? this.fallback.replaceFirst("/[^/]+$", "") : null,
+                this.build);
     }
 
     @Override
@@ -91,7 +120,7 @@ public class ArtifactoryVirtualFile extends ArtifactoryAbstractVirtualFile {
             return false;
         }
         try {
-            return buildArtifactoryClient().isFolder(this.key);
+            return buildArtifactoryClient().isFolder(resolve());
         } catch (Exception e) {
             LOGGER.warn(String.format("Failed to check if %s is a directory", this.key), e);
             return false;
@@ -108,7 +137,7 @@ public class ArtifactoryVirtualFile extends ArtifactoryAbstractVirtualFile {
             return false;
         }
         try {
-            return buildArtifactoryClient().isFile(this.key);
+            return buildArtifactoryClient().isFile(resolve());
         } catch (Exception e) {
             LOGGER.warn(String.format("Failed to check if %s is a file", this.key), e);
             return false;
@@ -125,6 +154,9 @@ public class ArtifactoryVirtualFile extends ArtifactoryAbstractVirtualFile {
     public VirtualFile[] list() throws IOException {
         String prefix = Utils.stripTrailingSlash(this.key) + "/";
         List<VirtualFile> files = listFilesFromPrefix(prefix);
+        if (this.fallback != null) {
+            files = layer(files, listFilesFromPrefix(Utils.stripTrailingSlash(this.fallback) + "/"));
+        }
         if (files.isEmpty()) {
             return new VirtualFile[0];
         }
@@ -135,7 +167,8 @@ public class ArtifactoryVirtualFile extends ArtifactoryAbstractVirtualFile {
     @Override
     public VirtualFile child(@NonNull String name) {
         String joinedKey = Utils.stripTrailingSlash(this.key) + "/" + name;
-        return new ArtifactoryVirtualFile(joinedKey, build);
+        String joinedFallback = this.fallback != null ? Utils.stripTrailingSlash(this.fallback) + "/" + name : null;
+        return new ArtifactoryVirtualFile(joinedKey, joinedFallback, build);
     }
 
     @Override
@@ -144,7 +177,7 @@ public class ArtifactoryVirtualFile extends ArtifactoryAbstractVirtualFile {
             return this.fileInfo.getSize();
         }
         try {
-            return buildArtifactoryClient().size(this.key);
+            return buildArtifactoryClient().size(resolve());
         } catch (Exception e) {
             LOGGER.warn(String.format("Failed to get size of %s", this.key), e);
             return 0;
@@ -157,7 +190,7 @@ public class ArtifactoryVirtualFile extends ArtifactoryAbstractVirtualFile {
             return this.fileInfo.getLastUpdated();
         }
         try {
-            return buildArtifactoryClient().lastUpdated(this.key);
+            return buildArtifactoryClient().lastUpdated(resolve());
         } catch (Exception e) {
             LOGGER.warn(String.format("Failed to get last updated time of %s", this.key), e);
             return 0;
@@ -179,7 +212,7 @@ public class ArtifactoryVirtualFile extends ArtifactoryAbstractVirtualFile {
             throw new FileNotFoundException("Cannot open it because it is not a file.");
         }
         try {
-            return buildArtifactoryClient().downloadArtifact(this.key);
+            return buildArtifactoryClient().downloadArtifact(resolve());
         } catch (Exception e) {
             LOGGER.warn(String.format("Failed to open %s", this.key), e);
             throw new IOException(e);
@@ -197,6 +230,39 @@ public class ArtifactoryVirtualFile extends ArtifactoryAbstractVirtualFile {
         }
     }
 
+    /**
+     * Path read for this file, the path in the referenced build if this build has no such file or folder
+     */
+    private String resolve() throws IOException {
+        if (this.fallback == null || this.fileInfo != null) {
+            return this.key;
+        }
+        ArtifactoryClient client = buildArtifactoryClient();
+        return client.isFile(this.key) || client.isFolder(this.key) ? this.key : this.fallback;
+    }
+
+    /**
+     * Add the files of the referenced build not shadowed by a file or folder of the same name of this build
+     * @param own the files of this build, whose folders are layered on the same folders of the referenced build
+     * @param referenced the files of the referenced build
+     */
+    private List<VirtualFile> layer(List<VirtualFile> own, List<VirtualFile> referenced) {
+        List<VirtualFile> files = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (VirtualFile file : own) {
+            ArtifactoryClient.FileInfo info = ((ArtifactoryVirtualFile) file).fileInfo;
+            names.add(file.getName());
+            files.add(new ArtifactoryVirtualFile(
+                    info, Utils.stripTrailingSlash(this.fallback) + "/" + file.getName(), this.build));
+        }
+        for (VirtualFile file : referenced) {
+            if (!names.contains(file.getName())) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
     /**
      * Lazily creates and caches an ArtifactoryClient
      * @return a cached ArtifactoryClient instance
@@ -204,7 +270,8 @@ public class ArtifactoryVirtualFile extends ArtifactoryAbstractVirtualFile {
     private ArtifactoryClient buildArtifactoryClient() {
         if (cachedClient == null) {
             ArtifactoryGenericArtifactConfig config = Utils.getArtifactConfig();
-            cachedClient = new ArtifactoryClient(config.getServerUrl(), config.getRepository(), Utils.getCredentials());
+            cachedClient = new ArtifactoryClient(config.getServerUrl(), config.getRepository(), Utils.getCredentials())
+                    .withLane(ArtifactoryRequestScheduler.Lane.BROWSE, Utils.ownerOf(build));
         }
         return cachedClient;
     }
@@ -0,0 +1,121 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Find artifacts of a job across its recent builds with a single AQL query.
+ * Requires build properties to be attached to artifacts.
+ */
+public class FindArtifactoryArtifactsStep extends Step {
+
+    private final String name;
+    private String job;
+    private int builds = 100;
+
+    @DataBoundConstructor
+    public FindArtifactoryArtifactsStep(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getJob() {
+        return job;
+    }
+
+    @DataBoundSetter
+    public void setJob(String job) {
+        this.job = Util.fixEmptyAndTrim(job);
+    }
+
+    public int getBuilds() {
+        return builds;
+    }
+
+    @DataBoundSetter
+    public void setBuilds(int builds) {
+        this.builds = Math.max(1, builds);
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new Execution(this, context);
+    }
+
+    private static final class Execution extends SynchronousNonBlockingStepExecution<List<Map<String, Object>>> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient FindArtifactoryArtifactsStep step;
+
+        Execution(FindArtifactoryArtifactsStep step, StepContext context) {
+            super(context);
+            this.step = step;
+        }
+
+        @Override
+        protected List<Map<String, Object>> run() throws Exception {
+            Run<?, ?> run = getContext().get(Run.class);
+            Job<?, ?> job = run.getParent();
+            if (step.getJob() != null) {
+                job = Jenkins.get().getItem(step.getJob(), run.getParent(), Job.class);
+                if (job == null || !job.hasPermission(Item.READ)) {
+                    throw new IllegalArgumentException(String.format("No job named %s found", step.getJob()));
+                }
+            }
+            List<ArtifactoryArtifactIndex.Artifact> artifacts =
+                    ArtifactoryArtifactIndex.find(job, step.getName(), step.getBuilds());
+            getContext()
+                    .get(TaskListener.class)
+                    .getLogger()
+                    .printf("Found %d artifact(s) matching %s in %s%n", artifacts.size(), step.getName(), job);
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (ArtifactoryArtifactIndex.Artifact artifact : artifacts) {
+                result.add(artifact.toMap());
+            }
+            return result;
+        }
+    }
+
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Set.of(Run.class, TaskListener.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "findArtifactoryArtifacts";
+        }
+
+        @NonNull
+        @Override
+        public String getDisplayName() {
+            return "Find artifacts stored on Artifactory across builds";
+        }
+    }
+}
@@ -6,17 +6,23 @@ import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredenti
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.model.Run;
 import hudson.security.ACL;
 import hudson.util.DescribableList;
+import java.io.File;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
 import jenkins.model.ArtifactManagerConfiguration;
 import jenkins.model.ArtifactManagerFactory;
 import jenkins.model.ArtifactManagerFactoryDescriptor;
 import jenkins.model.Jenkins;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
 
 public final class Utils {
 
@@ -27,6 +33,14 @@ public final class Utils {
      * @return the artifactory config or null if not configured
      */
     public static @Nullable ArtifactoryGenericArtifactConfig getArtifactConfig() {
+        return ArtifactoryConfigSnapshot.get().getConfig();
+    }
+
+    /**
+     * Walk the artifact manager configuration to find the artifactory config
+     * @return the artifactory config or null if not configured
+     */
+    static @Nullable ArtifactoryGenericArtifactConfig lookupArtifactConfig() {
         ArtifactManagerConfiguration artifactManagerConfiguration = ArtifactManagerConfiguration.get();
         DescribableList<ArtifactManagerFactory, ArtifactManagerFactoryDescriptor> artifactManagerFactories =
                 artifactManagerConfiguration.getArtifactManagerFactories();
@@ -43,14 +57,24 @@ public final class Utils {
      * @return the credentials or null if not configured
      */
     public static @Nullable StandardUsernamePasswordCredentials getCredentials() {
-        ArtifactoryGenericArtifactConfig config = getArtifactConfig();
-        if (config == null) {
-            return null;
-        }
-        return getCredentials(config);
+        return ArtifactoryConfigSnapshot.get().getCredentials();
     }
 
     public static StandardUsernamePasswordCredentials getCredentials(String credentialsId) {
+        ArtifactoryConfigSnapshot snapshot = ArtifactoryConfigSnapshot.get();
+        ArtifactoryGenericArtifactConfig config = snapshot.getConfig();
+        if (config != null && credentialsId != null && credentialsId.equals(config.getStorageCredentialId())) {
+            return snapshot.getCredentials();
+        }
+        return lookupCredentials(credentialsId);
+    }
+
+    /**
+     * Scan the credentials store for the given id
+     * @param credentialsId the credentials id
+     * @return the credentials or null if not found
+     */
+    static StandardUsernamePasswordCredentials lookupCredentials(String credentialsId) {
         return CredentialsMatchers.firstOrNull(
                 CredentialsProvider.lookupCredentialsInItemGroup(
                         StandardUsernamePasswordCredentials.class, Jenkins.get(), ACL.SYSTEM2, Collections.emptyList()),
@@ -75,9 +99,17 @@ public final class Utils {
      * @return the URL of the artifact
      */
     public static String getUrl(String name) {
-        return String.format(
-                "%s/%s/%s",
-                getArtifactConfig().getServerUrl(), getArtifactConfig().getRepository(), urlEncodeParts(name));
+        ArtifactoryGenericArtifactConfig config = getArtifactConfig();
+        return String.format("%s/%s/%s", config.getServerUrl(), config.getRepository(), urlEncodeParts(name));
+    }
+
+    /**
+     * Return the job a build belongs to, used to share Artifactory requests fairly between jobs
+     * @param build the build, can be null
+     * @return the full name of the job
+     */
+    static String ownerOf(Run<?, ?> build) {
+        return build == null ? "unknown" : build.getParent().getFullName();
     }
 
     /**
@@ -93,6 +125,38 @@ public final class Utils {
         return localKey;
     }
 
+    /**
+     * Filter relative paths with comma separated Ant patterns, like the includes and excludes of a stash
+     * @param includes the patterns of the paths to keep, null to keep all paths
+     * @param excludes the patterns of the paths to drop, can be null
+     * @return the filter of paths separated by forward slashes
+     */
+    static Predicate<String> pathFilter(@Nullable String includes, @Nullable String excludes) {
+        List<String> included = patterns(includes);
+        List<String> excluded = patterns(excludes);
+        return path -> {
+            String localPath = path.replace('/', File.separatorChar);
+            return (included.isEmpty() || included.stream().anyMatch(p -> SelectorUtils.matchPath(p, localPath)))
+                    && excluded.stream().noneMatch(p -> SelectorUtils.matchPath(p, localPath));
+        };
+    }
+
+    private static List<String> patterns(@Nullable String patterns) {
+        List<String> result = new ArrayList<>();
+        for (String pattern : StringUtils.split(StringUtils.defaultString(patterns), ',')) {
+            String localPattern = pattern.trim().replace('\\', '/');
+            if (localPattern.isEmpty()) {
+                continue;
+            }
+            // A trailing slash matches everything under the folder, as in Ant file sets
+            if (localPattern.endsWith("/")) {
+                localPattern += "**";
+            }
+            result.add(localPattern.replace('/', File.separatorChar));
+        }
+        return result;
+    }
+
     /**
      * Get the path with the prefix
      * @param key the key
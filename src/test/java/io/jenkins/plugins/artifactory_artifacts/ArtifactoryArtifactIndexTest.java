@@ -0,0 +1,51 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import hudson.model.FreeStyleProject;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+@WireMockTest
+public class ArtifactoryArtifactIndexTest extends BaseTest {
+
+    @Test
+    public void shouldFindArtifactsAcrossBuildsWithSingleQuery(
+            JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        WireMock wireMock = wmRuntimeInfo.getWireMock();
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject("my-job");
+        jenkinsRule.buildAndAssertSuccess(project);
+        jenkinsRule.buildAndAssertSuccess(project);
+
+        wireMock.register(WireMock.post(WireMock.urlEqualTo("/api/search/aql"))
+                .withRequestBody(WireMock.containing("\"@jenkins.job\":\"my-job\""))
+                .willReturn(WireMock.okJson("{\"results\": ["
+                        + item("jenkins/my-job/1/artifacts", "app.jar", 1)
+                        + "," + item("jenkins/my-job/2/artifacts/lib", "app.jar", 2)
+                        // Not one of the builds looked at
+                        + "," + item("jenkins/my-job/99/artifacts", "app.jar", 99)
+                        + "]}")));
+
+        List<ArtifactoryArtifactIndex.Artifact> artifacts = ArtifactoryArtifactIndex.find(project, "*.jar", 10);
+
+        assertThat(artifacts.size(), is(2));
+        assertThat(artifacts.get(0).getBuild(), is(2));
+        assertThat(artifacts.get(0).getPath(), is("lib/app.jar"));
+        assertThat(artifacts.get(1).getBuild(), is(1));
+        assertThat(artifacts.get(1).getPath(), is("app.jar"));
+        wireMock.verifyThat(1, WireMock.postRequestedFor(WireMock.urlEqualTo("/api/search/aql")));
+    }
+
+    private static String item(String path, String name, int build) {
+        return "{\"repo\": \"my-generic-repo\", \"path\": \"" + path + "\", \"name\": \"" + name + "\", \"size\": 3,"
+                + " \"properties\": [{\"key\": \"jenkins.build.number\", \"value\": \"" + build + "\"}]}";
+    }
+}
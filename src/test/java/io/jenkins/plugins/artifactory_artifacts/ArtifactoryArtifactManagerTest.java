@@ -6,8 +6,12 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
 import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import hudson.model.FreeStyleProject;
 import hudson.util.FormValidation;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Objects;
 import org.apache.commons.io.IOUtils;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
@@ -15,6 +19,7 @@ import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.junit.jupiter.RealJenkinsExtension;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
@@ -193,6 +198,33 @@ public class ArtifactoryArtifactManagerTest extends BaseTest {
         assertThat(descriptor.getDisplayName(), is("Artifactory Artifact Storage"));
     }
 
+    @Test
+    public void shouldKeepStableJobKeyWhenRenamingJob(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        ArtifactoryGenericArtifactConfig config = configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        config.setStableJobKeys(true);
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject("before");
+        String key = ArtifactoryJobKeys.get().keyFor("before");
+
+        project.renameTo("after");
+
+        assertThat(ArtifactoryJobKeys.get().keyFor("after"), is(key));
+        assertThat(ArtifactoryJobKeys.get().getKeys().containsKey("before"), is(false));
+        wmRuntimeInfo.getWireMock().verifyThat(0, WireMock.postRequestedFor(WireMock.urlMatching("/api/move/.*")));
+    }
+
+    @Test
+    public void shouldUploadLargestFilesFirst(@TempDir Path folder) throws Exception {
+        Files.write(folder.resolve("small.txt"), new byte[10]);
+        Files.write(folder.resolve("large.bin"), new byte[10_000]);
+        Files.write(folder.resolve("medium.log"), new byte[1_000]);
+
+        List<String> ordered = ArtifactoryArtifactManager.largestFirst(
+                folder.toFile(), List.of("small.txt", "missing.txt", "large.bin", "medium.log"), name -> name);
+
+        assertThat(ordered, is(List.of("large.bin", "medium.log", "small.txt", "missing.txt")));
+    }
+
     @Test
     public void testConfigRoundtrip(WireMockRuntimeInfo wmRuntimeInfo) throws Throwable {
         int wireMockPort = wmRuntimeInfo.getHttpPort();
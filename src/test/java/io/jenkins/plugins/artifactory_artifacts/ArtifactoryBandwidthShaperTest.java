@@ -0,0 +1,95 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+public class ArtifactoryBandwidthShaperTest {
+
+    @Test
+    public void shouldAdmitStashBeforeArchive(JenkinsRule jenkinsRule) throws Exception {
+        ArtifactoryBandwidthShaper shaper = new ArtifactoryBandwidthShaper(1);
+        List<String> admitted = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ArtifactoryBandwidthShaper.Transfer first =
+                    shaper.begin(ArtifactoryBandwidthShaper.Priority.ARCHIVE, "job/1", 0);
+            Future<?> archive = executor.submit(() -> {
+                try (ArtifactoryBandwidthShaper.Transfer transfer =
+                        shaper.begin(ArtifactoryBandwidthShaper.Priority.ARCHIVE, "job/2", 0)) {
+                    admitted.add("archive");
+                }
+                return null;
+            });
+            waitForWaiting(shaper, ArtifactoryBandwidthShaper.Priority.ARCHIVE);
+            Future<?> stash = executor.submit(() -> {
+                try (ArtifactoryBandwidthShaper.Transfer transfer =
+                        shaper.begin(ArtifactoryBandwidthShaper.Priority.STASH, "job/3", 0)) {
+                    admitted.add("stash");
+                }
+                return null;
+            });
+            waitForWaiting(shaper, ArtifactoryBandwidthShaper.Priority.STASH);
+
+            first.close();
+            stash.get(10, TimeUnit.SECONDS);
+            archive.get(10, TimeUnit.SECONDS);
+
+            assertThat(admitted, is(List.of("stash", "archive")));
+            assertThat(shaper.getActive(), is(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldThrottleToBandwidthLimit(JenkinsRule jenkinsRule) throws Exception {
+        ArtifactoryBandwidthShaper shaper = new ArtifactoryBandwidthShaper(1);
+        long start = System.nanoTime();
+        try (InputStream is = shaper.begin(ArtifactoryBandwidthShaper.Priority.ARCHIVE, "job/1", 100 * 1024)
+                .throttle(new ByteArrayInputStream(new byte[200 * 1024]))) {
+            byte[] buffer = new byte[8 * 1024];
+            while (is.read(buffer) > 0) {
+                // Drain
+            }
+        }
+        // Bucket starts empty, 200 KiB at 100 KiB/s takes about 2 seconds
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), greaterThanOrEqualTo(1500L));
+        assertThat(shaper.getActive(), is(0));
+    }
+
+    @Test
+    public void shouldParseBandwidthLimits(JenkinsRule jenkinsRule) {
+        Map<String, Long> limits = ArtifactoryGenericArtifactConfig.parseBandwidthLimits(
+                "# remote agents\nlinux && remote = 20\n\nwindows=0.5");
+        assertThat(limits, is(Map.of("linux && remote", 20L * 1024 * 1024, "windows", 512L * 1024)));
+        assertThrows(
+                IllegalArgumentException.class, () -> ArtifactoryGenericArtifactConfig.parseBandwidthLimits("linux"));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> ArtifactoryGenericArtifactConfig.parseBandwidthLimits("linux=fast"));
+    }
+
+    private static void waitForWaiting(ArtifactoryBandwidthShaper shaper, ArtifactoryBandwidthShaper.Priority priority)
+            throws InterruptedException {
+        for (int i = 0; i < 100 && shaper.getWaiting(priority) == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(shaper.getWaiting(priority), is(1));
+    }
+}
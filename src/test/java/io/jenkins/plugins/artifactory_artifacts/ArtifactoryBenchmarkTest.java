@@ -0,0 +1,254 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.StreamBuildListener;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import jenkins.util.VirtualFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Throughput benchmark of the artifact manager against {@link ArtifactoryStandIn}.
+ * Excluded from the default build, run it with {@code mvn test -Pbenchmark}.
+ * Raise {@code -Dbenchmark.hugeFileSize} to compare the stream and channel download paths on large files, the
+ * stand-in keeps each file in a single array so files must stay below 2 GB.
+ * Scenarios and server behaviour are tuned with {@code -Dbenchmark.*} system properties.
+ */
+@Tag("benchmark")
+@WithJenkins
+public class ArtifactoryBenchmarkTest extends BaseTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactoryBenchmarkTest.class);
+
+    private static final int SMALL_FILES = Integer.getInteger("benchmark.smallFiles", 10_000);
+    private static final int SMALL_FILE_SIZE = Integer.getInteger("benchmark.smallFileSize", 1024);
+    private static final int HUGE_FILES = Integer.getInteger("benchmark.hugeFiles", 3);
+    private static final long HUGE_FILE_SIZE = Long.getLong("benchmark.hugeFileSize", 64L * 1024 * 1024);
+    private static final int TREE_DEPTH = Integer.getInteger("benchmark.treeDepth", 50);
+    private static final int TREE_FILES_PER_LEVEL = Integer.getInteger("benchmark.treeFilesPerLevel", 20);
+    private static final long LATENCY_MILLIS = Long.getLong("benchmark.latencyMillis", 0L);
+    private static final long BANDWIDTH = Long.getLong("benchmark.bytesPerSecond", 0L);
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("benchmark.errorRate", "0"));
+    private static final Path REPORT = Paths.get(System.getProperty("benchmark.report", "target/benchmark-report.txt"));
+
+    private ArtifactoryStandIn standIn;
+
+    @BeforeEach
+    public void startStandIn() throws IOException {
+        standIn = new ArtifactoryStandIn("my-generic-repo")
+                .withLatency(LATENCY_MILLIS)
+                .withBandwidth(BANDWIDTH)
+                .withErrorRate(ERROR_RATE);
+    }
+
+    @AfterEach
+    public void stopStandIn() {
+        standIn.close();
+    }
+
+    @Test
+    public void smallFiles(JenkinsRule jenkinsRule, @TempDir Path workspace) throws Exception {
+        Map<String, String> artifacts = new TreeMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < SMALL_FILES; i++) {
+            String name = String.format("small/file-%05d.bin", i);
+            artifacts.put(name, name);
+            write(workspace.resolve(name), SMALL_FILE_SIZE, random);
+        }
+        run("small files", jenkinsRule, workspace, artifacts);
+    }
+
+    @Test
+    public void hugeFiles(JenkinsRule jenkinsRule, @TempDir Path workspace) throws Exception {
+        Map<String, String> artifacts = new TreeMap<>();
+        Random random = new Random(2);
+        for (int i = 0; i < HUGE_FILES; i++) {
+            String name = String.format("huge/file-%d.bin", i);
+            artifacts.put(name, name);
+            write(workspace.resolve(name), HUGE_FILE_SIZE, random);
+        }
+        run("huge files", jenkinsRule, workspace, artifacts);
+    }
+
+    @Test
+    public void deepTree(JenkinsRule jenkinsRule, @TempDir Path workspace) throws Exception {
+        Map<String, String> artifacts = new TreeMap<>();
+        Random random = new Random(3);
+        StringBuilder dir = new StringBuilder("deep");
+        for (int level = 0; level < TREE_DEPTH; level++) {
+            dir.append("/level-").append(level);
+            for (int i = 0; i < TREE_FILES_PER_LEVEL; i++) {
+                String name = dir + "/file-" + i + ".bin";
+                artifacts.put(name, name);
+                write(workspace.resolve(name), SMALL_FILE_SIZE, random);
+            }
+        }
+        run("deep tree", jenkinsRule, workspace, artifacts);
+    }
+
+    private void run(String scenario, JenkinsRule jenkinsRule, Path workspace, Map<String, String> artifacts)
+            throws Exception {
+        ArtifactoryGenericArtifactConfig config = configureConfig(jenkinsRule, standIn.getPort(), "benchmark/");
+        config.setMaxUploadRetries(ERROR_RATE > 0 ? 5 : 0);
+        config.setRetryDelaySeconds(0);
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+        FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(project);
+        ArtifactoryArtifactManager manager = new ArtifactoryArtifactManager(build, config);
+
+        FilePath ws = new FilePath(workspace.toFile());
+        Launcher launcher = jenkinsRule.createLocalLauncher();
+        StreamBuildListener listener = new StreamBuildListener(OutputStream.nullOutputStream(), StandardCharsets.UTF_8);
+        long bytes = 0;
+        for (String name : artifacts.keySet()) {
+            bytes += Files.size(workspace.resolve(name));
+        }
+        final long totalBytes = bytes;
+        final int files = artifacts.size();
+
+        Report report = new Report(scenario);
+        report.measure("archive", files, totalBytes, () -> manager.archive(ws, launcher, listener, artifacts));
+        report.measure("list", files, 0, () -> assertThat(walk(manager.root()), is(files)));
+        report.measure("open", files, totalBytes, () -> read(manager.root()));
+        Path downloads = Files.createTempDirectory(workspace.getParent(), "downloads");
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                "http://localhost:" + standIn.getPort(), "my-generic-repo", Utils.getCredentials())) {
+            report.measure("stream", files, totalBytes, () -> download(manager.root(), downloads, null));
+            report.measure("channel", files, totalBytes, () -> download(manager.root(), downloads, client));
+        }
+        report.measure(
+                "stash",
+                files,
+                totalBytes,
+                () -> manager.stash(
+                        "benchmark", ws, launcher, new EnvVars(), listener, "**", null, true, false));
+        Path target = Files.createTempDirectory(workspace.getParent(), "unstash");
+        report.measure(
+                "unstash",
+                files,
+                totalBytes,
+                () -> manager.unstash(
+                        "benchmark", new FilePath(target.toFile()), launcher, new EnvVars(), listener));
+        report.write();
+    }
+
+    private static int walk(VirtualFile dir) throws IOException {
+        int count = 0;
+        for (VirtualFile child : dir.list()) {
+            count += child.isDirectory() ? walk(child) : 1;
+        }
+        return count;
+    }
+
+    private static void read(VirtualFile dir) throws IOException {
+        for (VirtualFile child : dir.list()) {
+            if (child.isDirectory()) {
+                read(child);
+            } else {
+                try (InputStream is = child.open()) {
+                    is.transferTo(OutputStream.nullOutputStream());
+                }
+            }
+        }
+    }
+
+    /**
+     * Download all files to a folder, through {@link VirtualFile#open()} or
+     * {@link ArtifactoryClient#downloadTo(String, Path, boolean)} when a client is given
+     */
+    private static void download(VirtualFile dir, Path target, ArtifactoryClient client) throws IOException {
+        for (VirtualFile child : dir.list()) {
+            if (child.isDirectory()) {
+                download(child, target, client);
+            } else if (client != null) {
+                client.downloadTo(((ArtifactoryVirtualFile) child).getKey(), target.resolve(child.getName()), false);
+            } else {
+                try (InputStream is = child.open()) {
+                    Files.copy(is, target.resolve(child.getName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static void write(Path file, long size, Random random) throws IOException {
+        Files.createDirectories(file.getParent());
+        byte[] chunk = new byte[(int) Math.min(size, 1024 * 1024)];
+        try (OutputStream os = Files.newOutputStream(file)) {
+            long remaining = size;
+            while (remaining > 0) {
+                random.nextBytes(chunk);
+                int length = (int) Math.min(remaining, chunk.length);
+                os.write(chunk, 0, length);
+                remaining -= length;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void execute() throws Exception;
+    }
+
+    private final class Report {
+        private final String scenario;
+        private final StringBuilder rows = new StringBuilder();
+
+        private Report(String scenario) {
+            this.scenario = scenario;
+        }
+
+        private void measure(String operation, int files, long bytes, Operation body) throws Exception {
+            standIn.resetCounters();
+            long start = System.nanoTime();
+            body.execute();
+            double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+            rows.append(String.format(
+                    "%-10s %8d files %10.1f files/s %10.2f MB/s %8.2f s  requests=%s%n",
+                    operation,
+                    files,
+                    files / seconds,
+                    bytes / seconds / (1024 * 1024),
+                    seconds,
+                    standIn.getRequestCounts()));
+        }
+
+        private void write() throws IOException {
+            String header = String.format(
+                    "== %s (latency=%dms, bandwidth=%s, errorRate=%.3f)%n",
+                    scenario, LATENCY_MILLIS, BANDWIDTH == 0 ? "unlimited" : BANDWIDTH + " B/s", ERROR_RATE);
+            String text = header + rows;
+            LOGGER.info(text);
+            Files.createDirectories(REPORT.toAbsolutePath().getParent());
+            Files.writeString(
+                    REPORT,
+                    text,
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        }
+    }
+}
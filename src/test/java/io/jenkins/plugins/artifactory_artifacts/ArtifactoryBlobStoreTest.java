@@ -0,0 +1,88 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+@WireMockTest
+public class ArtifactoryBlobStoreTest extends BaseTest {
+
+    private static final String SHA = "ab" + "0".repeat(62);
+
+    @Test
+    public void shouldDeleteBlobWhenLastReferenceIsReleased(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        ArtifactoryBlobStore store = ArtifactoryBlobStore.get();
+        assertThat(ArtifactoryBlobStore.blobPath(SHA), is("jenkins/@cas/ab/" + SHA));
+
+        store.acquire(List.of(SHA));
+        store.acquire(List.of(SHA));
+        assertThat(store.getReferenceCount(SHA), is(2));
+
+        assertThat(store.release(List.of(SHA)).isEmpty(), is(true));
+        assertThat(store.release(List.of(SHA)), contains(SHA));
+        assertThat(store.getReferenceCount(SHA), is(0));
+    }
+
+    @Test
+    public void shouldWaitForTheDeletionOfAReusedBlob(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        WireMock wireMock = wmRuntimeInfo.getWireMock();
+        wireMock.register(WireMock.delete(WireMock.urlMatching("/my-generic-repo/jenkins/@cas/.*"))
+                .willReturn(WireMock.noContent().withFixedDelay(1000)));
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        ArtifactoryBlobStore store = ArtifactoryBlobStore.get();
+        ArtifactoryDeletionQueue queue = ArtifactoryDeletionQueue.get();
+
+        store.acquire(List.of(SHA));
+        store.release(List.of(SHA));
+        for (int i = 0; i < 100 && queue.getInFlight() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(queue.getInFlight(), is(1));
+
+        // Too late to cancel, the blob must be uploaded again once deleted
+        store.acquire(List.of(SHA));
+        assertThat(queue.getInFlight(), is(0));
+        assertThat(queue.isQueued(ArtifactoryBlobStore.blobPath(SHA)), is(false));
+        assertThat(store.getReferenceCount(SHA), is(1));
+    }
+
+    @Test
+    public void shouldOnlyRecognizeManifestsOfBuildsAndStashes(JenkinsRule jenkinsRule) {
+        assertThat(ArtifactoryBlobStore.isManifest("jenkins/my-job/1/manifest.json"), is(true));
+        assertThat(ArtifactoryBlobStore.isManifest("jenkins/folder/my-job/12/stashes/build.json"), is(true));
+        assertThat(ArtifactoryBlobStore.isManifest("jenkins/my-job/1/artifacts/manifest.json"), is(false));
+        assertThat(ArtifactoryBlobStore.isManifest("jenkins/my-job/1/artifacts/out/2/manifest.json"), is(false));
+        assertThat(ArtifactoryBlobStore.isManifest("jenkins/my-job/1/artifacts/out/2/stashes/x.json"), is(false));
+        assertThat(ArtifactoryBlobStore.isManifest("jenkins/my-job/1/stashes/build/shards.json"), is(false));
+    }
+
+    @Test
+    public void shouldResolveLogicalPathsThroughManifest(JenkinsRule jenkinsRule) throws Exception {
+        ArtifactoryManifest manifest = new ArtifactoryManifest();
+        manifest.put("a.txt", new ArtifactoryManifest.Entry(SHA, "sha1", 5, 0));
+        manifest.put("dir/b.txt", new ArtifactoryManifest.Entry(SHA, "sha1", 5, 0));
+        manifest.put("dir/sub/c.txt", new ArtifactoryManifest.Entry("cd" + SHA.substring(2), null, 7, 0));
+
+        ArtifactoryManifest parsed = ArtifactoryManifest.parse(new ByteArrayInputStream(manifest.toJson()));
+
+        assertThat(parsed.getBlobs().size(), is(2));
+        assertThat(parsed.children(""), contains("a.txt", "dir"));
+        assertThat(parsed.children("dir"), contains("b.txt", "sub"));
+        assertThat(parsed.isDirectory("dir/sub"), is(true));
+        assertThat(parsed.isDirectory("dir/b.txt"), is(false));
+        assertThat(parsed.get("dir/sub/c.txt").getSize(), is(7L));
+    }
+}
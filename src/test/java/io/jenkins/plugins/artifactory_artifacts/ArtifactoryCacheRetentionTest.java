@@ -0,0 +1,50 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+@WireMockTest
+public class ArtifactoryCacheRetentionTest extends BaseTest {
+
+    @Test
+    public void shouldExpireCachesByLastRestore(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        WireMock wireMock = wmRuntimeInfo.getWireMock();
+        ArtifactoryGenericArtifactConfig config = configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        wireMock.register(WireMock.post(WireMock.urlEqualTo("/api/search/aql"))
+                .withRequestBody(WireMock.containing("\"path\":{\"$match\":\"jenkins/@caches/*\"}"))
+                .withRequestBody(WireMock.containing("\"property\""))
+                .willReturn(WireMock.okJson("{\"results\": ["
+                        // Never restored
+                        + item("unused.tgz", "\"properties\": []")
+                        // Restored before the cutoff
+                        + "," + item("stale.tgz", lastUsed("2024-02-01T00:00:00.000Z"))
+                        // Restored after the cutoff
+                        + "," + item("used.tgz", lastUsed("2024-03-10T00:00:00.000Z"))
+                        + "]}")));
+
+        List<String> expired =
+                ArtifactoryCacheRetention.expire(config, Instant.parse("2024-03-01T00:00:00Z").toEpochMilli());
+
+        assertThat(expired, is(List.of("jenkins/@caches/job/unused.tgz", "jenkins/@caches/job/stale.tgz")));
+    }
+
+    private static String lastUsed(String date) {
+        return "\"properties\": [{\"key\": \"" + ArtifactoryCacheStep.LAST_USED + "\", \"value\": \"" + date + "\"}]";
+    }
+
+    private static String item(String name, String properties) {
+        return "{\"repo\": \"my-generic-repo\", \"path\": \"jenkins/@caches/job\", \"name\": \"" + name + "\","
+                + " \"created\": \"2024-01-01T00:00:00.000Z\", " + properties + "}";
+    }
+}
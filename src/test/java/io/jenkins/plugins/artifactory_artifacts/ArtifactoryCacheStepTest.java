@@ -0,0 +1,102 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+public class ArtifactoryCacheStepTest extends BaseTest {
+
+    private ArtifactoryStandIn standIn;
+
+    @BeforeEach
+    public void startStandIn() throws IOException {
+        standIn = new ArtifactoryStandIn("my-generic-repo");
+    }
+
+    @AfterEach
+    public void stopStandIn() {
+        standIn.close();
+    }
+
+    @Test
+    public void shouldRestoreCachesAcrossBuilds(JenkinsRule jenkinsRule) throws Exception {
+        configureConfig(jenkinsRule, standIn.getPort(), "jenkins/");
+        WorkflowJob job = jenkinsRule.createProject(WorkflowJob.class, "cached");
+
+        WorkflowRun run = jenkinsRule.buildAndAssertSuccess(withLockFile(job, "v1"));
+        jenkinsRule.assertLogContains("No cache found", run);
+        jenkinsRule.assertLogContains("Downloading dependencies", run);
+        assertThat(standIn.getFileCount(), is(1));
+
+        // Same lock file, the exact key is restored and not saved again
+        run = jenkinsRule.buildAndAssertSuccess(withLockFile(job, "v1"));
+        jenkinsRule.assertLogNotContains("Downloading dependencies", run);
+        jenkinsRule.assertLogContains("Dependencies restored", run);
+        assertThat(standIn.getFileCount(), is(1));
+        // Each restore records the use of the cache for its retention
+        assertThat(
+                standIn.getProperties(ArtifactoryCacheStep.cachePath("cached", "deps-" + hash("v1")))
+                        .containsKey(ArtifactoryCacheStep.LAST_USED),
+                is(true));
+
+        // Changed lock file, restored from the restore key then saved under the new key
+        run = jenkinsRule.buildAndAssertSuccess(withLockFile(job, "v2"));
+        jenkinsRule.assertLogNotContains("Downloading dependencies", run);
+        jenkinsRule.assertLogContains("No cache found", run);
+        assertThat(standIn.getFileCount(), is(2));
+    }
+
+    @Test
+    public void shouldNotShareCachesAcrossTopLevelItems(JenkinsRule jenkinsRule) throws Exception {
+        configureConfig(jenkinsRule, standIn.getPort(), "jenkins/");
+        jenkinsRule.buildAndAssertSuccess(withLockFile(jenkinsRule.createProject(WorkflowJob.class, "first"), "v1"));
+
+        WorkflowRun run = jenkinsRule.buildAndAssertSuccess(
+                withLockFile(jenkinsRule.createProject(WorkflowJob.class, "second"), "v1"));
+        jenkinsRule.assertLogContains("No cache found", run);
+        jenkinsRule.assertLogContains("Downloading dependencies", run);
+        assertThat(standIn.getFileCount(), is(2));
+    }
+
+    /**
+     * Hash of the lock file appended to the cache key
+     */
+    private static String hash(String lockFile) throws Exception {
+        MessageDigest hash = MessageDigest.getInstance("SHA-256");
+        hash.update("lock.txt".getBytes(StandardCharsets.UTF_8));
+        hash.update(MessageDigest.getInstance("SHA-256").digest(lockFile.getBytes(StandardCharsets.UTF_8)));
+        return HexFormat.of().formatHex(hash.digest());
+    }
+
+    private static WorkflowJob withLockFile(WorkflowJob job, String version) {
+        job.setDefinition(new CpsFlowDefinition(
+                "node {\n"
+                        + "  deleteDir()\n"
+                        + "  writeFile file: 'lock.txt', text: '" + version + "'\n"
+                        + "  artifactoryCache(path: 'deps', key: 'deps', hashFiles: 'lock.txt',"
+                        + " restoreKeys: ['deps-']) {\n"
+                        + "    if (fileExists('deps/lib.txt')) {\n"
+                        + "      echo 'Dependencies restored'\n"
+                        + "    } else {\n"
+                        + "      echo 'Downloading dependencies'\n"
+                        + "      writeFile file: 'deps/lib.txt', text: 'lib'\n"
+                        + "    }\n"
+                        + "  }\n"
+                        + "}",
+                true));
+        return job;
+    }
+}
@@ -0,0 +1,249 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+@WireMockTest
+public class ArtifactoryClientTest extends BaseTest {
+
+    @Test
+    public void shouldCopyByChecksumWithoutArtifactoryPro(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        WireMock wireMock = wmRuntimeInfo.getWireMock();
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+
+        // Copy is a Pro feature
+        wireMock.register(WireMock.post(WireMock.urlMatching("/api/copy/.*"))
+                .willReturn(WireMock.badRequest().withBody("This REST API is available only in Artifactory Pro")));
+        String storagePath = "/api/storage/my-generic-repo/jenkins/my-job/1/artifacts";
+        wireMock.register(WireMock.get(WireMock.urlEqualTo(storagePath))
+                .willReturn(WireMock.okJson("{\"children\": [{\"folder\": true, \"uri\": \"/sub\"}]}")));
+        wireMock.register(WireMock.get(WireMock.urlPathEqualTo(storagePath))
+                .withQueryParam("deep", WireMock.equalTo("1"))
+                .willReturn(WireMock.okJson("{\"files\": ["
+                        + "{\"uri\": \"/a.txt\", \"size\": 5, \"folder\": false, \"sha1\": \"aaa\"},"
+                        + "{\"uri\": \"/sub/b.txt\", \"size\": 7, \"folder\": false, \"sha1\": \"bbb\"}"
+                        + "]}")));
+        wireMock.register(WireMock.put(WireMock.urlMatching("/my-generic-repo/jenkins/my-job/2/artifacts/.*"))
+                .withHeader("X-Checksum-Deploy", WireMock.equalTo("true"))
+                .willReturn(WireMock.created()));
+
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                "http://localhost:" + wmRuntimeInfo.getHttpPort(), "my-generic-repo", Utils.getCredentials())) {
+            client.copy("jenkins/my-job/1/artifacts", "jenkins/my-job/2/artifacts");
+        }
+
+        wireMock.verifyThat(WireMock.putRequestedFor(
+                        WireMock.urlEqualTo("/my-generic-repo/jenkins/my-job/2/artifacts/a.txt"))
+                .withHeader("X-Checksum-Sha1", WireMock.equalTo("aaa")));
+        wireMock.verifyThat(WireMock.putRequestedFor(
+                        WireMock.urlEqualTo("/my-generic-repo/jenkins/my-job/2/artifacts/sub/b.txt"))
+                .withHeader("X-Checksum-Sha1", WireMock.equalTo("bbb")));
+        wireMock.verifyThat(0, WireMock.getRequestedFor(WireMock.urlMatching("/my-generic-repo/.*")));
+    }
+
+    @Test
+    public void shouldNotCopyByChecksumWhenServerSideCopyFails(
+            JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        WireMock wireMock = wmRuntimeInfo.getWireMock();
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        wireMock.register(WireMock.post(WireMock.urlMatching("/api/(copy|move)/.*"))
+                .willReturn(WireMock.unauthorized().withBody("{\"errors\": [{\"status\": 401}]}")));
+
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                "http://localhost:" + wmRuntimeInfo.getHttpPort(), "my-generic-repo", Utils.getCredentials())) {
+            assertThrows(
+                    IOException.class, () -> client.copy("jenkins/my-job/1/artifacts", "jenkins/my-job/2/artifacts"));
+            assertThrows(
+                    IOException.class, () -> client.move("jenkins/my-job/1/artifacts", "jenkins/my-job/2/artifacts"));
+        }
+
+        // Neither listed for a copy by checksum nor deleted
+        wireMock.verifyThat(0, WireMock.getRequestedFor(WireMock.urlMatching("/api/storage/.*")));
+        wireMock.verifyThat(0, WireMock.putRequestedFor(WireMock.anyUrl()));
+        wireMock.verifyThat(0, WireMock.deleteRequestedFor(WireMock.anyUrl()));
+    }
+
+    @Test
+    public void shouldOverlapRequestsWithAsyncApi(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        WireMock wireMock = wmRuntimeInfo.getWireMock();
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        String storagePath = "/api/storage/my-generic-repo/jenkins/my-job/1/artifacts";
+        wireMock.register(WireMock.get(WireMock.urlEqualTo(storagePath + "/"))
+                .willReturn(WireMock.okJson("{\"children\": ["
+                        + "{\"folder\": false, \"uri\": \"/a.txt\"}, {\"folder\": true, \"uri\": \"/sub\"}]}")));
+        wireMock.register(WireMock.get(WireMock.urlEqualTo(storagePath + "/a.txt"))
+                .willReturn(WireMock.okJson("{\"size\": \"5\", \"lastModified\": \"2024-03-17T13:20:19.836Z\"}")
+                        .withFixedDelay(500)));
+        wireMock.register(WireMock.get(WireMock.urlEqualTo(storagePath + "/sub"))
+                .willReturn(WireMock.okJson("{\"children\": [], \"lastModified\": \"2024-03-17T13:20:19.836Z\"}")
+                        .withFixedDelay(500)));
+        wireMock.register(
+                WireMock.put(WireMock.urlMatching("/my-generic-repo/.*")).willReturn(WireMock.okJson("{}")));
+
+        Path file = Files.createTempFile("artifact", ".txt");
+        Files.writeString(file, "Hello");
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                "http://localhost:" + wmRuntimeInfo.getHttpPort(), "my-generic-repo", Utils.getCredentials())) {
+            List<CompletableFuture<ArtifactoryClient.Checksums>> uploads = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                uploads.add(client.uploadArtifactAsync(
+                        file, "jenkins/my-job/1/artifacts/file-" + i + ".txt", Map.of("jenkins.job", "my-job")));
+            }
+            CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+            long start = System.nanoTime();
+            List<ArtifactoryClient.FileInfo> files = client.listAsync("jenkins/my-job/1/artifacts")
+                    .get(10, TimeUnit.SECONDS);
+            // Both children are looked up at the same time
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(1000L));
+            assertThat(files, hasSize(2));
+            assertThat(files.get(0).getSize(), is(5L));
+            assertThat(files.get(0).getLastUpdated(), is(1710681619836L));
+            assertThat(files.get(1).isDirectory(), is(true));
+        } finally {
+            Files.delete(file);
+        }
+
+        wireMock.verifyThat(WireMock.putRequestedFor(WireMock.urlEqualTo(
+                        "/my-generic-repo/jenkins/my-job/1/artifacts/file-3.txt;jenkins.job=my-job"))
+                .withRequestBody(WireMock.equalTo("Hello")));
+    }
+
+    @Test
+    public void shouldVerifyChecksumsComputedWhileUploading(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        WireMock wireMock = wmRuntimeInfo.getWireMock();
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        String sha1 = "f7ff9e8b7bb2e09b70935a5d785e0cc5d9d0abf0";
+        wireMock.register(WireMock.put(WireMock.urlEqualTo("/my-generic-repo/jenkins/ok.txt"))
+                .willReturn(WireMock.okJson("{\"checksums\": {\"sha1\": \"" + sha1 + "\"}}")));
+        wireMock.register(WireMock.put(WireMock.urlEqualTo("/my-generic-repo/jenkins/corrupted.txt"))
+                .willReturn(WireMock.okJson("{\"checksums\": {\"sha1\": \"0000\"}}")));
+
+        Path file = Files.createTempFile("artifact", ".txt");
+        Files.writeString(file, "Hello");
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                "http://localhost:" + wmRuntimeInfo.getHttpPort(), "my-generic-repo", Utils.getCredentials())) {
+            ArtifactoryClient.Checksums checksums = client.uploadArtifact(file, "jenkins/ok.txt");
+            assertThat(checksums.md5(), is("8b1a9953c4611296a827abf8c47804d7"));
+            assertThat(checksums.sha1(), is(sha1));
+            assertThat(
+                    checksums.sha256(), is("185f8db32271fe25f561a6fc938b2e264306ec304eda518007d1764826381969"));
+
+            assertThrows(IOException.class, () -> client.uploadArtifact(file, "jenkins/corrupted.txt"));
+            // File changed since it was hashed
+            assertThrows(
+                    IOException.class,
+                    () -> client.uploadArtifact(
+                            file, "jenkins/ok.txt", Map.of(), new ArtifactoryClient.Checksums(null, "1234", null)));
+        } finally {
+            Files.delete(file);
+        }
+
+        wireMock.verifyThat(WireMock.putRequestedFor(WireMock.urlEqualTo("/my-generic-repo/jenkins/ok.txt"))
+                .withHeader("X-Checksum-Sha1", WireMock.equalTo("1234")));
+    }
+
+    @Test
+    public void shouldVerifyDownloadsAgainstChecksumHeaders(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        WireMock wireMock = wmRuntimeInfo.getWireMock();
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        wireMock.register(WireMock.get(WireMock.urlEqualTo("/my-generic-repo/jenkins/ok.txt"))
+                .willReturn(WireMock.ok("Hello")
+                        .withHeader("X-Checksum-Sha1", "f7ff9e8b7bb2e09b70935a5d785e0cc5d9d0abf0")));
+        wireMock.register(WireMock.get(WireMock.urlEqualTo("/my-generic-repo/jenkins/corrupted.txt"))
+                .willReturn(WireMock.ok("Hellp")
+                        .withHeader("X-Checksum-Sha1", "f7ff9e8b7bb2e09b70935a5d785e0cc5d9d0abf0")));
+
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                "http://localhost:" + wmRuntimeInfo.getHttpPort(), "my-generic-repo", Utils.getCredentials())) {
+            try (InputStream is = client.downloadArtifact("jenkins/ok.txt")) {
+                assertThat(new String(is.readAllBytes(), StandardCharsets.UTF_8), is("Hello"));
+            }
+            try (InputStream is = client.downloadArtifact("jenkins/corrupted.txt")) {
+                assertThrows(IOException.class, is::readAllBytes);
+            }
+
+            Path file = Files.createTempFile("artifact", ".txt");
+            try {
+                assertThat(client.downloadTo("jenkins/ok.txt", file, true), is(5L));
+                assertThat(Files.readString(file), is("Hello"));
+                assertThrows(IOException.class, () -> client.downloadTo("jenkins/corrupted.txt", file, false));
+                // No partial or corrupted file is left behind
+                assertThat(Files.exists(file), is(false));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotResumeUnverifiedDownloadsIgnoringRanges(
+            JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        WireMock wireMock = wmRuntimeInfo.getWireMock();
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        wireMock.register(WireMock.get(WireMock.urlEqualTo("/my-generic-repo/jenkins/cut.txt"))
+                .withHeader("Range", WireMock.absent())
+                .willReturn(WireMock.aResponse().withFault(Fault.MALFORMED_RESPONSE_CHUNK)));
+        // The resumed request gets the whole body again, without a checksum proving it is the same content
+        wireMock.register(WireMock.get(WireMock.urlEqualTo("/my-generic-repo/jenkins/cut.txt"))
+                .withHeader("Range", WireMock.matching("bytes=.*"))
+                .willReturn(WireMock.ok("Hello")));
+
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                "http://localhost:" + wmRuntimeInfo.getHttpPort(), "my-generic-repo", Utils.getCredentials())) {
+            try (InputStream is = client.downloadArtifact("jenkins/cut.txt")) {
+                assertThrows(IOException.class, is::readAllBytes);
+            }
+        }
+    }
+
+    @Test
+    public void shouldNotSendCredentialsToOtherHostsOnRedirects(
+            JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo) throws Exception {
+        WireMock wireMock = wmRuntimeInfo.getWireMock();
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        // Same server under another host name, so another origin
+        wireMock.register(WireMock.get(WireMock.urlEqualTo("/my-generic-repo/jenkins/moved.txt"))
+                .willReturn(WireMock.temporaryRedirect(
+                        "http://127.0.0.1:" + wmRuntimeInfo.getHttpPort() + "/cdn/moved.txt")));
+        wireMock.register(
+                WireMock.get(WireMock.urlEqualTo("/cdn/moved.txt")).willReturn(WireMock.ok("Hello")));
+
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                "http://localhost:" + wmRuntimeInfo.getHttpPort(), "my-generic-repo", Utils.getCredentials())) {
+            try (InputStream is = client.downloadArtifact("jenkins/moved.txt")) {
+                assertThat(new String(is.readAllBytes(), StandardCharsets.UTF_8), is("Hello"));
+            }
+        }
+        wireMock.verifyThat(WireMock.getRequestedFor(WireMock.urlEqualTo("/my-generic-repo/jenkins/moved.txt"))
+                .withHeader("Authorization", WireMock.matching("Basic .*")));
+        wireMock.verifyThat(
+                WireMock.getRequestedFor(WireMock.urlEqualTo("/cdn/moved.txt")).withoutHeader("Authorization"));
+    }
+}
@@ -0,0 +1,80 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+@WireMockTest
+public class ArtifactoryDeletionQueueTest extends BaseTest {
+
+    @Test
+    public void shouldCoalescePathsUnderQueuedFolder(JenkinsRule jenkinsRule) {
+        // Not configured, nothing is drained
+        ArtifactoryDeletionQueue queue = ArtifactoryDeletionQueue.get();
+        assertThat(queue.enqueue("jenkins/my-job/1/"), is(true));
+        assertThat(queue.enqueue("jenkins/my-job/1/artifacts"), is(true));
+        assertThat(queue.enqueue("jenkins/my-job/1/stashes/foo.tgz"), is(true));
+        assertThat(queue.enqueue("/"), is(false));
+
+        assertThat(queue.getQueueDepth(), is(1));
+        assertThat(queue.isQueued("jenkins/my-job/1/artifacts/a.txt"), is(true));
+        assertThat(queue.isQueued("jenkins/my-job/2"), is(false));
+    }
+
+    @Test
+    public void shouldDrainQueueInBackground(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        WireMock wireMock = wmRuntimeInfo.getWireMock();
+        wireMock.register(WireMock.delete(WireMock.urlMatching("/my-generic-repo/jenkins/my-job/.*"))
+                .willReturn(WireMock.noContent()));
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+
+        ArtifactoryDeletionQueue queue = ArtifactoryDeletionQueue.get();
+        for (int i = 1; i <= 5; i++) {
+            queue.enqueue("jenkins/my-job/" + i + "/");
+        }
+        for (int i = 0; i < 100 && queue.getQueueDepth() > 0; i++) {
+            Thread.sleep(100);
+        }
+
+        assertThat(queue.getQueueDepth(), is(0));
+        wireMock.verifyThat(5, WireMock.deleteRequestedFor(WireMock.urlMatching("/my-generic-repo/jenkins/my-job/.*")));
+    }
+
+    @Test
+    public void shouldKeepBuildsOfAJobCreatedWithTheNameOfADeletedJob(JenkinsRule jenkinsRule) throws Exception {
+        try (ArtifactoryStandIn standIn = new ArtifactoryStandIn("my-generic-repo").withLatency(200)) {
+            configureConfig(jenkinsRule, standIn.getPort(), "jenkins/");
+            String script = "node {\n"
+                    + "  writeFile file: 'out.txt', text: 'new'\n"
+                    + "  archiveArtifacts 'out.txt'\n"
+                    + "}";
+            WorkflowJob deleted = jenkinsRule.createProject(WorkflowJob.class, "reused");
+            deleted.setDefinition(new CpsFlowDefinition(script, true));
+            jenkinsRule.buildAndAssertSuccess(deleted);
+            deleted.delete();
+
+            // Created before the deletion of the folder of the deleted job completed
+            WorkflowJob job = jenkinsRule.createProject(WorkflowJob.class, "reused");
+            job.setDefinition(new CpsFlowDefinition(script, true));
+            WorkflowRun run = jenkinsRule.buildAndAssertSuccess(job);
+            ArtifactoryDeletionQueue queue = ArtifactoryDeletionQueue.get();
+            for (int i = 0; i < 100 && queue.getQueueDepth() > 0; i++) {
+                Thread.sleep(100);
+            }
+
+            assertThat(queue.getQueueDepth(), is(0));
+            assertThat(run.getArtifactManager().root().child("out.txt").isFile(), is(true));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+public class ArtifactoryEagerUploadStepTest extends BaseTest {
+
+    private ArtifactoryStandIn standIn;
+
+    @BeforeEach
+    public void startStandIn() throws IOException {
+        standIn = new ArtifactoryStandIn("my-generic-repo");
+    }
+
+    @AfterEach
+    public void stopStandIn() {
+        standIn.close();
+    }
+
+    @Test
+    public void shouldOnlyUploadStragglersWhenArchiving(JenkinsRule jenkinsRule) throws Exception {
+        configureConfig(jenkinsRule, standIn.getPort(), "jenkins/");
+        WorkflowJob job = jenkinsRule.createProject(WorkflowJob.class, "eager");
+        job.setDefinition(new CpsFlowDefinition(
+                "node {\n"
+                        + "  artifactoryEagerUpload(includes: 'out/*.bin', quietPeriod: 0) {\n"
+                        + "    writeFile file: 'out/early.bin', text: 'early'\n"
+                        + "    sleep 5\n"
+                        + "  }\n"
+                        + "  writeFile file: 'out/late.bin', text: 'late'\n"
+                        + "  archiveArtifacts 'out/*.bin'\n"
+                        + "}",
+                true));
+
+        WorkflowRun run = jenkinsRule.buildAndAssertSuccess(job);
+        jenkinsRule.assertLogContains("Uploaded 1 file(s) of 5 bytes ahead of archiving", run);
+        assertThat(read(run, "out/early.bin"), is("early"));
+        assertThat(read(run, "out/late.bin"), is("late"));
+        // The early file was moved rather than uploaded again
+        assertThat(standIn.getRequestCounts().get("PUT"), is(2L));
+        try (ArtifactoryClient client = newClient()) {
+            assertThat(client.isFolder("jenkins/eager/1/" + ArtifactoryEagerUploads.FOLDER), is(false));
+        }
+    }
+
+    @Test
+    public void shouldUploadFilesModifiedAfterTheirUploadAgain(JenkinsRule jenkinsRule) throws Exception {
+        configureConfig(jenkinsRule, standIn.getPort(), "jenkins/");
+        WorkflowJob job = jenkinsRule.createProject(WorkflowJob.class, "modified");
+        job.setDefinition(new CpsFlowDefinition(
+                "node {\n"
+                        + "  artifactoryEagerUpload(includes: 'out/*.bin', quietPeriod: 0) {\n"
+                        + "    writeFile file: 'out/app.bin', text: 'v1'\n"
+                        + "    sleep 5\n"
+                        + "  }\n"
+                        + "  writeFile file: 'out/app.bin', text: 'version 2'\n"
+                        + "  archiveArtifacts 'out/*.bin'\n"
+                        + "}",
+                true));
+
+        WorkflowRun run = jenkinsRule.buildAndAssertSuccess(job);
+        jenkinsRule.assertLogContains("Uploaded 1 file(s)", run);
+        assertThat(read(run, "out/app.bin"), is("version 2"));
+    }
+
+    @Test
+    public void shouldDeleteFilesStagedBeforeARestart(JenkinsRule jenkinsRule) throws Exception {
+        configureConfig(jenkinsRule, standIn.getPort(), "jenkins/");
+        FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(jenkinsRule.createFreeStyleProject("restarted"));
+        build.pickArtifactManager();
+        String staged = "jenkins/restarted/1/" + ArtifactoryEagerUploads.FOLDER + "/out/app.bin";
+        try (ArtifactoryClient client = newClient()) {
+            client.uploadContent("app".getBytes(StandardCharsets.UTF_8), staged);
+
+            // Nothing staged is known in memory, as after a controller restart
+            new ArtifactoryEagerUploads.Cleanup().onCompleted(build, TaskListener.NULL);
+            for (int i = 0; i < 100 && client.isFile(staged); i++) {
+                Thread.sleep(100);
+            }
+            assertThat(client.isFile(staged), is(false));
+        }
+    }
+
+    private static String read(WorkflowRun run, String path) throws IOException {
+        try (InputStream is = run.getArtifactManager().root().child(path).open()) {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private ArtifactoryClient newClient() {
+        return new ArtifactoryClient(
+                "http://localhost:" + standIn.getPort(), "my-generic-repo", Utils.getCredentials());
+    }
+}
@@ -0,0 +1,133 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class ArtifactoryExecutorsTest {
+
+    @Test
+    public void shouldRunTaskForEachItemOnBoundedWorkers() throws Exception {
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ArtifactoryExecutors.forEachBounded(IntStream.range(0, 200).iterator(), 4, null, i -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(1);
+            running.decrementAndGet();
+            done.incrementAndGet();
+        });
+
+        assertThat(done.get(), is(200));
+        assertThat(maxRunning.get(), lessThanOrEqualTo(4));
+    }
+
+    @Test
+    public void shouldPropagateTheFirstFailure() {
+        IOException e = assertThrows(
+                IOException.class,
+                () -> ArtifactoryExecutors.forEachBounded(IntStream.range(0, 100).iterator(), 4, null, i -> {
+                    if (i == 10) {
+                        throw new IOException("Failed on 10");
+                    }
+                }));
+        assertThat(e.getMessage(), is("Failed on 10"));
+
+        e = assertThrows(
+                IOException.class,
+                () -> ArtifactoryExecutors.forEachBounded(IntStream.range(0, 100).iterator(), 4, null, i -> {
+                    throw new IllegalStateException("Not an I/O failure");
+                }));
+        assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+    }
+
+    @Test
+    public void shouldStopHandingOutItemsAfterAFailure() {
+        AtomicInteger consumed = new AtomicInteger();
+        assertThrows(
+                IOException.class,
+                () -> ArtifactoryExecutors.forEachBounded(
+                        IntStream.range(0, 100_000).peek(i -> consumed.incrementAndGet()).iterator(),
+                        2,
+                        null,
+                        i -> {
+                            throw new IOException("Failed");
+                        }));
+        assertThat(consumed.get(), lessThan(100_000));
+    }
+
+    @Test
+    public void shouldShutDownTheWorkers() throws Exception {
+        ExecutorService virtual = Executors.newCachedThreadPool();
+        ArtifactoryExecutors.forEachBounded(IntStream.range(0, 10).iterator(), 2, virtual, i -> {});
+        assertThat(virtual.isShutdown(), is(true));
+
+        virtual = Executors.newCachedThreadPool();
+        ExecutorService failing = virtual;
+        assertThrows(
+                IOException.class,
+                () -> ArtifactoryExecutors.forEachBounded(IntStream.range(0, 10).iterator(), 2, failing, i -> {
+                    throw new IOException("Failed");
+                }));
+        assertThat(failing.isShutdown(), is(true));
+    }
+
+    @Test
+    public void shouldFallBackToPlatformThreads() {
+        ExecutorService executor = ArtifactoryExecutors.newTransferExecutor(3, null);
+        try {
+            assertThat(executor, instanceOf(ThreadPoolExecutor.class));
+            assertThat(((ThreadPoolExecutor) executor).getMaximumPoolSize(), is(3));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldNotDeadlockWhenTasksFanOutAgain() {
+        // More outer tasks than connection permits, each waiting for transfers of its own
+        int outer = ArtifactoryExecutors.MAX_CONNECTIONS * 2;
+        AtomicInteger done = new AtomicInteger();
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> ArtifactoryExecutors.forEachBounded(
+                IntStream.range(0, outer).iterator(),
+                ArtifactoryExecutors.MAX_CONNECTIONS,
+                Executors.newCachedThreadPool(),
+                i -> {
+                    ExecutorService nested =
+                            ArtifactoryExecutors.newTransferExecutor(4, Executors.newCachedThreadPool());
+                    try {
+                        List<Future<?>> transfers = new ArrayList<>();
+                        for (int j = 0; j < 4; j++) {
+                            transfers.add(nested.submit(done::incrementAndGet));
+                        }
+                        for (Future<?> transfer : transfers) {
+                            transfer.get();
+                        }
+                    } finally {
+                        nested.shutdownNow();
+                    }
+                    ArtifactoryExecutors.forEachBounded(
+                            IntStream.range(0, 4).iterator(),
+                            4,
+                            Executors.newCachedThreadPool(),
+                            j -> done.incrementAndGet());
+                }));
+        assertThat(done.get(), is(outer * 8));
+    }
+}
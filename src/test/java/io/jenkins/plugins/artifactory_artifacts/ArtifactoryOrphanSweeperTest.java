@@ -0,0 +1,127 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+@WireMockTest
+public class ArtifactoryOrphanSweeperTest extends BaseTest {
+
+    @Test
+    public void shouldReportOrphanBuildFolders(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject("sweep");
+        jenkinsRule.buildAndAssertSuccess(project);
+        project.updateNextBuildNumber(10);
+
+        String folderPath = "/api/storage/my-generic-repo/jenkins/sweep";
+        String jobFolderResponse = "{"
+                + "\"children\": [{\"folder\": true, \"uri\": \"/1\"}, {\"folder\": true, \"uri\": \"/5\"},"
+                + " {\"folder\": true, \"uri\": \"/child-job\"}, {\"folder\": true, \"uri\": \"/12\"}],"
+                + "\"created\": \"2024-03-17T13:20:19.836Z\","
+                + "\"createdBy\": \"admin\","
+                + "\"lastModified\": \"2024-03-17T13:20:19.836Z\","
+                + "\"lastUpdated\": \"2024-03-17T13:20:19.836Z\","
+                + "\"modifiedBy\": \"admin\","
+                + "\"path\": \"" + folderPath + "\","
+                + "\"repo\": \"my-generic-repo\","
+                + "\"uri\": \"http://localhost:" + wmRuntimeInfo.getHttpPort() + "/artifactory" + folderPath + "\""
+                + "}";
+        wmRuntimeInfo
+                .getWireMock()
+                .register(WireMock.get(WireMock.urlEqualTo(folderPath + "/"))
+                        .willReturn(WireMock.okJson(jobFolderResponse)));
+
+        // Storage root with the folder of a deleted job, of a job id no longer mapped and blobs left alone
+        register(
+                wmRuntimeInfo,
+                "jenkins",
+                "{\"folder\": true, \"uri\": \"/sweep\"}, {\"folder\": true, \"uri\": \"/deleted\"},"
+                        + " {\"folder\": true, \"uri\": \"/@jobs\"}, {\"folder\": true, \"uri\": \"/@cas\"}");
+        register(wmRuntimeInfo, "jenkins/deleted", "{\"folder\": true, \"uri\": \"/3\"}");
+        // Reserved names are sent encoded
+        register(wmRuntimeInfo, "jenkins/%40jobs", "{\"folder\": true, \"uri\": \"/unknown-id\"}");
+
+        ArtifactoryOrphanSweeper sweeper = ArtifactoryOrphanSweeper.get();
+        List<String> orphans = sweeper.sweep(TaskListener.NULL, true, 100);
+
+        assertThat(orphans, contains("jenkins/@jobs/unknown-id", "jenkins/deleted", "jenkins/sweep/5"));
+        assertThat(
+                sweeper.getReport(), contains("jenkins/@jobs/unknown-id", "jenkins/deleted", "jenkins/sweep/5"));
+        assertThat(sweeper.getCursor(), is(nullValue()));
+        assertThat(ArtifactoryDeletionQueue.get().isQueued("jenkins/sweep/5"), is(false));
+    }
+
+    @Test
+    public void shouldMatchBranchesNamedWithASlash(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        // Multibranch projects encode the slash of a branch name in the name of its job, stored as two folders
+        FreeStyleProject branch = new FreeStyleProject(jenkinsRule.jenkins, "feature%2Fx");
+        jenkinsRule.jenkins.putItem(branch);
+        jenkinsRule.buildAndAssertSuccess(branch);
+        branch.updateNextBuildNumber(10);
+
+        register(wmRuntimeInfo, "jenkins", "{\"folder\": true, \"uri\": \"/feature\"}");
+        // A numbered folder next to the branch must not make the folder of the branch look like a deleted job
+        register(
+                wmRuntimeInfo,
+                "jenkins/feature",
+                "{\"folder\": true, \"uri\": \"/7\"}, {\"folder\": true, \"uri\": \"/x\"}");
+        register(
+                wmRuntimeInfo,
+                "jenkins/feature/x",
+                "{\"folder\": true, \"uri\": \"/1\"}, {\"folder\": true, \"uri\": \"/3\"}");
+
+        List<String> orphans = ArtifactoryOrphanSweeper.get().sweep(TaskListener.NULL, true, 100);
+
+        assertThat(orphans, contains("jenkins/feature/x/3"));
+    }
+
+    @Test
+    public void shouldResumeFromTheLastScannedFolder(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        register(
+                wmRuntimeInfo,
+                "jenkins",
+                "{\"folder\": true, \"uri\": \"/first\"}, {\"folder\": true, \"uri\": \"/second\"}");
+        register(wmRuntimeInfo, "jenkins/first", "{\"folder\": true, \"uri\": \"/1\"}");
+        register(wmRuntimeInfo, "jenkins/second", "{\"folder\": true, \"uri\": \"/1\"}");
+
+        ArtifactoryOrphanSweeper sweeper = ArtifactoryOrphanSweeper.get();
+        assertThat(sweeper.sweep(TaskListener.NULL, true, 1), contains("jenkins/first"));
+        assertThat(sweeper.getCursor(), is("first"));
+        assertThat(sweeper.sweep(TaskListener.NULL, true, 1), contains("jenkins/second"));
+        assertThat(sweeper.getCursor(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldCompareFoldersInWalkOrder() {
+        assertThat(ArtifactoryOrphanSweeper.compare("a/b", "a-c") < 0, is(true));
+        assertThat(ArtifactoryOrphanSweeper.compare("a", "a/b") < 0, is(true));
+        assertThat(ArtifactoryOrphanSweeper.compare("b", "a/b") > 0, is(true));
+    }
+
+    private static void register(WireMockRuntimeInfo wmRuntimeInfo, String path, String children) {
+        String folderPath = "/api/storage/my-generic-repo/" + path;
+        wmRuntimeInfo
+                .getWireMock()
+                .register(WireMock.get(WireMock.urlEqualTo(folderPath + "/"))
+                        .willReturn(WireMock.okJson("{\"children\": [" + children + "], \"path\": \"/" + path
+                                + "\", \"repo\": \"my-generic-repo\"}")));
+    }
+}
@@ -0,0 +1,81 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.FreeStyleBuild;
+import hudson.model.StreamBuildListener;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+public class ArtifactoryPerFileStashTest extends BaseTest {
+
+    private ArtifactoryStandIn standIn;
+
+    @BeforeEach
+    public void startStandIn() throws IOException {
+        standIn = new ArtifactoryStandIn("my-generic-repo");
+    }
+
+    @AfterEach
+    public void stopStandIn() {
+        standIn.close();
+    }
+
+    @Test
+    public void shouldOnlyTransferFilesThatChanged(
+            JenkinsRule jenkinsRule, @TempDir Path workspace, @TempDir Path restored) throws Exception {
+        ArtifactoryGenericArtifactConfig config = configureConfig(jenkinsRule, standIn.getPort(), "per-file/");
+        config.setPerFileStashes(true);
+        FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(jenkinsRule.createFreeStyleProject());
+        ArtifactoryArtifactManager manager = new ArtifactoryArtifactManager(build, config);
+        Launcher launcher = jenkinsRule.createLocalLauncher();
+        StreamBuildListener listener = new StreamBuildListener(OutputStream.nullOutputStream(), StandardCharsets.UTF_8);
+        FilePath ws = new FilePath(workspace.toFile());
+        FilePath target = new FilePath(restored.toFile());
+
+        byte[] content = new byte[64 * 1024];
+        new Random(1).nextBytes(content);
+        Files.createDirectories(workspace.resolve("sub"));
+        Files.write(workspace.resolve("a.bin"), content);
+        Files.write(workspace.resolve("sub/b.bin"), content);
+        Files.writeString(workspace.resolve("sub/c.txt"), "initial");
+
+        // Identical files share a single blob
+        manager.stash("files", ws, launcher, new EnvVars(), listener, null, null, true, false);
+        assertThat(standIn.getBytesIn(), lessThan(2L * content.length));
+
+        // Unchanged files are deployed by checksum
+        Files.writeString(workspace.resolve("sub/c.txt"), "changed");
+        standIn.resetCounters();
+        manager.stash("files", ws, launcher, new EnvVars(), listener, null, null, true, false);
+        assertThat(standIn.getBytesIn(), lessThan((long) content.length));
+
+        manager.unstash("files", target, launcher, new EnvVars(), listener);
+        assertThat(Files.readAllBytes(restored.resolve("a.bin")), is(content));
+        assertThat(Files.readAllBytes(restored.resolve("sub/b.bin")), is(content));
+        assertThat(Files.readString(restored.resolve("sub/c.txt")), is("changed"));
+
+        // Files already up to date in the workspace are not downloaded again
+        Files.writeString(restored.resolve("sub/c.txt"), "edited");
+        standIn.resetCounters();
+        manager.unstash("files", target, launcher, new EnvVars(), listener);
+        assertThat(Files.readString(restored.resolve("sub/c.txt")), is("changed"));
+        assertThat(standIn.getBytesOut(), lessThan((long) content.length));
+    }
+}
@@ -0,0 +1,83 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class ArtifactoryRequestSchedulerTest {
+
+    @Test
+    public void shouldAdmitBuildRequestsBeforeBrowsing() throws Exception {
+        ArtifactoryRequestScheduler scheduler = new ArtifactoryRequestScheduler(1, 1, 1);
+        List<String> admitted = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            ArtifactoryRequestScheduler.Permit first = executor.submit(
+                            () -> scheduler.acquire(ArtifactoryRequestScheduler.Lane.BACKGROUND, "sweeper"))
+                    .get(10, TimeUnit.SECONDS);
+            assertThat(scheduler.getInFlight(), is(1));
+
+            Future<?> browse = executor.submit(() -> {
+                try (ArtifactoryRequestScheduler.Permit permit =
+                        scheduler.acquire(ArtifactoryRequestScheduler.Lane.BROWSE, "job-a")) {
+                    admitted.add("browse");
+                }
+                return null;
+            });
+            waitForWaiting(scheduler, ArtifactoryRequestScheduler.Lane.BROWSE);
+            Future<?> build = executor.submit(() -> {
+                try (ArtifactoryRequestScheduler.Permit permit =
+                        scheduler.acquire(ArtifactoryRequestScheduler.Lane.BUILD, "job-b")) {
+                    admitted.add("build");
+                }
+                return null;
+            });
+            waitForWaiting(scheduler, ArtifactoryRequestScheduler.Lane.BUILD);
+
+            first.close();
+            build.get(10, TimeUnit.SECONDS);
+            browse.get(10, TimeUnit.SECONDS);
+
+            assertThat(admitted, is(List.of("build", "browse")));
+            assertThat(scheduler.getInFlight(), is(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldCapBackgroundLane() throws Exception {
+        ArtifactoryRequestScheduler scheduler = new ArtifactoryRequestScheduler(4, 4, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ArtifactoryRequestScheduler.Permit first = executor.submit(
+                            () -> scheduler.acquire(ArtifactoryRequestScheduler.Lane.BACKGROUND, "sweeper"))
+                    .get(10, TimeUnit.SECONDS);
+            Future<ArtifactoryRequestScheduler.Permit> second = executor.submit(
+                    () -> scheduler.acquire(ArtifactoryRequestScheduler.Lane.BACKGROUND, "deletion-queue"));
+            waitForWaiting(scheduler, ArtifactoryRequestScheduler.Lane.BACKGROUND);
+            assertThat(scheduler.getInFlight(), is(1));
+
+            first.close();
+            second.get(10, TimeUnit.SECONDS).close();
+            assertThat(scheduler.getInFlight(), is(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void waitForWaiting(ArtifactoryRequestScheduler scheduler, ArtifactoryRequestScheduler.Lane lane)
+            throws InterruptedException {
+        for (int i = 0; i < 100 && scheduler.getWaiting(lane) == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(scheduler.getWaiting(lane), is(1));
+    }
+}
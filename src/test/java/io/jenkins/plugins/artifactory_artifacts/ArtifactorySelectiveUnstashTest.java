@@ -0,0 +1,85 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.FreeStyleBuild;
+import hudson.model.StreamBuildListener;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+public class ArtifactorySelectiveUnstashTest extends BaseTest {
+
+    private ArtifactoryStandIn standIn;
+
+    @BeforeEach
+    public void startStandIn() throws IOException {
+        standIn = new ArtifactoryStandIn("my-generic-repo");
+    }
+
+    @AfterEach
+    public void stopStandIn() {
+        standIn.close();
+    }
+
+    @Test
+    public void shouldOnlyDownloadRangesOfMatchingFiles(
+            JenkinsRule jenkinsRule, @TempDir Path workspace, @TempDir Path restored) throws Exception {
+        ArtifactoryGenericArtifactConfig config = configureConfig(jenkinsRule, standIn.getPort(), "selective/");
+        shouldUnstashMatchingFiles(jenkinsRule, config, workspace, restored);
+    }
+
+    @Test
+    public void shouldOnlyDownloadMatchingFilesOfPerFileStashes(
+            JenkinsRule jenkinsRule, @TempDir Path workspace, @TempDir Path restored) throws Exception {
+        ArtifactoryGenericArtifactConfig config = configureConfig(jenkinsRule, standIn.getPort(), "selective/");
+        config.setPerFileStashes(true);
+        shouldUnstashMatchingFiles(jenkinsRule, config, workspace, restored);
+    }
+
+    private void shouldUnstashMatchingFiles(
+            JenkinsRule jenkinsRule, ArtifactoryGenericArtifactConfig config, Path workspace, Path restored)
+            throws Exception {
+        FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(jenkinsRule.createFreeStyleProject());
+        ArtifactoryArtifactManager manager = new ArtifactoryArtifactManager(build, config);
+        Launcher launcher = jenkinsRule.createLocalLauncher();
+        StreamBuildListener listener = new StreamBuildListener(OutputStream.nullOutputStream(), StandardCharsets.UTF_8);
+
+        byte[] content = new byte[4 * 1024 * 1024];
+        new Random(1).nextBytes(content);
+        Files.createDirectories(workspace.resolve("target/classes"));
+        Files.write(workspace.resolve("target/classes/first.bin"), content);
+        Files.write(workspace.resolve("target/second.bin"), content);
+        Files.writeString(workspace.resolve("target/app.jar"), "app");
+        FilePath ws = new FilePath(workspace.toFile());
+        FilePath target = new FilePath(restored.toFile());
+        manager.stash("build", ws, launcher, new EnvVars(), listener, null, null, true, false);
+        standIn.resetCounters();
+
+        manager.unstash("build", target, listener, "target/*.jar", null);
+
+        assertThat(Files.readString(restored.resolve("target/app.jar")), is("app"));
+        assertThat(Files.exists(restored.resolve("target/second.bin")), is(false));
+        assertThat(Files.exists(restored.resolve("target/classes/first.bin")), is(false));
+        assertThat(standIn.getBytesOut(), lessThan((long) content.length));
+
+        manager.unstash("build", target, listener, "target/", "**/*.jar");
+        assertThat(Files.readAllBytes(restored.resolve("target/classes/first.bin")), is(content));
+        assertThat(Files.readAllBytes(restored.resolve("target/second.bin")), is(content));
+    }
+}
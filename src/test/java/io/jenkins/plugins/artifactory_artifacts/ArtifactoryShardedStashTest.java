@@ -0,0 +1,143 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.FreeStyleBuild;
+import hudson.model.StreamBuildListener;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+public class ArtifactoryShardedStashTest extends BaseTest {
+
+    private ArtifactoryStandIn standIn;
+
+    @BeforeEach
+    public void startStandIn() throws IOException {
+        standIn = new ArtifactoryStandIn("my-generic-repo");
+    }
+
+    @AfterEach
+    public void stopStandIn() {
+        standIn.close();
+    }
+
+    @Test
+    public void shouldStashAndUnstashShards(
+            JenkinsRule jenkinsRule, @TempDir Path workspace, @TempDir Path restored, @TempDir Path tempDir)
+            throws Exception {
+        ArtifactoryGenericArtifactConfig config = configureConfig(jenkinsRule, standIn.getPort(), "sharded/");
+        config.setStashShards(4);
+        FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(jenkinsRule.createFreeStyleProject());
+        ArtifactoryArtifactManager manager = new ArtifactoryArtifactManager(build, config);
+        StreamBuildListener listener = new StreamBuildListener(OutputStream.nullOutputStream(), StandardCharsets.UTF_8);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 10; i++) {
+            byte[] content = new byte[(i + 1) * 16 * 1024];
+            random.nextBytes(content);
+            Files.createDirectories(workspace.resolve("dir-" + i % 3));
+            Files.write(workspace.resolve("dir-" + i % 3 + "/file-" + i + ".bin"), content);
+        }
+        FilePath ws = new FilePath(workspace.toFile());
+        String folder = Utils.getFilePath(build.getParent().getFullName() + "/" + build.getNumber(), "stashes/build");
+        int shards = ws.act(new ArtifactoryArtifactManager.StashShards(
+                ArtifactoryArtifactManager.buildArtifactoryConfig(config, ws),
+                build.getExternalizableId(),
+                folder + ".tgz",
+                folder,
+                null,
+                null,
+                true,
+                false,
+                tempDir.toString(),
+                4,
+                1,
+                listener));
+        assertThat(shards, is(4));
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                "http://localhost:" + standIn.getPort(), "my-generic-repo", Utils.getCredentials())) {
+            assertThat(client.isFile(folder + "/" + ArtifactoryArtifactManager.SHARDS_INDEX), is(true));
+            assertThat(client.isFile(folder + ".tgz"), is(false));
+        }
+
+        Launcher launcher = jenkinsRule.createLocalLauncher();
+        manager.unstash("build", new FilePath(restored.toFile()), launcher, new EnvVars(), listener);
+        for (int i = 0; i < 10; i++) {
+            String file = "dir-" + i % 3 + "/file-" + i + ".bin";
+            assertThat(Files.readAllBytes(restored.resolve(file)), is(Files.readAllBytes(workspace.resolve(file))));
+        }
+
+        // Selective unstashes read the matching members of each shard
+        Path selected = restored.resolve("selected");
+        manager.unstash("build", new FilePath(selected.toFile()), listener, "dir-1/**", null);
+        assertThat(Files.exists(selected.resolve("dir-1/file-4.bin")), is(true));
+        assertThat(Files.exists(selected.resolve("dir-0")), is(false));
+    }
+
+    @Test
+    public void shouldStashSmallStashesAsSingleArchive(
+            JenkinsRule jenkinsRule, @TempDir Path workspace, @TempDir Path restored) throws Exception {
+        ArtifactoryGenericArtifactConfig config = configureConfig(jenkinsRule, standIn.getPort(), "sharded/");
+        config.setStashShards(4);
+        FreeStyleBuild build = jenkinsRule.buildAndAssertSuccess(jenkinsRule.createFreeStyleProject());
+        ArtifactoryArtifactManager manager = new ArtifactoryArtifactManager(build, config);
+        Launcher launcher = jenkinsRule.createLocalLauncher();
+        StreamBuildListener listener = new StreamBuildListener(OutputStream.nullOutputStream(), StandardCharsets.UTF_8);
+
+        Files.writeString(workspace.resolve("first.txt"), "first");
+        Files.writeString(workspace.resolve("second.txt"), "second");
+        FilePath ws = new FilePath(workspace.toFile());
+        manager.stash("build", ws, launcher, new EnvVars(), listener, null, null, true, false);
+        manager.unstash("build", new FilePath(restored.toFile()), launcher, new EnvVars(), listener);
+
+        assertThat(Files.readString(restored.resolve("first.txt")), is("first"));
+        assertThat(Files.readString(restored.resolve("second.txt")), is("second"));
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                "http://localhost:" + standIn.getPort(), "my-generic-repo", Utils.getCredentials())) {
+            String folder = Utils.getFilePath(build.getParent().getFullName() + "/" + build.getNumber(), "stashes");
+            assertThat(client.isFile(folder + "/build.tgz"), is(true));
+        }
+    }
+
+    @Test
+    public void shouldBalanceShards() {
+        List<ArtifactoryArtifactManager.ShardEntry> entries = new ArrayList<>();
+        Random random = new Random(1);
+        long total = 0;
+        for (int i = 0; i < 200; i++) {
+            long size = 1 + random.nextInt(1024 * 1024);
+            entries.add(new ArtifactoryArtifactManager.ShardEntry("file-" + i, size, null));
+            total += size;
+        }
+        List<List<ArtifactoryArtifactManager.ShardEntry>> shards =
+                ArtifactoryArtifactManager.StashShards.partition(entries, 4);
+        int files = 0;
+        for (List<ArtifactoryArtifactManager.ShardEntry> shard : shards) {
+            long size = shard.stream()
+                    .mapToLong(ArtifactoryArtifactManager.ShardEntry::size)
+                    .sum();
+            // Largest first leaves no shard more than the largest file above the average
+            assertThat(size, lessThanOrEqualTo(total / 4 + 1024 * 1024));
+            files += shard.size();
+        }
+        assertThat(files, is(200));
+    }
+}
@@ -0,0 +1,435 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the subset of the Artifactory REST API used by the plugin.
+ * Files are kept in memory, can be deployed by checksum and downloaded by range, folders can be listed
+ * recursively. Latency, per-connection bandwidth and error rate can be injected to reproduce slow or flaky servers,
+ * and every request is counted by HTTP method.
+ */
+public class ArtifactoryStandIn implements AutoCloseable {
+
+    private static final String DATE = "2024-03-17T13:20:19.836Z";
+
+    private final String repository;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentSkipListMap<String, byte[]> files = new ConcurrentSkipListMap<>();
+    private final Map<String, String> modified = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> properties = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecond;
+    private volatile double errorRate;
+
+    public ArtifactoryStandIn(String repository) throws IOException {
+        this.repository = repository;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Fixed delay added before each response
+     * @param latencyMillis the delay in milliseconds
+     * @return this stand-in
+     */
+    public ArtifactoryStandIn withLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * Bandwidth limit applied to each request and response body
+     * @param bytesPerSecond the limit per connection, 0 for unlimited
+     * @return this stand-in
+     */
+    public ArtifactoryStandIn withBandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Ratio of requests answered with a 503
+     * @param errorRate the ratio between 0 and 1
+     * @return this stand-in
+     */
+    public ArtifactoryStandIn withErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new ConcurrentSkipListMap<>();
+        requests.forEach((method, count) -> counts.put(method, count.get()));
+        return counts;
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    /**
+     * Properties set on a file
+     * @param path the path of the file relative to the repository
+     * @return the properties by key
+     */
+    public Map<String, String> getProperties(String path) {
+        return properties.getOrDefault(stripSlash(path), Map.of());
+    }
+
+    public int getFileCount() {
+        return files.size();
+    }
+
+    public void reset() {
+        files.clear();
+        properties.clear();
+        resetCounters();
+    }
+
+    public void resetCounters() {
+        requests.clear();
+        bytesIn.set(0);
+        bytesOut.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            requests.computeIfAbsent(method, k -> new AtomicLong()).incrementAndGet();
+            sleep(latencyMillis);
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                exchange.getRequestBody().readAllBytes();
+                send(exchange, 503, "{\"errors\":[{\"status\":503,\"message\":\"Injected failure\"}]}");
+                return;
+            }
+            String uri = exchange.getRequestURI().getRawPath();
+            String storagePrefix = "/api/storage/" + repository + "/";
+            String filePrefix = "/" + repository + "/";
+            if ("GET".equals(method) && uri.startsWith(storagePrefix)) {
+                String query = exchange.getRequestURI().getRawQuery();
+                if (query != null && query.startsWith("list")) {
+                    list(exchange, decode(uri.substring(storagePrefix.length())));
+                } else {
+                    storage(exchange, decode(uri.substring(storagePrefix.length())));
+                }
+            } else if ("PUT".equals(method) && uri.startsWith(storagePrefix)) {
+                setProperties(exchange, decode(uri.substring(storagePrefix.length())));
+            } else if (uri.startsWith("/api/copy/") || uri.startsWith("/api/move/")) {
+                copyOrMove(exchange, uri.startsWith("/api/move/"));
+            } else if (uri.startsWith(filePrefix)) {
+                String path = decode(uri.substring(filePrefix.length()));
+                switch (method) {
+                    case "PUT" -> put(exchange, path);
+                    case "GET" -> get(exchange, path);
+                    case "DELETE" -> delete(exchange, path);
+                    default -> send(exchange, 405, "{}");
+                }
+            } else {
+                send(exchange, 404, "{}");
+            }
+        }
+    }
+
+    private void put(HttpExchange exchange, String path) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        copy(exchange.getRequestBody(), body);
+        byte[] content = body.toByteArray();
+        bytesIn.addAndGet(content.length);
+        if ("true".equals(exchange.getRequestHeaders().getFirst("X-Checksum-Deploy"))) {
+            // Deploy by checksum reuses content already stored under any path
+            String sha1 = exchange.getRequestHeaders().getFirst("X-Checksum-Sha1");
+            content = files.values().stream()
+                    .filter(stored -> digest("SHA-1", stored).equals(sha1))
+                    .findFirst()
+                    .orElse(null);
+            if (content == null) {
+                send(exchange, 404, "{\"errors\":[{\"status\":404,\"message\":\"Checksum not found\"}]}");
+                return;
+            }
+        }
+        files.put(stripSlash(path), content);
+        modified.put(stripSlash(path), Instant.now().toString());
+        send(exchange, 201, String.format(
+                "{\"repo\":\"%s\",\"path\":\"/%s\",\"size\":\"%d\","
+                        + "\"checksums\":{\"sha1\":\"%s\",\"md5\":\"%s\",\"sha256\":\"%s\"}}",
+                repository,
+                path,
+                content.length,
+                digest("SHA-1", content),
+                digest("MD5", content),
+                digest("SHA-256", content)));
+    }
+
+    private void setProperties(HttpExchange exchange, String path) throws IOException {
+        String key = stripSlash(path);
+        if (!files.containsKey(key)) {
+            send(exchange, 404, "{\"errors\":[{\"status\":404,\"message\":\"Unable to find item\"}]}");
+            return;
+        }
+        String query = exchange.getRequestURI().getQuery();
+        for (String parameter : query != null ? query.split("&") : new String[0]) {
+            if (parameter.startsWith("properties=")) {
+                for (String property : parameter.substring("properties=".length()).split(";")) {
+                    String[] keyValue = property.split("=", 2);
+                    properties
+                            .computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+                            .put(keyValue[0], keyValue.length > 1 ? keyValue[1] : "");
+                }
+            }
+        }
+        send(exchange, 204, "");
+    }
+
+    private void get(HttpExchange exchange, String path) throws IOException {
+        byte[] content = files.get(stripSlash(path));
+        if (content == null) {
+            send(exchange, 404, "{}");
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+        exchange.getResponseHeaders().add("X-Checksum-Sha1", digest("SHA-1", content));
+        exchange.getResponseHeaders().add("X-Checksum-Sha256", digest("SHA-256", content));
+        int start = 0;
+        int end = content.length;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            start = Integer.parseInt(bounds[0]);
+            end = bounds[1].isEmpty() ? content.length : Math.min(content.length, Integer.parseInt(bounds[1]) + 1);
+            exchange.getResponseHeaders()
+                    .add("Content-Range", String.format("bytes %d-%d/%d", start, end - 1, content.length));
+        }
+        int length = end - start;
+        exchange.sendResponseHeaders(range != null ? 206 : 200, length == 0 ? -1 : length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            copy(new ByteArrayInputStream(content, start, length), os);
+        }
+        bytesOut.addAndGet(length);
+    }
+
+    private void delete(HttpExchange exchange, String path) throws IOException {
+        String folder = stripSlash(path);
+        boolean removed = files.remove(folder) != null;
+        Map<String, byte[]> children = files.subMap(folder + "/", folder + "/\uffff");
+        removed |= !children.isEmpty();
+        children.clear();
+        send(exchange, removed ? 204 : 404, "");
+    }
+
+    private void storage(HttpExchange exchange, String path) throws IOException {
+        String key = stripSlash(path);
+        byte[] content = files.get(key);
+        if (content != null) {
+            send(exchange, 200, String.format(
+                    "{\"repo\":\"%s\",\"path\":\"/%s\",\"created\":\"%s\","
+                            + "\"lastModified\":\"%s\",\"lastUpdated\":\"%s\",\"size\":\"%d\","
+                            + "\"mimeType\":\"application/octet-stream\","
+                            + "\"checksums\":{\"sha1\":\"%s\",\"sha256\":\"%s\"}}",
+                    repository,
+                    key,
+                    DATE,
+                    DATE,
+                    DATE,
+                    content.length,
+                    digest("SHA-1", content),
+                    digest("SHA-256", content)));
+            return;
+        }
+        String folder = key.isEmpty() ? "" : key + "/";
+        TreeSet<String> children = new TreeSet<>();
+        for (String child : files.subMap(folder, folder + "\uffff").keySet()) {
+            String relative = child.substring(folder.length());
+            int slash = relative.indexOf('/');
+            children.add(slash >= 0 ? relative.substring(0, slash + 1) : relative);
+        }
+        if (children.isEmpty() && !key.isEmpty()) {
+            send(exchange, 404, "{\"errors\":[{\"status\":404,\"message\":\"Unable to find item\"}]}");
+            return;
+        }
+        StringBuilder json = new StringBuilder();
+        for (String child : children) {
+            if (json.length() > 0) {
+                json.append(',');
+            }
+            boolean isFolder = child.endsWith("/");
+            json.append(String.format(
+                    "{\"uri\":\"/%s\",\"folder\":%s}", escape(isFolder ? stripSlash(child) : child), isFolder));
+        }
+        send(exchange, 200, String.format(
+                "{\"repo\":\"%s\",\"path\":\"/%s\",\"created\":\"%s\",\"lastModified\":\"%s\",\"lastUpdated\":\"%s\","
+                        + "\"children\":[%s]}",
+                repository, escape(key), DATE, DATE, DATE, json));
+    }
+
+    /**
+     * File list API, always deep and without folders
+     */
+    private void list(HttpExchange exchange, String path) throws IOException {
+        String folder = stripSlash(path);
+        StringBuilder json = new StringBuilder();
+        for (Map.Entry<String, byte[]> entry : files.subMap(folder + "/", folder + "/\uffff").entrySet()) {
+            if (json.length() > 0) {
+                json.append(',');
+            }
+            json.append(String.format(
+                    "{\"uri\":\"/%s\",\"size\":%d,\"lastModified\":\"%s\",\"folder\":false,\"sha1\":\"%s\"}",
+                    escape(entry.getKey().substring(folder.length() + 1)),
+                    entry.getValue().length,
+                    modified.getOrDefault(entry.getKey(), DATE),
+                    digest("SHA-1", entry.getValue())));
+        }
+        send(exchange, 200, String.format("{\"uri\":\"/%s\",\"files\":[%s]}", escape(folder), json));
+    }
+
+    private void copyOrMove(HttpExchange exchange, boolean move) throws IOException {
+        // /api/copy/{repo}/{path}?to=/{repo}/{target}
+        String uri = exchange.getRequestURI().getRawPath();
+        String api = move ? "/api/move/" : "/api/copy/";
+        String source = stripSlash(decode(uri.substring((api + repository + "/").length())));
+        String query = exchange.getRequestURI().getRawQuery();
+        String target = null;
+        for (String param : query == null ? new String[0] : query.split("&")) {
+            if (param.startsWith("to=")) {
+                target = stripSlash(decode(param.substring(3)).replaceFirst("^/?" + repository + "/", ""));
+            }
+        }
+        if (target == null) {
+            send(exchange, 400, "{}");
+            return;
+        }
+        byte[] file = files.get(source);
+        if (file != null) {
+            files.put(target, file);
+            if (move) {
+                files.remove(source);
+            }
+        }
+        Map<String, byte[]> tree = files.subMap(source + "/", source + "/\uffff");
+        for (Map.Entry<String, byte[]> entry : Map.copyOf(tree).entrySet()) {
+            files.put(target + entry.getKey().substring(source.length()), entry.getValue());
+        }
+        if (move) {
+            tree.clear();
+        }
+        send(exchange, 200, "{\"messages\":[]}");
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (!body.isEmpty()) {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+        }
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Copy a body while honouring the configured bandwidth
+     */
+    private void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long start = System.nanoTime();
+        long transferred = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            transferred += read;
+            long limit = bytesPerSecond;
+            if (limit > 0) {
+                long expectedNanos = transferred * 1_000_000_000L / limit;
+                long elapsedNanos = System.nanoTime() - start;
+                if (expectedNanos > elapsedNanos) {
+                    sleep((expectedNanos - elapsedNanos) / 1_000_000L);
+                }
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String decode(String path) {
+        // Matrix parameters are ignored, only the path is kept
+        int matrix = path.indexOf(';');
+        return URLDecoder.decode(
+                (matrix >= 0 ? path.substring(0, matrix) : path).replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
+    private static String stripSlash(String path) {
+        String result = path;
+        while (result.endsWith("/")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        while (result.startsWith("/")) {
+            result = result.substring(1);
+        }
+        return result;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static String digest(String algorithm, byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance(algorithm).digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
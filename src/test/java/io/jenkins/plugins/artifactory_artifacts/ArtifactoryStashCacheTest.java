@@ -0,0 +1,121 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+public class ArtifactoryStashCacheTest extends BaseTest {
+
+    private ArtifactoryStandIn standIn;
+
+    @BeforeEach
+    public void startStandIn() throws IOException {
+        standIn = new ArtifactoryStandIn("my-generic-repo").withLatency(50);
+    }
+
+    @AfterEach
+    public void stopStandIn() {
+        standIn.close();
+    }
+
+    @Test
+    public void shouldShareDownloadsOfTheSameStash(JenkinsRule jenkinsRule, @TempDir Path cacheDir) throws Exception {
+        configureConfig(jenkinsRule, standIn.getPort(), "jenkins/");
+        byte[] content = random(32 * 1024, 1);
+        ArtifactoryStashCache cache = new ArtifactoryStashCache(cacheDir, 1024 * 1024);
+        try (ArtifactoryClient client = newClient()) {
+            client.uploadContent(content, "jenkins/job/1/stashes/build.tgz");
+            standIn.resetCounters();
+
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<Path>> fetches = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    fetches.add(executor.submit(() -> cache.fetch(client, "jenkins/job/1/stashes/build.tgz")));
+                }
+                for (Future<Path> fetch : fetches) {
+                    assertThat(Files.readAllBytes(fetch.get()), is(content));
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            assertThat(standIn.getBytesOut(), is((long) content.length));
+
+            // A stash stored again is downloaded again
+            byte[] replaced = random(32 * 1024, 2);
+            client.uploadContent(replaced, "jenkins/job/1/stashes/build.tgz");
+            assertThat(Files.readAllBytes(cache.fetch(client, "jenkins/job/1/stashes/build.tgz")), is(replaced));
+        }
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedStashes(JenkinsRule jenkinsRule, @TempDir Path cacheDir) throws Exception {
+        configureConfig(jenkinsRule, standIn.getPort(), "jenkins/");
+        ArtifactoryStashCache cache = new ArtifactoryStashCache(cacheDir, 2 * 1024 + 512);
+        try (ArtifactoryClient client = newClient()) {
+            for (int i = 0; i < 3; i++) {
+                client.uploadContent(random(1024, i), "jenkins/job/1/stashes/stash-" + i + ".tgz");
+            }
+            client.uploadContent(random(4 * 1024, 3), "jenkins/job/1/stashes/huge.tgz");
+
+            Path first = cache.fetch(client, "jenkins/job/1/stashes/stash-0.tgz");
+            Thread.sleep(10);
+            Path second = cache.fetch(client, "jenkins/job/1/stashes/stash-1.tgz");
+            Thread.sleep(10);
+            // Using the first stash again makes the second one the least recently used
+            assertThat(cache.fetch(client, "jenkins/job/1/stashes/stash-0.tgz"), is(first));
+            Path third = cache.fetch(client, "jenkins/job/1/stashes/stash-2.tgz");
+
+            assertThat(Files.exists(first), is(true));
+            assertThat(Files.exists(second), is(false));
+            assertThat(Files.exists(third), is(true));
+            assertThat(cache.fetch(client, "jenkins/job/1/stashes/huge.tgz"), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void shouldReadStashesEvictedWhileOpen(JenkinsRule jenkinsRule, @TempDir Path cacheDir) throws Exception {
+        configureConfig(jenkinsRule, standIn.getPort(), "jenkins/");
+        ArtifactoryStashCache cache = new ArtifactoryStashCache(cacheDir, 1024 + 512);
+        byte[] content = random(1024, 0);
+        try (ArtifactoryClient client = newClient()) {
+            client.uploadContent(content, "jenkins/job/1/stashes/first.tgz");
+            client.uploadContent(random(1024, 1), "jenkins/job/1/stashes/second.tgz");
+
+            try (InputStream is = cache.open(client, "jenkins/job/1/stashes/first.tgz")) {
+                // Caching the second stash evicts the first one while it is read
+                cache.fetch(client, "jenkins/job/1/stashes/second.tgz");
+                assertThat(is.readAllBytes(), is(content));
+            }
+        }
+    }
+
+    private ArtifactoryClient newClient() {
+        return new ArtifactoryClient(
+                "http://localhost:" + standIn.getPort(), "my-generic-repo", Utils.getCredentials());
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+}
@@ -0,0 +1,142 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.StreamBuildListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import jenkins.util.VirtualFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+public class ArtifactoryStorageReferencesTest extends BaseTest {
+
+    private ArtifactoryStandIn standIn;
+
+    @BeforeEach
+    public void startStandIn() throws IOException {
+        standIn = new ArtifactoryStandIn("my-generic-repo");
+    }
+
+    @AfterEach
+    public void stopStandIn() {
+        standIn.close();
+    }
+
+    @Test
+    public void shouldTrackReferencesBetweenBuilds(JenkinsRule jenkinsRule) {
+        ArtifactoryStorageReferences references = ArtifactoryStorageReferences.get();
+        references.put("jenkins/my-job/2", "jenkins/my-job/1", "jenkins/my-job/1");
+        references.put("jenkins/my-job/3", "jenkins/my-job/1", null);
+
+        assertThat(references.referrersOf("jenkins/my-job/1").size(), is(2));
+        assertThat(references.isReferenced("jenkins/my-job/1"), is(true));
+        assertThat(references.isReferenced("jenkins/my-job"), is(true));
+        assertThat(references.isReferenced("jenkins/my-job/2"), is(false));
+
+        references.clearArtifacts("jenkins/my-job/3");
+        assertThat(references.get("jenkins/my-job/3"), nullValue());
+        references.clearStashes("jenkins/my-job/2");
+        assertThat(references.get("jenkins/my-job/2").getArtifacts(), is("jenkins/my-job/1"));
+        assertThat(references.get("jenkins/my-job/2").getStashes(), nullValue());
+    }
+
+    @Test
+    public void shouldRelocateReferencesWhenMovingJob(JenkinsRule jenkinsRule) {
+        ArtifactoryStorageReferences references = ArtifactoryStorageReferences.get();
+        references.put("jenkins/before/2", "jenkins/before/1", "jenkins/before/1");
+
+        references.relocate("jenkins/before", "jenkins/after");
+
+        assertThat(references.get("jenkins/before/2"), nullValue());
+        assertThat(references.get("jenkins/after/2").getArtifacts(), is("jenkins/after/1"));
+
+        references.removeUnder("jenkins/after");
+        assertThat(references.isReferenced("jenkins/after/1"), is(false));
+    }
+
+    @Test
+    public void shouldStoreEachReferenceInItsOwnFile(JenkinsRule jenkinsRule) {
+        ArtifactoryStorageReferences references = ArtifactoryStorageReferences.get();
+        references.put("jenkins/my-job/2", "jenkins/my-job/1", null);
+        references.put("jenkins/my-job/3", null, "jenkins/my-job/1");
+        File folder = new File(jenkinsRule.jenkins.getRootDir(), ArtifactoryStorageReferences.class.getName());
+        assertThat(folder.list().length, is(2));
+
+        references.remove("jenkins/my-job/2");
+        assertThat(folder.list().length, is(1));
+
+        ArtifactoryStorageReferences loaded = new ArtifactoryStorageReferences();
+        assertThat(loaded.get("jenkins/my-job/2"), nullValue());
+        assertThat(loaded.get("jenkins/my-job/3").getStashes(), is("jenkins/my-job/1"));
+    }
+
+    @Test
+    public void shouldReadReferencedFilesInPlaceUntilTheSourceIsDeleted(
+            JenkinsRule jenkinsRule, @TempDir Path workspace, @TempDir Path restored) throws Exception {
+        ArtifactoryGenericArtifactConfig config = configureConfig(jenkinsRule, standIn.getPort(), "jenkins/");
+        config.setReferenceCopies(true);
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject("referenced");
+        FreeStyleBuild source = jenkinsRule.buildAndAssertSuccess(project);
+        FreeStyleBuild target = jenkinsRule.buildAndAssertSuccess(project);
+        ArtifactoryArtifactManager sourceManager = new ArtifactoryArtifactManager(source, config);
+        Launcher launcher = jenkinsRule.createLocalLauncher();
+        StreamBuildListener listener = new StreamBuildListener(OutputStream.nullOutputStream(), StandardCharsets.UTF_8);
+        FilePath ws = new FilePath(workspace.toFile());
+        Files.writeString(workspace.resolve("first.txt"), "first");
+        Files.writeString(workspace.resolve("second.txt"), "second");
+        sourceManager.archive(ws, launcher, listener, Map.of("first.txt", "first.txt", "second.txt", "second.txt"));
+        sourceManager.stash("source", ws, launcher, new EnvVars(), listener, "first.txt", null, true, false);
+
+        // Nothing is copied when referencing, nor when the referencing build writes its own files
+        int files = standIn.getFileCount();
+        sourceManager.copyAllArtifactsAndStashes(target, listener);
+        ArtifactoryArtifactManager targetManager = (ArtifactoryArtifactManager) target.pickArtifactManager();
+        Files.writeString(workspace.resolve("second.txt"), "changed");
+        targetManager.archive(ws, launcher, listener, Map.of("second.txt", "second.txt"));
+        targetManager.stash("target", ws, launcher, new EnvVars(), listener, "second.txt", null, true, false);
+        assertThat(standIn.getFileCount(), is(files + 2));
+
+        VirtualFile root = targetManager.root();
+        assertThat(root.list().length, is(2));
+        assertThat(read(root.child("first.txt")), is("first"));
+        assertThat(read(root.child("second.txt")), is("changed"));
+        targetManager.unstash("source", new FilePath(restored.toFile()), launcher, new EnvVars(), listener);
+        assertThat(Files.readString(restored.resolve("first.txt")), is("first"));
+
+        // Referenced files are copied next to those of the referencing build before the source goes away
+        assertThat(sourceManager.delete(), is(true));
+        assertThat(ArtifactoryStorageReferences.get().get("jenkins/referenced/2"), nullValue());
+        try (ArtifactoryClient client = new ArtifactoryClient(
+                "http://localhost:" + standIn.getPort(), "my-generic-repo", Utils.getCredentials())) {
+            assertThat(client.isFile("jenkins/referenced/2/artifacts/first.txt"), is(true));
+            assertThat(client.isFile("jenkins/referenced/2/stashes/source.tgz"), is(true));
+            assertThat(client.isFile("jenkins/referenced/2/stashes/target.tgz"), is(true));
+        }
+        assertThat(read(targetManager.root().child("second.txt")), is("changed"));
+    }
+
+    private static String read(VirtualFile file) throws IOException {
+        try (InputStream is = file.open()) {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package io.jenkins.plugins.artifactory_artifacts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import hudson.util.DirScanner;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ArtifactoryUntarTest {
+
+    @Test
+    public void shouldExtractSmallAndLargeEntries(@TempDir Path dir) throws Exception {
+        byte[] large = new byte[64 * 1024];
+        byte[] archive = tgz(tar -> {
+            directory(tar, "sub/", 1_000_000_000_000L);
+            for (int i = 0; i < 100; i++) {
+                file(tar, "sub/file-" + i + ".txt", ("content " + i).getBytes(StandardCharsets.UTF_8));
+            }
+            file(tar, "large.bin", large);
+            TarArchiveEntry link = new TarArchiveEntry("link", TarArchiveEntry.LF_SYMLINK);
+            link.setLinkName("sub");
+            tar.putArchiveEntry(link);
+            tar.closeArchiveEntry();
+        });
+
+        int count = ArtifactoryUntar.extract(new ByteArrayInputStream(archive), dir.toFile(), 4, 1024);
+
+        assertThat(count, is(103));
+        assertThat(Files.readString(dir.resolve("sub/file-42.txt")), is("content 42"));
+        assertThat(Files.size(dir.resolve("large.bin")), is((long) large.length));
+        assertThat(Files.isSymbolicLink(dir.resolve("link")), is(true));
+        assertThat(Files.getLastModifiedTime(dir.resolve("sub")).toMillis(), is(1_000_000_000_000L));
+    }
+
+    @Test
+    public void shouldRefuseEntriesOutsideOfTheFolder(@TempDir Path dir) throws Exception {
+        byte[] archive = tgz(tar -> file(tar, "../evil.txt", new byte[1]));
+
+        assertThrows(
+                IOException.class,
+                () -> ArtifactoryUntar.extract(new ByteArrayInputStream(archive), dir.resolve("ws").toFile()));
+        assertThat(Files.exists(dir.resolve("evil.txt")), is(false));
+    }
+
+    @Test
+    public void shouldNotWriteThroughLinks(@TempDir Path dir) throws Exception {
+        Path outside = Files.createDirectories(dir.resolve("outside"));
+        Path workspace = Files.createDirectories(dir.resolve("ws"));
+        Files.createSymbolicLink(workspace.resolve("escape"), outside);
+        byte[] archive = tgz(tar -> file(tar, "escape/file.txt", new byte[1]));
+
+        assertThrows(
+                IOException.class,
+                () -> ArtifactoryUntar.extract(new ByteArrayInputStream(archive), workspace.toFile()));
+        assertThat(Files.exists(outside.resolve("file.txt")), is(false));
+    }
+
+    @Test
+    public void shouldRefuseHardLinksToFilesOutsideOfTheFolder(@TempDir Path dir) throws Exception {
+        Path outside = Files.createDirectories(dir.resolve("outside"));
+        Files.writeString(outside.resolve("secret.txt"), "secret");
+        Path workspace = Files.createDirectories(dir.resolve("ws"));
+        Files.createSymbolicLink(workspace.resolve("escape"), outside);
+        byte[] archive = tgz(tar -> {
+            TarArchiveEntry link = new TarArchiveEntry("copy.txt", TarArchiveEntry.LF_LINK);
+            link.setLinkName("escape/secret.txt");
+            tar.putArchiveEntry(link);
+            tar.closeArchiveEntry();
+        });
+
+        assertThrows(
+                IOException.class,
+                () -> ArtifactoryUntar.extract(new ByteArrayInputStream(archive), workspace.toFile()));
+        assertThat(Files.exists(workspace.resolve("copy.txt")), is(false));
+    }
+
+    @Test
+    public void shouldWriteEntriesWithTheSameNameInArchiveOrder(@TempDir Path dir) throws Exception {
+        byte[] archive = tgz(tar -> {
+            for (int i = 0; i < 100; i++) {
+                file(tar, "same.txt", ("version " + i).getBytes(StandardCharsets.UTF_8));
+            }
+        });
+
+        ArtifactoryUntar.extract(new ByteArrayInputStream(archive), dir.toFile(), 8, 1024);
+
+        assertThat(Files.readString(dir.resolve("same.txt")), is("version 99"));
+    }
+
+    @Test
+    public void shouldExtractRangesOfIndexedArchives(@TempDir Path dir) throws Exception {
+        Path source = Files.createDirectories(dir.resolve("source/lib"));
+        byte[] large = new byte[(int) ArtifactoryTar.MEMBER_SIZE];
+        new Random(1).nextBytes(large);
+        Files.write(source.resolve("first.bin"), large);
+        Files.write(source.resolve("second.bin"), large);
+        Files.writeString(source.resolve("app.jar"), "app");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ArtifactoryTar.archive(
+                dir.resolve("source").toFile(), new DirScanner.Glob("**", null), bytes, Deflater.BEST_SPEED);
+        byte[] archive = bytes.toByteArray();
+
+        // The whole archive is a regular gzipped tar
+        ArtifactoryUntar.extract(new ByteArrayInputStream(archive), dir.resolve("whole").toFile());
+        assertThat(Files.readAllBytes(dir.resolve("whole/lib/second.bin")), is(large));
+
+        long footerOffset = archive.length - ArtifactoryTar.FOOTER_SIZE;
+        long indexOffset = ArtifactoryTar.indexOffset(Arrays.copyOfRange(archive, (int) footerOffset, archive.length));
+        Predicate<String> filter = Utils.pathFilter("lib/*.jar", null);
+        List<ArtifactoryTar.Range> ranges = ArtifactoryTar.select(
+                new ByteArrayInputStream(archive, (int) indexOffset, (int) (footerOffset - indexOffset)), filter);
+        Path partial = dir.resolve("partial");
+        long read = 0;
+        for (ArtifactoryTar.Range range : ranges) {
+            ArtifactoryUntar.extract(
+                    ArtifactoryTar.verify(
+                            new ByteArrayInputStream(archive, (int) range.offset(), (int) range.length()), range),
+                    partial.toFile(),
+                    filter);
+            read += range.length();
+        }
+
+        assertThat(Files.readString(partial.resolve("lib/app.jar")), is("app"));
+        assertThat(Files.exists(partial.resolve("lib/first.bin")), is(false));
+        assertThat(read < large.length, is(true));
+        // Corrupted members are detected from the checksums of the index
+        ArtifactoryTar.Range range = ranges.get(0);
+        byte[] corrupted = archive.clone();
+        corrupted[(int) (range.offset() + range.length() / 2)] ^= 1;
+        assertThrows(IOException.class, () -> ArtifactoryTar.verify(
+                        new ByteArrayInputStream(corrupted, (int) range.offset(), (int) range.length()), range)
+                .transferTo(OutputStream.nullOutputStream()));
+        // Archives without an index are detected
+        assertThat(ArtifactoryTar.indexOffset(new byte[ArtifactoryTar.FOOTER_SIZE]), is(-1L));
+    }
+
+    @FunctionalInterface
+    private interface Entries {
+        void write(TarArchiveOutputStream tar) throws IOException;
+    }
+
+    private static byte[] tgz(Entries entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GZIPOutputStream(bytes))) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            entries.write(tar);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void directory(TarArchiveOutputStream tar, String name, long lastModified) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setModTime(lastModified);
+        tar.putArchiveEntry(entry);
+        tar.closeArchiveEntry();
+    }
+
+    private static void file(TarArchiveOutputStream tar, String name, byte[] content) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(name, true);
+        entry.setSize(content.length);
+        tar.putArchiveEntry(entry);
+        tar.write(content);
+        tar.closeArchiveEntry();
+    }
+}
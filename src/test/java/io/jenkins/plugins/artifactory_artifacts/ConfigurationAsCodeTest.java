@@ -25,6 +25,8 @@ public class ConfigurationAsCodeTest extends BaseTest {
         assertThat(config.getPrefix(), is("jenkins/"));
         assertThat(config.getMaxUploadRetries(), is(3));
         assertThat(config.getRetryDelaySeconds(), is(10));
+        // Not configured, as in the form
+        assertThat(config.getCacheRetentionDays(), is(ArtifactoryGenericArtifactConfig.DEFAULT_CACHE_RETENTION_DAYS));
     }
 
     @Test
@@ -38,5 +40,6 @@ public class ConfigurationAsCodeTest extends BaseTest {
         assertThat(config.getPrefix(), is("jenkins/"));
         assertThat(config.getMaxUploadRetries(), is(0));
         assertThat(config.getRetryDelaySeconds(), is(0));
+        assertThat(config.getCacheRetentionDays(), is(7));
     }
 }
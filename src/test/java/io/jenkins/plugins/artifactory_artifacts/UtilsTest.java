@@ -3,6 +3,11 @@ package io.jenkins.plugins.artifactory_artifacts;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.CredentialsStore;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
 import com.github.tomakehurst.wiremock.junit5.WireMockTest;
 import org.junit.jupiter.api.Test;
@@ -31,4 +36,25 @@ public class UtilsTest extends BaseTest {
         assertThat(Utils.getCredentials().getUsername(), is("sample"));
         assertThat(Utils.getCredentials().getPassword().getPlainText(), is("sample"));
     }
+
+    @Test
+    public void shouldRefreshSnapshotWhenCredentialsChange(JenkinsRule jenkinsRule, WireMockRuntimeInfo wmRuntimeInfo)
+            throws Exception {
+        configureConfig(jenkinsRule, wmRuntimeInfo.getHttpPort(), "jenkins/");
+        long version = ArtifactoryConfigSnapshot.get().getVersion();
+        assertThat(ArtifactoryConfigSnapshot.get().getVersion(), is(version));
+
+        CredentialsStore store = CredentialsProvider.lookupStores(jenkinsRule.getInstance())
+                .iterator()
+                .next();
+        store.updateCredentials(
+                Domain.global(),
+                Utils.getCredentials(),
+                new UsernamePasswordCredentialsImpl(
+                        CredentialsScope.GLOBAL, "the-credentials-id", "sample", "other", "secret"));
+
+        assertThat(ArtifactoryConfigSnapshot.get().getVersion(), not(version));
+        assertThat(Utils.getCredentials().getUsername(), is("other"));
+        assertThat(Utils.getCredentials().getPassword().getPlainText(), is("secret"));
+    }
 }